@@ -0,0 +1,33 @@
+package br.com.ceidigital.config;
+
+import jakarta.servlet.MultipartConfigElement;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.DispatcherServlet;
+
+/**
+ * Limite de upload próprio para as importações em lote (zip de imagens e CSV do catálogo).
+ * O limite multipart é por servlet, então essas rotas são servidas por um segundo DispatcherServlet,
+ * com o mesmo contexto (mesmos controllers, filtros e tratamento de erros), enquanto o resto da API
+ * fica com o limite global de spring.servlet.multipart.
+ */
+@Configuration
+public class UploadLoteConfig {
+
+    @Bean
+    public ServletRegistrationBean<DispatcherServlet> uploadLoteServlet(
+            WebApplicationContext contexto,
+            @Value("${app.uploads.lote.tamanho-maximo:200MB}") DataSize tamanhoMaximo
+    ) {
+        ServletRegistrationBean<DispatcherServlet> registro = new ServletRegistrationBean<>(
+                new DispatcherServlet(contexto), "/api/produtos/imagens/lote", "/api/produtos/import");
+        registro.setName("uploadLote");
+        // Partes gravadas em disco (diretório temporário do container), nunca inteiras em memória
+        registro.setMultipartConfig(new MultipartConfigElement("", tamanhoMaximo.toBytes(), tamanhoMaximo.toBytes(), 0));
+        return registro;
+    }
+}
@@ -0,0 +1,64 @@
+package br.com.ceidigital.domain;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Estoque materializado de um produto: a soma dos seus movimentos com id até {@code ateMovimento},
+ * todos gravados até o instante {@code ate}. Gerado periodicamente pelo EstoqueSnapshotJob.
+ */
+@Entity
+@Table(name = "estoque_snapshot",
+        uniqueConstraints = @UniqueConstraint(name = "uk_estoque_snapshot_produto_ate", columnNames = {"id_produto", "ate"}),
+        indexes = {
+                // Cursor da geração (max ate_movimento) e snapshot anterior do produto
+                @Index(name = "ix_estoque_snapshot_ate_movimento", columnList = "ate_movimento"),
+                @Index(name = "ix_estoque_snapshot_produto_movimento", columnList = "id_produto, ate_movimento")
+        }
+)
+public class EstoqueSnapshot {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "id_produto", nullable = false)
+    private Long idProduto;
+
+    @Column(name = "id_empresa", nullable = false)
+    private Long idEmpresa;
+
+    @Column(nullable = false)
+    private Integer quantidade;
+
+    @Column(nullable = false)
+    private LocalDateTime ate;
+
+    // Maior id de movimento incluído (null nos snapshots anteriores ao cursor por id, que são ignorados)
+    @Column(name = "ate_movimento")
+    private Long ateMovimento;
+
+    @Column(name = "criado_em", nullable = false)
+    private LocalDateTime criadoEm;
+
+    public Long getId() {
+        return id;
+    }
+    public Long getIdProduto() {
+        return idProduto;
+    }
+    public Long getIdEmpresa() {
+        return idEmpresa;
+    }
+    public Integer getQuantidade() {
+        return quantidade;
+    }
+    public LocalDateTime getAte() {
+        return ate;
+    }
+    public Long getAteMovimento() {
+        return ateMovimento;
+    }
+    public LocalDateTime getCriadoEm() {
+        return criadoEm;
+    }
+}
@@ -0,0 +1,18 @@
+package br.com.ceidigital.domain;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+
+/**
+ * Metadados da imagem do produto, gravados no upload. Permitem responder HEAD, ETag,
+ * Content-Length e listagens só com a linha do banco, sem consultar o storage.
+ * Largura/altura ficam nulas quando o formato não é decodificável no servidor (ex.: WebP).
+ */
+@Embeddable
+public record ImagemMetadados(
+        @Column(name = "imagem_tamanho") Long tamanho,
+        @Column(name = "imagem_tipo", length = 50) String mediaType,
+        @Column(name = "imagem_largura") Integer largura,
+        @Column(name = "imagem_altura") Integer altura,
+        @Column(name = "imagem_hash", length = 64) String hash
+) {}
@@ -0,0 +1,68 @@
+package br.com.ceidigital.domain;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Movimento do estoque de um produto (livro-razão somente-inserção). Não referencia a tabela produto
+ * por chave estrangeira para que o histórico sobreviva à exclusão do produto.
+ */
+@Entity
+@Table(name = "movimento_estoque",
+        indexes = {
+                // Histórico de um produto e soma dos movimentos após o snapshot (a janela dos snapshots vai pela PK)
+                @Index(name = "ix_movimento_estoque_produto", columnList = "id_produto, criado_em")
+        }
+)
+public class MovimentoEstoque {
+
+    /** Origem do movimento. */
+    public enum Origem { SALDO_INICIAL, CADASTRO, EDICAO, AJUSTE, LOTE, IMPORTACAO }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "id_produto", nullable = false)
+    private Long idProduto;
+
+    @Column(name = "id_empresa", nullable = false)
+    private Long idEmpresa;
+
+    // Variação aplicada; a soma dos deltas até um instante é o estoque naquele instante
+    @Column(nullable = false)
+    private Integer delta;
+
+    // Estoque do produto logo após o movimento
+    @Column(nullable = false)
+    private Integer quantidade;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20, nullable = false)
+    private Origem origem;
+
+    @Column(name = "criado_em", nullable = false)
+    private LocalDateTime criadoEm;
+
+    public Long getId() {
+        return id;
+    }
+    public Long getIdProduto() {
+        return idProduto;
+    }
+    public Long getIdEmpresa() {
+        return idEmpresa;
+    }
+    public Integer getDelta() {
+        return delta;
+    }
+    public Integer getQuantidade() {
+        return quantidade;
+    }
+    public Origem getOrigem() {
+        return origem;
+    }
+    public LocalDateTime getCriadoEm() {
+        return criadoEm;
+    }
+}
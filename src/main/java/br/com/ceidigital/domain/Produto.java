@@ -2,10 +2,29 @@
 package br.com.ceidigital.domain;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.DynamicUpdate;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
+// UPDATE só com as colunas alteradas: gravar imagem ou cadastro não regrava o estoque lido antes
+@DynamicUpdate
+@Table(name = "produto",
+        // Código de barras único na empresa (também atende a busca pelo código no banco)
+        uniqueConstraints = @UniqueConstraint(name = "uk_produto_empresa_codigo_barras", columnNames = {"id_empresa", "codigo_barras"}),
+        indexes = {
+                // Listagem por empresa com paginação keyset (where id_empresa = ? and id_produto > ? order by id_produto)
+                @Index(name = "ix_produto_empresa_id", columnList = "id_empresa, id_produto"),
+                // Produtos ativos da empresa (seleção em kits), na mesma ordem keyset
+                @Index(name = "ix_produto_empresa_ativo", columnList = "id_empresa, ativo, id_produto"),
+                // Versão do catálogo (max atualizado_em) e sincronização incremental em ordem (atualizado_em, id)
+                @Index(name = "ix_produto_empresa_atualizado", columnList = "id_empresa, atualizado_em, id_produto"),
+                // Alterações de todas as empresas desde o último ciclo dos alertas de estoque baixo
+                @Index(name = "ix_produto_atualizado", columnList = "atualizado_em"),
+                // Produtos com estoque mínimo definido (carga do índice de alertas de estoque baixo)
+                @Index(name = "ix_produto_empresa_estoque_minimo", columnList = "id_empresa, estoque_minimo")
+        }
+)
 public class Produto {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -21,6 +40,10 @@ public class Produto {
     @Column(columnDefinition = "TEXT")
     private String descricao;
 
+    // EAN-8, UPC-A, EAN-13 ou GTIN-14, gravado sempre como GTIN-14 (zeros à esquerda; ver Gtin.chave)
+    @Column(name = "codigo_barras", length = 14)
+    private String codigoBarras;
+
     @Column(precision = 10, scale = 2, nullable = false)
     private BigDecimal precoUnitario;
 
@@ -33,6 +56,10 @@ public class Produto {
     @Column(nullable = false)
     private Integer quantidadeEstoque;
 
+    // Ponto de reposição: abaixo dele o dono é avisado (null = sem alerta)
+    @Column(name = "estoque_minimo")
+    private Integer estoqueMinimo;
+
     @Column(nullable = false)
     private Boolean ativo;
 
@@ -44,6 +71,14 @@ public class Produto {
     
     @Column(name = "caminho_imagem")
     private String caminhoImagem;
+
+    @Embedded
+    private ImagemMetadados imagem;
+
+    // Incrementada a cada troca de imagem; os clientes a usam para invalidar caches (?v=)
+    @Column(name = "imagem_versao")
+    private Integer imagemVersao;
+
     public String getCaminhoImagem() {
         return caminhoImagem;
     }
@@ -70,6 +105,13 @@ public class Produto {
         return descricao;
     }
 
+    public String getCodigoBarras() {
+        return codigoBarras;
+    }
+    public void setCodigoBarras(String codigoBarras) {
+        this.codigoBarras = codigoBarras;
+    }
+
     public BigDecimal getPrecoCompra() {
         return precoCompra;
     }
@@ -98,6 +140,12 @@ public class Produto {
     public void setQuantidadeEstoque(Integer quantidadeEstoque) {
         this.quantidadeEstoque = quantidadeEstoque;
     }
+    public Integer getEstoqueMinimo() {
+        return estoqueMinimo;
+    }
+    public void setEstoqueMinimo(Integer estoqueMinimo) {
+        this.estoqueMinimo = estoqueMinimo;
+    }
     public Boolean getAtivo() {
         return ativo;
     }
@@ -121,4 +169,17 @@ public class Produto {
     public void setCaminhoImagem(String caminhoImagem) {
         this.caminhoImagem = caminhoImagem;
     }
+    public ImagemMetadados getImagem() {
+        return imagem;
+    }
+    public Integer getImagemVersao() {
+        return imagemVersao;
+    }
+
+    /** Troca a imagem (null remove) junto com seus metadados e avança a versão. */
+    public void trocarImagem(String caminhoImagem, ImagemMetadados imagem) {
+        this.caminhoImagem = caminhoImagem;
+        this.imagem = caminhoImagem == null ? null : imagem;
+        this.imagemVersao = (imagemVersao == null ? 0 : imagemVersao) + 1;
+    }
 }
@@ -0,0 +1,47 @@
+package br.com.ceidigital.domain;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Marca (tombstone) de produto excluído, para a sincronização incremental
+ * (GET /api/produtos/changes) avisar os clientes da exclusão.
+ */
+@Entity
+@Table(name = "produto_removido",
+        indexes = {
+                @Index(name = "ix_produto_removido_empresa", columnList = "id_empresa, removido_em"),
+                // Exclusões de todas as empresas desde o último ciclo dos alertas de estoque baixo
+                @Index(name = "ix_produto_removido_em", columnList = "removido_em")
+        }
+)
+public class ProdutoRemovido {
+    @Id
+    @Column(name = "id_produto")
+    private Long idProduto;
+
+    @Column(name = "id_empresa", nullable = false)
+    private Long idEmpresa;
+
+    @Column(name = "removido_em", nullable = false)
+    private LocalDateTime removidoEm;
+
+    protected ProdutoRemovido() {
+    }
+
+    public ProdutoRemovido(Long idProduto, Long idEmpresa, LocalDateTime removidoEm) {
+        this.idProduto = idProduto;
+        this.idEmpresa = idEmpresa;
+        this.removidoEm = removidoEm;
+    }
+
+    public Long getIdProduto() {
+        return idProduto;
+    }
+    public Long getIdEmpresa() {
+        return idEmpresa;
+    }
+    public LocalDateTime getRemovidoEm() {
+        return removidoEm;
+    }
+}
@@ -0,0 +1,13 @@
+package br.com.ceidigital.repository;
+
+import br.com.ceidigital.domain.EstoqueSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+public interface EstoqueSnapshotRepository extends JpaRepository<EstoqueSnapshot, Long> {
+
+    /** Snapshot mais recente do produto tirado até o instante. */
+    Optional<EstoqueSnapshot> findFirstByIdProdutoAndAteLessThanEqualAndAteMovimentoNotNullOrderByAteMovimentoDesc(Long idProduto, LocalDateTime ate);
+}
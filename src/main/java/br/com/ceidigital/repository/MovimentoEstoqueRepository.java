@@ -0,0 +1,22 @@
+package br.com.ceidigital.repository;
+
+import br.com.ceidigital.domain.MovimentoEstoque;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface MovimentoEstoqueRepository extends JpaRepository<MovimentoEstoque, Long> {
+
+    /** Próxima página (keyset) do histórico do produto, do movimento mais antigo ao mais recente. */
+    @Query("select m from MovimentoEstoque m where m.idProduto = :idProduto and m.id > :after order by m.id")
+    List<MovimentoEstoque> buscarPagina(@Param("idProduto") Long idProduto, @Param("after") Long after, Limit limite);
+
+    /** Soma dos deltas do produto com id maior que {@code after} e criado_em até {@code ate}. */
+    @Query("select coalesce(sum(m.delta), 0) from MovimentoEstoque m "
+            + "where m.idProduto = :idProduto and m.id > :after and m.criadoEm <= :ate")
+    long somarDeltas(@Param("idProduto") Long idProduto, @Param("after") Long after, @Param("ate") LocalDateTime ate);
+}
@@ -0,0 +1,23 @@
+package br.com.ceidigital.repository;
+
+import br.com.ceidigital.domain.ProdutoRemovido;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface ProdutoRemovidoRepository extends JpaRepository<ProdutoRemovido, Long> {
+
+    /** Ids dos produtos da empresa excluídos em (desde, ate]. */
+    @Query("select r.idProduto from ProdutoRemovido r where r.idEmpresa = :idEmpresa and r.removidoEm > :desde and r.removidoEm <= :ate")
+    List<Long> buscarIds(@Param("idEmpresa") Long idEmpresa, @Param("desde") LocalDateTime desde, @Param("ate") LocalDateTime ate);
+
+    /** Produtos de todas as empresas excluídos em (desde, ate]: [idProduto, idEmpresa]. */
+    @Query("select r.idProduto, r.idEmpresa from ProdutoRemovido r where r.removidoEm > :desde and r.removidoEm <= :ate")
+    List<Object[]> removidosEntre(@Param("desde") LocalDateTime desde, @Param("ate") LocalDateTime ate);
+
+    @Query("select max(r.removidoEm) from ProdutoRemovido r where r.idEmpresa = :idEmpresa")
+    LocalDateTime ultimaRemocao(@Param("idEmpresa") Long idEmpresa);
+}
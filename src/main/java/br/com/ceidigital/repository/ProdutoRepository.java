@@ -1,7 +1,123 @@
 package br.com.ceidigital.repository;
 
 import br.com.ceidigital.domain.Produto;
+import br.com.ceidigital.web.dto.response.ProdutoCodigoBarrasDto;
+import br.com.ceidigital.web.dto.response.ProdutoListaDto;
+import br.com.ceidigital.web.dto.response.ProdutoResumoDto;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 
 public interface ProdutoRepository extends JpaRepository<Produto, Long> {
+
+    List<Produto> findByEmpresaIdOrderByIdProduto(Long idEmpresa);
+
+    // Colunas da listagem: tudo menos a descrição (TEXT)
+    String COLUNAS_LISTA = "select new br.com.ceidigital.web.dto.response.ProdutoListaDto(p.idProduto, p.empresa.id, p.nomeProduto, "
+            + "p.codigoBarras, p.precoUnitario, p.precoCompra, p.consignado, p.quantidadeEstoque, p.estoqueMinimo, p.ativo, p.caminhoImagem, "
+            + "p.imagem.tamanho, p.imagem.mediaType, p.imagem.largura, p.imagem.altura, p.imagemVersao, p.criadoEm, p.atualizadoEm) ";
+
+    /** Próxima página (keyset) dos produtos da empresa: ids maiores que {@code after}, em ordem, sem a descrição. */
+    @Query(COLUNAS_LISTA + "from Produto p where p.empresa.id = :idEmpresa and p.idProduto > :after order by p.idProduto")
+    List<ProdutoListaDto> buscarPaginaPorEmpresa(@Param("idEmpresa") Long idEmpresa, @Param("after") Long after, Limit limite);
+
+    /** Próxima página (keyset) de todos os produtos, para o administrador. */
+    @Query(COLUNAS_LISTA + "from Produto p where p.idProduto > :after order by p.idProduto")
+    List<ProdutoListaDto> buscarPagina(@Param("after") Long after, Limit limite);
+
+    /**
+     * Produtos da empresa alterados depois do cursor (atualizadoEm, idProduto) e até {@code ate},
+     * na ordem do cursor, sem a descrição.
+     */
+    @Query(COLUNAS_LISTA + "from Produto p where p.empresa.id = :idEmpresa and p.atualizadoEm <= :ate "
+            + "and (p.atualizadoEm > :since or (p.atualizadoEm = :since and p.idProduto > :after)) order by p.atualizadoEm, p.idProduto")
+    List<ProdutoListaDto> buscarAlteracoes(@Param("idEmpresa") Long idEmpresa, @Param("since") LocalDateTime since,
+                                           @Param("after") Long after, @Param("ate") LocalDateTime ate, Limit limite);
+
+    @Query("select max(p.atualizadoEm) from Produto p where p.empresa.id = :idEmpresa")
+    LocalDateTime ultimaAtualizacao(@Param("idEmpresa") Long idEmpresa);
+
+    /** Página keyset dos produtos ativos da empresa, só com id, nome e preço. */
+    @Query("select new br.com.ceidigital.web.dto.response.ProdutoResumoDto(p.idProduto, p.nomeProduto, p.precoUnitario) "
+            + "from Produto p where p.empresa.id = :idEmpresa and p.ativo = true and p.idProduto > :after order by p.idProduto")
+    List<ProdutoResumoDto> buscarAtivosPorEmpresa(@Param("idEmpresa") Long idEmpresa, @Param("after") Long after, Limit limite);
+
+    /** Página keyset de todos os produtos ativos, para o administrador. */
+    @Query("select new br.com.ceidigital.web.dto.response.ProdutoResumoDto(p.idProduto, p.nomeProduto, p.precoUnitario) "
+            + "from Produto p where p.ativo = true and p.idProduto > :after order by p.idProduto")
+    List<ProdutoResumoDto> buscarAtivos(@Param("after") Long after, Limit limite);
+
+    /** Campos indexados pela busca textual: [idProduto, idEmpresa, nomeProduto, descricao, precoUnitario]. */
+    @Query("select p.idProduto, p.empresa.id, p.nomeProduto, p.descricao, p.precoUnitario from Produto p where p.empresa.id = :idEmpresa")
+    List<Object[]> camposBuscaPorEmpresa(@Param("idEmpresa") Long idEmpresa);
+
+    @Query("select p.idProduto, p.empresa.id, p.nomeProduto, p.descricao, p.precoUnitario from Produto p where p.idProduto in :ids")
+    List<Object[]> camposBusca(@Param("ids") Collection<Long> ids);
+
+    @Query("select count(p) from Produto p where p.empresa.id = :idEmpresa")
+    long contarPorEmpresa(@Param("idEmpresa") Long idEmpresa);
+
+    /**
+     * Campos da busca para empresas grandes demais para o índice em memória: produtos cujo nome ou descrição,
+     * em minúsculas e com {@code acentos} trocados por {@code semAcentos}, casam com {@code padrao} (LIKE).
+     * O cast dá tipo ao retorno de translate, sem o qual o Hibernate rejeita o LIKE na validação.
+     */
+    @Query("select p.idProduto, p.empresa.id, p.nomeProduto, p.descricao, p.precoUnitario from Produto p where p.empresa.id = :idEmpresa"
+            + " and (cast(function('translate', lower(p.nomeProduto), :acentos, :semAcentos) as String) like :padrao"
+            + " or cast(function('translate', lower(coalesce(p.descricao, '')), :acentos, :semAcentos) as String) like :padrao)")
+    List<Object[]> camposBuscaPorPadrao(@Param("idEmpresa") Long idEmpresa, @Param("padrao") String padrao,
+                                        @Param("acentos") String acentos, @Param("semAcentos") String semAcentos, Limit limite);
+
+    /** Linhas da listagem para os ids informados, em ordem de id. */
+    @Query(COLUNAS_LISTA + "from Produto p where p.idProduto in :ids order by p.idProduto")
+    List<ProdutoListaDto> buscarListaPorIds(@Param("ids") Collection<Long> ids);
+
+    /** Atributos das facetas: [idProduto, ativo, consignado, precoUnitario, quantidadeEstoque], em ordem de id. */
+    @Query("select p.idProduto, p.ativo, p.consignado, p.precoUnitario, p.quantidadeEstoque from Produto p "
+            + "where p.empresa.id = :idEmpresa order by p.idProduto")
+    List<Object[]> camposFacetaPorEmpresa(@Param("idEmpresa") Long idEmpresa);
+
+    @Query("select p.idProduto, p.ativo, p.consignado, p.precoUnitario, p.quantidadeEstoque from Produto p "
+            + "where p.idProduto in :ids order by p.idProduto")
+    List<Object[]> camposFaceta(@Param("ids") Collection<Long> ids);
+
+    /** Produtos da empresa com código de barras, para o índice de leitura no caixa. */
+    @Query("select new br.com.ceidigital.web.dto.response.ProdutoCodigoBarrasDto(p.idProduto, p.codigoBarras, p.nomeProduto, "
+            + "p.precoUnitario, p.quantidadeEstoque, p.ativo) from Produto p where p.empresa.id = :idEmpresa and p.codigoBarras is not null")
+    List<ProdutoCodigoBarrasDto> camposCodigoBarrasPorEmpresa(@Param("idEmpresa") Long idEmpresa);
+
+    /** Mesmos campos para os ids informados, com ou sem código de barras. */
+    @Query("select new br.com.ceidigital.web.dto.response.ProdutoCodigoBarrasDto(p.idProduto, p.codigoBarras, p.nomeProduto, "
+            + "p.precoUnitario, p.quantidadeEstoque, p.ativo) from Produto p where p.idProduto in :ids")
+    List<ProdutoCodigoBarrasDto> camposCodigoBarras(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Produtos ativos com estoque mínimo definido: [idProduto, idEmpresa, nomeProduto, quantidadeEstoque, estoqueMinimo].
+     */
+    @Query("select p.idProduto, p.empresa.id, p.nomeProduto, p.quantidadeEstoque, p.estoqueMinimo from Produto p "
+            + "where p.estoqueMinimo is not null and p.ativo = true")
+    List<Object[]> camposEstoqueMinimo();
+
+    /** Mesmos campos, só da empresa. */
+    @Query("select p.idProduto, p.empresa.id, p.nomeProduto, p.quantidadeEstoque, p.estoqueMinimo from Produto p "
+            + "where p.empresa.id = :idEmpresa and p.estoqueMinimo is not null and p.ativo = true")
+    List<Object[]> camposEstoqueMinimoPorEmpresa(@Param("idEmpresa") Long idEmpresa);
+
+    /** Mesmos campos para os ids informados; os que não voltam não têm alerta (inativos, sem mínimo ou removidos). */
+    @Query("select p.idProduto, p.empresa.id, p.nomeProduto, p.quantidadeEstoque, p.estoqueMinimo from Produto p "
+            + "where p.idProduto in :ids and p.estoqueMinimo is not null and p.ativo = true")
+    List<Object[]> camposEstoqueMinimo(@Param("ids") Collection<Long> ids);
+
+    /** Produtos de todas as empresas alterados em (desde, ate]: [idProduto, idEmpresa]. */
+    @Query("select p.idProduto, p.empresa.id from Produto p where p.atualizadoEm > :desde and p.atualizadoEm <= :ate")
+    List<Object[]> alteradosEntre(@Param("desde") LocalDateTime desde, @Param("ate") LocalDateTime ate);
+
+    /** Caminhos de imagem ainda referenciados e quantos produtos usam cada um: [caminhoImagem, quantidade]. */
+    @Query("select p.caminhoImagem, count(p) from Produto p where p.caminhoImagem is not null group by p.caminhoImagem")
+    List<Object[]> contarReferenciasImagem();
 }
@@ -3,8 +3,11 @@ package br.com.ceidigital.repository;
 import br.com.ceidigital.domain.Usuario;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface UsuarioRepository extends JpaRepository<Usuario, Long> {
     Optional<Usuario> findByEmail(String email);
+
+    List<Usuario> findByEmpresaIdAndAtivoTrue(Long idEmpresa);
 }
@@ -117,6 +117,11 @@ public class SecurityConfig {
         cfg.addAllowedHeader("*");
         // Métodos permitidos
         cfg.addAllowedMethod("*");
+        // Paginação das listagens (rel="next")
+        cfg.addExposedHeader("Link");
+        // GET condicional da listagem (If-None-Match / If-Modified-Since)
+        cfg.addExposedHeader("ETag");
+        cfg.addExposedHeader("Last-Modified");
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration("/**", cfg);
@@ -0,0 +1,117 @@
+package br.com.ceidigital.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Carrega o índice de alertas de estoque baixo e, periodicamente, envia o resumo das empresas com
+ * produtos que ficaram abaixo do estoque mínimo desde o último envio.
+ * <p>
+ * Com várias instâncias, só a que tem a trava (advisory lock de sessão do Postgres, numa conexão
+ * reservada) mantém o índice e envia os resumos; as demais tentam pegar a trava a cada ciclo e a
+ * assumem, recarregando o índice, se a conexão da anterior cair.
+ */
+@Component
+public class EstoqueAlertaJob implements CommandLineRunner {
+    private static final Logger log = LoggerFactory.getLogger(EstoqueAlertaJob.class);
+
+    // Chave da trava (pg_advisory_lock) dos alertas de estoque: "ESTQALRT" em ASCII
+    private static final long TRAVA = 0x45535451_414c5254L;
+
+    private final EstoqueAlertaService alertas;
+    private final DataSource dataSource;
+    // Conexão que segura a trava enquanto esta instância é a que envia os alertas
+    private Connection trava;
+
+    public EstoqueAlertaJob(EstoqueAlertaService alertas, DataSource dataSource) {
+        this.alertas = alertas;
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public void run(String... args) {
+        try {
+            assumir();
+        } catch (Exception e) {
+            log.warn("[ESTOQUE-ALERTA] falha ao carregar o índice de estoque mínimo: {}", e.getMessage(), e);
+        }
+    }
+
+    @Scheduled(cron = "${app.estoque.alerta.cron:0 */10 * * * *}")
+    public synchronized void executar() {
+        try {
+            if (!assumir()) return;
+            alertas.sincronizar();
+            int n = alertas.enviarResumos();
+            if (n > 0) log.info("[ESTOQUE-ALERTA] resumo enviado para {} empresa(s)", n);
+        } catch (Exception e) {
+            log.warn("[ESTOQUE-ALERTA] falha ao enviar resumos: {}", e.getMessage(), e);
+        }
+    }
+
+    /** Se ainda não tem a trava, tenta pegá-la e carrega o índice; devolve se esta instância envia os alertas. */
+    synchronized boolean assumir() throws SQLException {
+        if (trava != null) {
+            if (trava.isValid(5)) return true;
+            // Conexão caída: a trava foi solta no banco e outra instância pode tê-la assumido
+            log.warn("[ESTOQUE-ALERTA] conexão da trava perdida; índice descartado");
+            alertas.descarregar();
+            fechar(false);
+        }
+        Connection conexao = dataSource.getConnection();
+        try (PreparedStatement ps = conexao.prepareStatement("select pg_try_advisory_lock(?)")) {
+            ps.setLong(1, TRAVA);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next() || !rs.getBoolean(1)) {
+                    conexao.close();
+                    return false;
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            conexao.close();
+            throw e;
+        }
+        trava = conexao;
+        long inicio = System.nanoTime();
+        try {
+            int n = alertas.carregar();
+            log.info("[ESTOQUE-ALERTA] trava obtida; {} produto(s) com estoque mínimo carregado(s) em {} ms",
+                    n, (System.nanoTime() - inicio) / 1_000_000);
+        } catch (RuntimeException e) {
+            alertas.descarregar();
+            fechar(true); // solta a trava: outra instância (ou o próximo ciclo) tenta de novo
+            throw e;
+        }
+        return true;
+    }
+
+    @PreDestroy
+    synchronized void soltar() {
+        if (trava != null) fechar(true);
+    }
+
+    /** Devolve a conexão ao pool; antes solta a trava, que senão ficaria presa à sessão reaproveitada. */
+    private void fechar(boolean soltar) {
+        try (Connection conexao = trava) {
+            if (soltar) {
+                try (PreparedStatement ps = conexao.prepareStatement("select pg_advisory_unlock(?)")) {
+                    ps.setLong(1, TRAVA);
+                    ps.execute();
+                }
+            }
+        } catch (SQLException e) {
+            log.debug("[ESTOQUE-ALERTA] falha ao soltar a trava: {}", e.getMessage());
+        }
+        trava = null;
+    }
+}
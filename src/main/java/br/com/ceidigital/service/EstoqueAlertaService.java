@@ -0,0 +1,291 @@
+package br.com.ceidigital.service;
+
+import br.com.ceidigital.domain.Empresa;
+import br.com.ceidigital.domain.Usuario;
+import br.com.ceidigital.repository.EmpresaRepository;
+import br.com.ceidigital.repository.ProdutoRemovidoRepository;
+import br.com.ceidigital.repository.ProdutoRepository;
+import br.com.ceidigital.repository.UsuarioRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Alertas de estoque baixo: por empresa, um índice em memória dos produtos com estoque mínimo,
+ * ordenado pela folga (quantidade - mínimo). Os {@link ProdutoAlteradoEvent} recarregam só os
+ * produtos alterados; um produto que passa a ficar abaixo do mínimo entra na fila da empresa, e
+ * {@link #enviarResumos()} manda um único resumo por empresa com os novos e todos os que estão abaixo.
+ * <p>
+ * Só a instância que tem a trava do {@link EstoqueAlertaJob} mantém o índice; as alterações feitas nas
+ * outras instâncias chegam por {@link #sincronizar()}, que lê do banco o que mudou desde o último ciclo.
+ */
+@Service
+public class EstoqueAlertaService {
+    private static final Logger log = LoggerFactory.getLogger(EstoqueAlertaService.class);
+
+    private static final int LINHAS_MAXIMAS = 50;
+    // Acima disso a empresa é comparada inteira, em vez de um "in" com todos os ids
+    private static final int IDS_MAXIMOS = 1000;
+
+    private final ProdutoRepository produtoRepository;
+    private final ProdutoRemovidoRepository removidoRepository;
+    private final ProdutoService produtoService;
+    private final EmpresaRepository empresaRepository;
+    private final UsuarioRepository usuarioRepository;
+    private final NotificationService notificationService;
+    private final boolean sms;
+    private final Duration margem;
+    private final Map<Long, IndiceEmpresa> indices = new ConcurrentHashMap<>();
+    private volatile boolean carregado;
+    // Alterações até aqui já estão no índice (carimbo atualizado_em / removido_em)
+    private volatile LocalDateTime sincronizadoAte;
+
+    public EstoqueAlertaService(
+            ProdutoRepository produtoRepository,
+            ProdutoRemovidoRepository removidoRepository,
+            ProdutoService produtoService,
+            EmpresaRepository empresaRepository,
+            UsuarioRepository usuarioRepository,
+            NotificationService notificationService,
+            @Value("${app.estoque.alerta.sms:false}") boolean sms,
+            @Value("${app.produtos.sincronizacao.margem:2s}") Duration margem
+    ) {
+        this.produtoRepository = produtoRepository;
+        this.removidoRepository = removidoRepository;
+        this.produtoService = produtoService;
+        this.empresaRepository = empresaRepository;
+        this.usuarioRepository = usuarioRepository;
+        this.notificationService = notificationService;
+        this.sms = sms;
+        this.margem = margem;
+    }
+
+    /** Produto monitorado; folga negativa = abaixo do mínimo. */
+    public record Item(Long idProduto, String nomeProduto, int quantidadeEstoque, int estoqueMinimo) {
+        public long folga() {
+            return (long) quantidadeEstoque - estoqueMinimo;
+        }
+    }
+
+    /** Resumo de uma empresa: os que ficaram abaixo do mínimo desde o último e todos os abaixo, do mais ao menos urgente. */
+    public record Resumo(List<Item> novos, List<Item> abaixo) {}
+
+    /**
+     * Carrega o índice de todas as empresas, sem avisar sobre o que já estava abaixo do mínimo
+     * (esses produtos aparecem no próximo resumo da empresa). O que for confirmado durante a carga,
+     * inclusive eventos recebidos antes dela terminar, entra no próximo {@link #sincronizar()}.
+     */
+    public int carregar() {
+        indices.clear();
+        LocalDateTime desde = confirmadoAte(); // antes da leitura: nada confirmado depois fica de fora
+        Map<Long, List<Item>> porEmpresa = new HashMap<>();
+        for (Object[] linha : produtoRepository.camposEstoqueMinimo()) {
+            porEmpresa.computeIfAbsent((Long) linha[1], k -> new ArrayList<>()).add(item(linha));
+        }
+        porEmpresa.forEach((idEmpresa, itens) -> {
+            IndiceEmpresa indice = indices.computeIfAbsent(idEmpresa, k -> new IndiceEmpresa());
+            itens.forEach(i -> indice.gravar(i, false));
+        });
+        sincronizadoAte = desde;
+        carregado = true;
+        return porEmpresa.values().stream().mapToInt(List::size).sum();
+    }
+
+    /** Descarta o índice (a instância deixou de ter a trava); os eventos passam a ser ignorados. */
+    public void descarregar() {
+        carregado = false;
+        indices.clear();
+    }
+
+    /**
+     * Traz para o índice os produtos alterados ou excluídos desde a última sincronização, em qualquer
+     * instância; devolve quantos foram relidos. Não faz nada se o índice não estiver carregado.
+     */
+    public int sincronizar() {
+        if (!carregado) return 0;
+        LocalDateTime desde = sincronizadoAte;
+        LocalDateTime ate = confirmadoAte();
+        if (!ate.isAfter(desde)) return 0; // transação aberta desde antes do último ciclo
+        Map<Long, List<Long>> alterados = new HashMap<>();
+        for (Object[] linha : produtoRepository.alteradosEntre(desde, ate)) {
+            alterados.computeIfAbsent((Long) linha[1], k -> new ArrayList<>()).add((Long) linha[0]);
+        }
+        alterados.forEach(this::atualizar);
+        for (Object[] linha : removidoRepository.removidosEntre(desde, ate)) {
+            IndiceEmpresa indice = indices.get((Long) linha[1]);
+            if (indice != null) indice.remover((Long) linha[0]);
+        }
+        sincronizadoAte = ate;
+        return alterados.values().stream().mapToInt(List::size).sum();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void aoAlterarProdutos(ProdutoAlteradoEvent evento) {
+        if (!carregado) return; // sem a trava, ou ainda carregando: o próximo sincronizar() lê do banco
+        if (evento.removidos()) {
+            IndiceEmpresa indice = indices.get(evento.idEmpresa());
+            if (indice != null) evento.ids().forEach(indice::remover);
+            return;
+        }
+        atualizar(evento.idEmpresa(), evento.ids());
+    }
+
+    private void atualizar(Long idEmpresa, Collection<Long> ids) {
+        IndiceEmpresa indice = indices.computeIfAbsent(idEmpresa, k -> new IndiceEmpresa());
+        // Empresa toda alterada (ex.: importação) ou ids demais: compara com o estado atual de todos os monitorados
+        if (ids.isEmpty() || ids.size() > IDS_MAXIMOS) {
+            indice.sincronizar(produtoRepository.camposEstoqueMinimoPorEmpresa(idEmpresa).stream().map(EstoqueAlertaService::item).toList());
+        } else {
+            indice.atualizar(ids, produtoRepository.camposEstoqueMinimo(ids).stream().map(EstoqueAlertaService::item).toList());
+        }
+    }
+
+    // Carimbos vêm do relógio de cada instância: a margem cobre a diferença entre eles e o banco
+    private LocalDateTime confirmadoAte() {
+        return produtoService.confirmadoAte().minus(margem);
+    }
+
+    /** Envia um resumo por empresa que tem produtos novos abaixo do mínimo; devolve quantas empresas foram avisadas. */
+    public int enviarResumos() {
+        int enviados = 0;
+        for (Map.Entry<Long, IndiceEmpresa> e : indices.entrySet()) {
+            Resumo resumo = e.getValue().resumo();
+            if (resumo.novos().isEmpty()) continue;
+            try {
+                if (enviar(e.getKey(), resumo)) enviados++;
+            } catch (RuntimeException ex) {
+                e.getValue().devolver(resumo.novos()); // tenta de novo no próximo ciclo
+                log.warn("[ESTOQUE-ALERTA] falha ao avisar a empresa {}: {}", e.getKey(), ex.getMessage());
+            }
+        }
+        return enviados;
+    }
+
+    private boolean enviar(Long idEmpresa, Resumo resumo) {
+        Empresa empresa = empresaRepository.findById(idEmpresa).orElse(null);
+        if (empresa == null) return false;
+        Set<String> emails = new LinkedHashSet<>();
+        if (empresa.getEmail() != null && !empresa.getEmail().isBlank()) emails.add(empresa.getEmail().trim());
+        for (Usuario u : usuarioRepository.findByEmpresaIdAndAtivoTrue(idEmpresa)) emails.add(u.getEmail());
+        if (emails.isEmpty() && (!sms || empresa.getTelefone() == null || empresa.getTelefone().isBlank())) {
+            log.info("[ESTOQUE-ALERTA] empresa {} sem email ou telefone para o aviso", idEmpresa);
+            return false;
+        }
+        String assunto = "Estoque baixo: " + resumo.novos().size() + " produto(s) abaixo do mínimo";
+        String corpo = corpo(empresa, resumo);
+        emails.forEach(email -> notificationService.sendEmail(email, assunto, corpo));
+        if (sms && empresa.getTelefone() != null && !empresa.getTelefone().isBlank()) {
+            notificationService.sendSms(empresa.getTelefone(), "CEI Digital: " + resumo.novos().size()
+                    + " produto(s) ficaram abaixo do estoque mínimo (" + resumo.abaixo().size() + " no total). Detalhes no email.");
+        }
+        log.info("[ESTOQUE-ALERTA] empresa {}: {} novo(s), {} abaixo do mínimo, {} destinatário(s)",
+                idEmpresa, resumo.novos().size(), resumo.abaixo().size(), emails.size());
+        return true;
+    }
+
+    private static String corpo(Empresa empresa, Resumo resumo) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Produtos de ").append(empresa.getNome()).append(" que ficaram abaixo do estoque mínimo:\n\n");
+        linhas(sb, resumo.novos());
+        sb.append("\nTotal de produtos abaixo do mínimo agora: ").append(resumo.abaixo().size()).append("\n\n");
+        linhas(sb, resumo.abaixo());
+        return sb.toString();
+    }
+
+    private static void linhas(StringBuilder sb, List<Item> itens) {
+        for (int i = 0; i < Math.min(itens.size(), LINHAS_MAXIMAS); i++) {
+            Item item = itens.get(i);
+            sb.append("- ").append(item.nomeProduto()).append(" (#").append(item.idProduto()).append("): estoque ")
+                    .append(item.quantidadeEstoque()).append(", mínimo ").append(item.estoqueMinimo()).append('\n');
+        }
+        if (itens.size() > LINHAS_MAXIMAS) sb.append("... e mais ").append(itens.size() - LINHAS_MAXIMAS).append('\n');
+    }
+
+    private static Item item(Object[] linha) {
+        return new Item((Long) linha[0], (String) linha[2], (Integer) linha[3], (Integer) linha[4]);
+    }
+
+    private static final Comparator<Item> URGENCIA = Comparator.comparingLong(Item::folga).thenComparing(Item::idProduto);
+
+    // Limite da parte abaixo do mínimo no índice: folga 0 vem depois de qualquer folga negativa
+    private static final Item LIMIAR = new Item(Long.MIN_VALUE, null, 0, 0);
+
+    private static final class IndiceEmpresa {
+        private final TreeSet<Item> porFolga = new TreeSet<>(URGENCIA);
+        private final Map<Long, Item> porId = new HashMap<>();
+        // Produtos que cruzaram o mínimo para baixo desde o último resumo
+        private final Set<Long> novos = new LinkedHashSet<>();
+
+        /**
+         * @param avisar se um produto ainda não monitorado (novo, reativado ou com mínimo recém-definido)
+         *               já abaixo do mínimo deve entrar no próximo resumo
+         */
+        synchronized void gravar(Item item, boolean avisar) {
+            Item anterior = porId.put(item.idProduto(), item);
+            if (anterior != null) porFolga.remove(anterior);
+            porFolga.add(item);
+            if (item.folga() >= 0) {
+                novos.remove(item.idProduto());
+            } else if (anterior == null ? avisar : anterior.folga() >= 0) {
+                novos.add(item.idProduto());
+            }
+        }
+
+        synchronized void remover(Long id) {
+            Item anterior = porId.remove(id);
+            if (anterior != null) porFolga.remove(anterior);
+            novos.remove(id);
+        }
+
+        /** Grava os produtos recarregados; os ids que não voltaram deixam de ser monitorados. */
+        synchronized void atualizar(Collection<Long> ids, List<Item> itens) {
+            Set<Long> pendentes = new HashSet<>(ids);
+            for (Item item : itens) {
+                gravar(item, true);
+                pendentes.remove(item.idProduto());
+            }
+            pendentes.forEach(this::remover);
+        }
+
+        /** Substitui o conteúdo pelo estado atual da empresa, avisando sobre quem cruzou o mínimo. */
+        synchronized void sincronizar(List<Item> itens) {
+            Set<Long> fora = new HashSet<>(porId.keySet());
+            for (Item item : itens) {
+                gravar(item, true);
+                fora.remove(item.idProduto());
+            }
+            fora.forEach(this::remover);
+        }
+
+        /** Novos e todos os abaixo do mínimo (só a parte inicial do índice); esvazia a fila de novos. */
+        synchronized Resumo resumo() {
+            List<Item> abaixo = new ArrayList<>(porFolga.headSet(LIMIAR, false));
+            List<Item> novosItens = novos.stream().map(porId::get).toList();
+            novos.clear();
+            return new Resumo(novosItens, abaixo);
+        }
+
+        synchronized void devolver(List<Item> itens) {
+            for (Item item : itens) {
+                Item atual = porId.get(item.idProduto());
+                if (atual != null && atual.folga() < 0) novos.add(item.idProduto());
+            }
+        }
+    }
+}
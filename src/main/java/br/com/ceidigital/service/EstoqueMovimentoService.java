@@ -0,0 +1,121 @@
+package br.com.ceidigital.service;
+
+import br.com.ceidigital.domain.EstoqueSnapshot;
+import br.com.ceidigital.domain.MovimentoEstoque;
+import br.com.ceidigital.repository.EstoqueSnapshotRepository;
+import br.com.ceidigital.repository.MovimentoEstoqueRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Livro-razão do estoque: cada alteração de quantidade vira um movimento somente-inserção,
+ * gravado na mesma transação da alteração. Snapshots periódicos (EstoqueSnapshotJob) materializam
+ * o saldo por produto até um id de movimento, e o estoque num instante T é o último snapshot até T
+ * mais os movimentos de id maior gravados até T.
+ */
+@Service
+public class EstoqueMovimentoService {
+
+    private static final String INSERT = "insert into movimento_estoque (id_produto, id_empresa, delta, quantidade, origem, criado_em) "
+            + "values (?, ?, ?, ?, ?, ?)";
+    // Um snapshot por produto movimentado com id em (cursor, ?]: o snapshot anterior mais os deltas da janela.
+    // Cursor e snapshot anterior são lidos no mesmo comando, então duas gerações simultâneas não somam a janela duas vezes.
+    private static final String SNAPSHOT = "with c as (select coalesce(max(ate_movimento), 0) as desde from estoque_snapshot) "
+            + "insert into estoque_snapshot (id_produto, id_empresa, quantidade, ate, ate_movimento, criado_em) "
+            + "select w.id_produto, w.id_empresa, coalesce((select s.quantidade from estoque_snapshot s "
+            + "where s.id_produto = w.id_produto and s.ate_movimento is not null order by s.ate_movimento desc limit 1), 0) + w.delta, ?, ?, ? "
+            + "from (select m.id_produto, min(m.id_empresa) as id_empresa, sum(m.delta) as delta from movimento_estoque m, c "
+            + "where m.id > c.desde and m.id <= ? group by m.id_produto) w";
+
+    /**
+     * Ponto do livro-razão: o maior id de movimento visível, o xmax do snapshot do PostgreSQL em que
+     * foi lido (transações de xid menor estavam confirmadas ou em andamento) e o instante da leitura.
+     */
+    public record Marco(long ultimoMovimento, long xmax, LocalDateTime em) {}
+
+    /** Movimento a gravar. */
+    public record Movimento(Long idProduto, Long idEmpresa, int delta, int quantidade, MovimentoEstoque.Origem origem) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MovimentoEstoqueRepository movimentoRepository;
+    private final EstoqueSnapshotRepository snapshotRepository;
+    private final int tamanhoLote;
+
+    public EstoqueMovimentoService(
+            JdbcTemplate jdbcTemplate,
+            MovimentoEstoqueRepository movimentoRepository,
+            EstoqueSnapshotRepository snapshotRepository,
+            @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}") int tamanhoLote
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.movimentoRepository = movimentoRepository;
+        this.snapshotRepository = snapshotRepository;
+        this.tamanhoLote = tamanhoLote;
+    }
+
+    /** Grava os movimentos com JDBC batch, na transação do chamador. */
+    public void registrar(List<Movimento> movimentos, LocalDateTime em) {
+        if (movimentos.isEmpty()) return;
+        Timestamp criadoEm = Timestamp.valueOf(em);
+        jdbcTemplate.batchUpdate(INSERT, movimentos, tamanhoLote, (ps, m) -> {
+            ps.setLong(1, m.idProduto());
+            ps.setLong(2, m.idEmpresa());
+            ps.setInt(3, m.delta());
+            ps.setInt(4, m.quantidade());
+            ps.setString(5, m.origem().name());
+            ps.setTimestamp(6, criadoEm);
+        });
+    }
+
+    /** Estoque do produto no instante: último snapshot até ele mais os movimentos posteriores ao snapshot. */
+    public int quantidadeEm(Long idProduto, LocalDateTime em) {
+        Optional<EstoqueSnapshot> snapshot = snapshotRepository
+                .findFirstByIdProdutoAndAteLessThanEqualAndAteMovimentoNotNullOrderByAteMovimentoDesc(idProduto, em);
+        long after = snapshot.map(EstoqueSnapshot::getAteMovimento).orElse(0L);
+        long base = snapshot.map(EstoqueSnapshot::getQuantidade).orElse(0);
+        return (int) (base + movimentoRepository.somarDeltas(idProduto, after, em));
+    }
+
+    /** Histórico do produto em páginas keyset por id do movimento. */
+    public List<MovimentoEstoque> listar(Long idProduto, Long after, int limite) {
+        return movimentoRepository.buscarPagina(idProduto, after != null ? after : 0L, Limit.of(limite));
+    }
+
+    /**
+     * Grava um movimento SALDO_INICIAL para cada produto com estoque e ainda sem movimentos
+     * (produtos anteriores ao livro-razão). Retorna quantos foram gravados.
+     */
+    public int registrarSaldosIniciais() {
+        return jdbcTemplate.update("insert into movimento_estoque (id_produto, id_empresa, delta, quantidade, origem, criado_em) "
+                + "select p.id_produto, p.id_empresa, p.quantidade_estoque, p.quantidade_estoque, ?, ? from produto p "
+                + "where p.quantidade_estoque <> 0 and not exists (select 1 from movimento_estoque m where m.id_produto = p.id_produto)",
+                MovimentoEstoque.Origem.SALDO_INICIAL.name(), Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    /** Tira um {@link Marco} do livro-razão, a ser materializado por {@link #gerarSnapshots} numa execução seguinte. */
+    public Marco marcar() {
+        return jdbcTemplate.queryForObject("select coalesce(max(id), 0), pg_snapshot_xmax(pg_current_snapshot())::text::bigint from movimento_estoque",
+                (rs, n) -> new Marco(rs.getLong(1), rs.getLong(2), LocalDateTime.now()));
+    }
+
+    /**
+     * Materializa os saldos dos produtos movimentados depois do último snapshot até o movimento do
+     * marco. Os ids são reservados no INSERT, não no commit: um movimento de id menor que o do marco
+     * pode ainda estar numa transação aberta. Por isso só se gera quando todas as transações em
+     * andamento no marco já terminaram (xmin atual >= xmax do marco); a partir daí nenhum movimento
+     * até o marco aparece depois. Retorna quantos snapshots foram gravados, ou -1 se ainda não dá.
+     */
+    public int gerarSnapshots(Marco marco) {
+        Long xmin = jdbcTemplate.queryForObject("select pg_snapshot_xmin(pg_current_snapshot())::text::bigint", Long.class);
+        if (xmin == null || xmin < marco.xmax()) return -1;
+        return jdbcTemplate.update(SNAPSHOT, Timestamp.valueOf(marco.em()), marco.ultimoMovimento(),
+                Timestamp.valueOf(LocalDateTime.now()), marco.ultimoMovimento());
+    }
+}
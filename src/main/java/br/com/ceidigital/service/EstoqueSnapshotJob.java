@@ -0,0 +1,54 @@
+package br.com.ceidigital.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tarefa periódica que materializa o saldo de estoque dos produtos movimentados desde o último
+ * snapshot. Cada execução materializa até o marco tirado na anterior (se as transações abertas
+ * naquele momento já terminaram) e tira um novo marco.
+ * Na inicialização grava o saldo inicial dos produtos que ainda não têm movimentos.
+ */
+@Component
+public class EstoqueSnapshotJob implements CommandLineRunner {
+    private static final Logger log = LoggerFactory.getLogger(EstoqueSnapshotJob.class);
+
+    private final EstoqueMovimentoService estoque;
+    // Marco da execução anterior, ainda não materializado (só em memória: após reiniciar, espera um ciclo)
+    private EstoqueMovimentoService.Marco pendente;
+
+    public EstoqueSnapshotJob(EstoqueMovimentoService estoque) {
+        this.estoque = estoque;
+    }
+
+    @Override
+    public void run(String... args) {
+        try {
+            int n = estoque.registrarSaldosIniciais();
+            if (n > 0) log.info("[ESTOQUE] saldo inicial gravado para {} produto(s)", n);
+        } catch (Exception e) {
+            log.warn("[ESTOQUE] falha ao gravar saldos iniciais: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(cron = "${app.estoque.snapshot.cron:0 */15 * * * *}")
+    public void executar() {
+        try {
+            if (pendente != null) {
+                long inicio = System.nanoTime();
+                int n = estoque.gerarSnapshots(pendente);
+                if (n < 0) {
+                    log.info("[ESTOQUE] transações abertas desde o movimento {}; snapshots adiados", pendente.ultimoMovimento());
+                    return;
+                }
+                log.info("[ESTOQUE] {} snapshot(s) de estoque gerado(s) em {} ms", n, (System.nanoTime() - inicio) / 1_000_000);
+            }
+            pendente = estoque.marcar();
+        } catch (Exception e) {
+            log.warn("[ESTOQUE] falha ao gerar snapshots: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package br.com.ceidigital.service;
+
+import br.com.ceidigital.repository.ProdutoRepository;
+import br.com.ceidigital.storage.ImagemCache;
+import br.com.ceidigital.storage.ImagemReferencias;
+import br.com.ceidigital.storage.ImagemStorage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tarefa periódica que recupera o espaço de imagens que nenhum Produto referencia mais
+ * (excluídas ou substituídas por novo upload) no storage configurado.
+ * Também reconcilia as contagens de referência com o banco, na inicialização e a cada execução.
+ */
+@Component
+public class ImagemCompactacaoJob implements CommandLineRunner {
+    private static final Logger log = LoggerFactory.getLogger(ImagemCompactacaoJob.class);
+
+    private final ImagemStorage store;
+    private final ImagemReferencias referencias;
+    private final ImagemCache cache;
+    private final ProdutoRepository produtoRepository;
+    private final Duration carencia;
+    private final double limiarDesperdicio;
+    private final Counter bytesRecuperados;
+
+    public ImagemCompactacaoJob(
+            ImagemStorage store,
+            ImagemReferencias referencias,
+            ImagemCache cache,
+            ProdutoRepository produtoRepository,
+            @Value("${app.imagens.compactacao.carencia:10m}") Duration carencia,
+            @Value("${app.imagens.compactacao.limiar-desperdicio:0.3}") double limiarDesperdicio,
+            MeterRegistry registry
+    ) {
+        this.store = store;
+        this.referencias = referencias;
+        this.cache = cache;
+        this.produtoRepository = produtoRepository;
+        this.carencia = carencia;
+        this.limiarDesperdicio = limiarDesperdicio;
+        this.bytesRecuperados = Counter.builder("imagens.compactacao.bytes.recuperados").baseUnit("bytes").register(registry);
+    }
+
+    @Override
+    public void run(String... args) {
+        try {
+            reconciliarReferencias();
+        } catch (Exception e) {
+            log.warn("[IMAGENS] falha ao carregar referências de imagens: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(cron = "${app.imagens.compactacao.cron:0 30 3 * * *}")
+    public void executar() {
+        try {
+            // Variantes (@wN) vivem enquanto o original tiver referências
+            Set<String> bases = new HashSet<>();
+            for (String chave : reconciliarReferencias().keySet()) {
+                bases.add(base(chave));
+            }
+            ImagemStorage.Compactacao r = store.compactar(chave -> {
+                boolean viva = bases.contains(base(chave));
+                if (!viva) cache.invalidar(ImagemStorage.PREFIXO + chave);
+                return viva;
+            }, carencia, limiarDesperdicio);
+            bytesRecuperados.increment(r.bytesRecuperados());
+            log.info("[IMAGENS] compactação: {} segmento(s) reescrito(s), {} imagem(ns) órfã(s), {} bytes recuperados",
+                    r.segmentos(), r.orfas(), r.bytesRecuperados());
+        } catch (Exception e) {
+            log.warn("[IMAGENS] falha na compactação: {}", e.getMessage(), e);
+        }
+    }
+
+    // O banco é a fonte da verdade; as contagens mantidas em memória pelos uploads são corrigidas aqui
+    private Map<String, Integer> reconciliarReferencias() {
+        Map<String, Integer> contagens = new HashMap<>();
+        for (Object[] linha : produtoRepository.contarReferenciasImagem()) {
+            ImagemStorage.chaveDe((String) linha[0]).ifPresent(c -> contagens.put(c, ((Number) linha[1]).intValue()));
+        }
+        referencias.redefinir(contagens);
+        return contagens;
+    }
+
+    // "<sha256>@w128.jpg" e "<sha256>.png" -> "<sha256>" (também vale para as chaves antigas produto_<id>_<millis>)
+    private static String base(String chave) {
+        int ponto = chave.lastIndexOf('.');
+        String semExt = ponto > 0 ? chave.substring(0, ponto) : chave;
+        int variante = semExt.lastIndexOf("@w");
+        return variante > 0 ? semExt.substring(0, variante) : semExt;
+    }
+}
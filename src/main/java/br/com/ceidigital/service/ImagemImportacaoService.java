@@ -0,0 +1,260 @@
+package br.com.ceidigital.service;
+
+import br.com.ceidigital.domain.ImagemMetadados;
+import br.com.ceidigital.domain.Produto;
+import br.com.ceidigital.repository.ProdutoRepository;
+import br.com.ceidigital.storage.DimensoesImagem;
+import br.com.ceidigital.storage.ImagemCache;
+import br.com.ceidigital.storage.ImagemReferencias;
+import br.com.ceidigital.storage.ImagemRejeitadaException;
+import br.com.ceidigital.storage.ImagemStorage;
+import br.com.ceidigital.storage.TipoImagem;
+import br.com.ceidigital.web.dto.response.ImagemImportacaoDto;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Importação em lote de imagens de produto a partir de um zip (mesmo layout do antigo
+ * imagens_produto.zip). As entradas são lidas em sequência do zip e validadas/gravadas em paralelo
+ * (um worker por núcleo, com número limitado de entradas em memória); os caminhos de imagem
+ * são atualizados ao final numa única transação com updates em lote.
+ */
+@Service
+public class ImagemImportacaoService {
+    private static final Logger log = LoggerFactory.getLogger(ImagemImportacaoService.class);
+
+    // Nome no layout antigo: produto_<id>_<millis>.<ext>
+    private static final Pattern NOME_LEGADO = Pattern.compile("(?:.*/)?produto_(\\d+)_.*");
+
+    private final ImagemStorage store;
+    private final ImagemReferencias referencias;
+    private final ImagemCache cache;
+    private final ImagemVarianteService variantes;
+    private final ProdutoRepository produtoRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventos;
+    private final long tamanhoMaximoImagem;
+    private final long pixelsMaximo;
+    private final int paralelismo;
+    private final ExecutorService executor;
+
+    public ImagemImportacaoService(
+            ImagemStorage store,
+            ImagemReferencias referencias,
+            ImagemCache cache,
+            ImagemVarianteService variantes,
+            ProdutoRepository produtoRepository,
+            TransactionTemplate transactionTemplate,
+            ApplicationEventPublisher eventos,
+            @Value("${app.imagens.tamanho-maximo:5MB}") DataSize tamanhoMaximoImagem,
+            @Value("${app.imagens.pixels-maximo:25000000}") long pixelsMaximo
+    ) {
+        this.store = store;
+        this.referencias = referencias;
+        this.cache = cache;
+        this.variantes = variantes;
+        this.produtoRepository = produtoRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.eventos = eventos;
+        this.tamanhoMaximoImagem = tamanhoMaximoImagem.toBytes();
+        this.pixelsMaximo = pixelsMaximo;
+        this.paralelismo = Runtime.getRuntime().availableProcessors();
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(paralelismo, r -> {
+            Thread t = new Thread(r, "imagem-importacao-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Importa as imagens do zip. {@code mapeamento} associa nome da entrada -> idProduto; entradas
+     * ausentes do mapeamento usam o id do nome no layout produto_<id>_...; {@code idEmpresa} restringe
+     * os produtos à empresa do usuário (null = administrador, sem restrição).
+     */
+    public List<ImagemImportacaoDto> importar(InputStream zip, Map<String, Long> mapeamento, Long idEmpresa) throws IOException {
+        List<Future<ImagemImportacaoDto>> futuros = new ArrayList<>();
+        // Caminho (endereçado pelo conteúdo) -> metadados apurados na gravação
+        Map<String, ImagemMetadados> metadados = new ConcurrentHashMap<>();
+        // Limita quantas entradas descompactadas ficam em memória ao mesmo tempo
+        Semaphore emVoo = new Semaphore(paralelismo * 2);
+        try (ZipInputStream zis = new ZipInputStream(zip)) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                if (entry.isDirectory()) continue;
+                String nome = entry.getName();
+                Long idProduto = idProduto(nome, mapeamento);
+                byte[] dados = zis.readNBytes((int) Math.min(Integer.MAX_VALUE - 8, tamanhoMaximoImagem + 1));
+                if (dados.length > tamanhoMaximoImagem) {
+                    futuros.add(concluido(new ImagemImportacaoDto(nome, idProduto, false, "Imagem excede o limite de " + tamanhoMaximoImagem + " bytes", null)));
+                    continue;
+                }
+                emVoo.acquireUninterruptibly();
+                try {
+                    futuros.add(executor.submit(() -> {
+                        try {
+                            return processar(nome, idProduto, dados, metadados);
+                        } finally {
+                            emVoo.release();
+                        }
+                    }));
+                } catch (RuntimeException e) {
+                    emVoo.release();
+                    throw e;
+                }
+            }
+        }
+
+        List<ImagemImportacaoDto> resultados = new ArrayList<>(futuros.size());
+        for (Future<ImagemImportacaoDto> f : futuros) {
+            try {
+                resultados.add(f.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Importação interrompida", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Falha na importação: " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+        return atualizarProdutos(resultados, metadados, idEmpresa);
+    }
+
+    // Valida (tipo pelos magic bytes + dimensões do cabeçalho, sem decodificar) e grava no store; roda nos workers
+    private ImagemImportacaoDto processar(String nome, Long idProduto, byte[] dados, Map<String, ImagemMetadados> metadados) {
+        if (idProduto == null) {
+            return new ImagemImportacaoDto(nome, null, false, "Produto não identificado para o arquivo", null);
+        }
+        Optional<TipoImagem> tipo = TipoImagem.detectar(dados);
+        if (tipo.isEmpty()) {
+            return new ImagemImportacaoDto(nome, idProduto, false, "Formato de imagem não suportado", null);
+        }
+        try {
+            DimensoesImagem dimensoes = tipo.get() == TipoImagem.WEBP ? null : dimensoes(dados);
+            if (tipo.get() != TipoImagem.WEBP && dimensoes == null) {
+                return new ImagemImportacaoDto(nome, idProduto, false, "Imagem corrompida", null);
+            }
+            if (dimensoes != null && dimensoes.pixels() > pixelsMaximo) {
+                return new ImagemImportacaoDto(nome, idProduto, false, "Imagem excede o limite de " + pixelsMaximo + " pixels", null);
+            }
+            ImagemStorage.Gravacao gravacao = store.gravar(tipo.get().extensao(), new ByteArrayInputStream(dados), tamanhoMaximoImagem);
+            String caminho = gravacao.caminho();
+            metadados.put(caminho, new ImagemMetadados(gravacao.tamanho(), tipo.get().mediaType(),
+                    dimensoes != null ? dimensoes.largura() : null, dimensoes != null ? dimensoes.altura() : null, gravacao.sha256()));
+            return new ImagemImportacaoDto(nome, idProduto, true, null, caminho);
+        } catch (ImagemRejeitadaException | IOException e) {
+            return new ImagemImportacaoDto(nome, idProduto, false, e.getMessage(), null);
+        }
+    }
+
+    // Cabeçalho ilegível (truncado, formato sem leitor) = imagem corrompida
+    private static DimensoesImagem dimensoes(byte[] dados) {
+        try {
+            return DimensoesImagem.ler(new ByteArrayInputStream(dados)).orElse(null);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Aplica os caminhos gravados numa única transação; os UPDATEs saem em lote (hibernate.jdbc.batch_size)
+    private List<ImagemImportacaoDto> atualizarProdutos(List<ImagemImportacaoDto> resultados, Map<String, ImagemMetadados> metadados, Long idEmpresa) {
+        Map<Long, String> novos = new LinkedHashMap<>();
+        for (ImagemImportacaoDto r : resultados) {
+            if (r.sucesso()) novos.put(r.idProduto(), r.caminhoImagem()); // a última entrada do produto prevalece
+        }
+        Map<Long, String> anteriores = new HashMap<>();
+        Map<Long, String> recusados = new HashMap<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Produto> produtos = produtoRepository.findAllById(novos.keySet());
+            Map<Long, Produto> porId = new HashMap<>();
+            produtos.forEach(p -> porId.put(p.getIdProduto(), p));
+            LocalDateTime agora = LocalDateTime.now();
+            List<Produto> alterados = new ArrayList<>();
+            for (Map.Entry<Long, String> e : novos.entrySet()) {
+                Produto p = porId.get(e.getKey());
+                if (p == null) {
+                    recusados.put(e.getKey(), "Produto não encontrado");
+                } else if (idEmpresa != null && !idEmpresa.equals(p.getEmpresa().getId())) {
+                    recusados.put(e.getKey(), "Produto de outra empresa");
+                } else {
+                    anteriores.put(p.getIdProduto(), p.getCaminhoImagem());
+                    p.trocarImagem(e.getValue(), metadados.get(e.getValue()));
+                    p.setAtualizadoEm(agora);
+                    alterados.add(p);
+                }
+            }
+            produtoRepository.saveAll(alterados);
+            // Entregue aos caches após o commit, uma vez por empresa
+            Map<Long, List<Long>> porEmpresa = new HashMap<>();
+            alterados.forEach(p -> porEmpresa.computeIfAbsent(p.getEmpresa().getId(), k -> new ArrayList<>()).add(p.getIdProduto()));
+            porEmpresa.forEach((empresa, ids) -> eventos.publishEvent(new ProdutoAlteradoEvent(empresa, ids, false)));
+        });
+
+        for (Map.Entry<Long, String> e : anteriores.entrySet()) {
+            String caminho = novos.get(e.getKey());
+            String anterior = e.getValue();
+            if (caminho.equals(anterior)) continue;
+            referencias.reter(caminho);
+            if (anterior != null && referencias.liberar(anterior) == 0) cache.invalidar(anterior);
+            variantes.agendar(caminho);
+        }
+        log.info("[IMAGENS] importação em lote: {} entrada(s), {} produto(s) atualizado(s)", resultados.size(), anteriores.size());
+
+        List<ImagemImportacaoDto> finais = new ArrayList<>(resultados.size());
+        for (ImagemImportacaoDto r : resultados) {
+            String motivo = r.sucesso() ? recusados.get(r.idProduto()) : null;
+            finais.add(motivo == null ? r : new ImagemImportacaoDto(r.arquivo(), r.idProduto(), false, motivo, null));
+        }
+        return finais;
+    }
+
+    private static Long idProduto(String nome, Map<String, Long> mapeamento) {
+        if (mapeamento != null) {
+            Long id = mapeamento.get(nome);
+            if (id == null) {
+                int barra = nome.lastIndexOf('/');
+                id = mapeamento.get(barra >= 0 ? nome.substring(barra + 1) : nome);
+            }
+            if (id != null) return id;
+        }
+        Matcher m = NOME_LEGADO.matcher(nome);
+        return m.matches() ? Long.valueOf(m.group(1)) : null;
+    }
+
+    private static Future<ImagemImportacaoDto> concluido(ImagemImportacaoDto r) {
+        return CompletableFuture.completedFuture(r);
+    }
+}
@@ -0,0 +1,154 @@
+package br.com.ceidigital.service;
+
+import br.com.ceidigital.storage.DimensoesImagem;
+import br.com.ceidigital.storage.ImagemStorage;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gera, em segundo plano, variantes de largura fixa (ex.: 128/512 px) das imagens de produto
+ * e as grava no mesmo store do original. A geração roda num pool limitado com fila limitada:
+ * se a fila estiver cheia a tarefa é descartada (a leitura cai no original), nunca bloqueando o upload.
+ * As dimensões são lidas do cabeçalho antes de decodificar: imagens acima de app.imagens.pixels-maximo
+ * ficam sem variantes, já que a decodificação ocupa largura x altura x 4 bytes no heap.
+ */
+@Service
+public class ImagemVarianteService {
+    private static final Logger log = LoggerFactory.getLogger(ImagemVarianteService.class);
+
+    private final ImagemStorage store;
+    private final List<Integer> larguras;
+    private final long pixelsMaximo;
+    private final ThreadPoolExecutor executor;
+
+    public ImagemVarianteService(
+            ImagemStorage store,
+            @Value("${app.imagens.variantes.larguras:128,512}") List<Integer> larguras,
+            @Value("${app.imagens.variantes.threads:2}") int threads,
+            @Value("${app.imagens.variantes.fila:100}") int fila,
+            @Value("${app.imagens.pixels-maximo:25000000}") long pixelsMaximo
+    ) {
+        this.store = store;
+        this.larguras = List.copyOf(larguras);
+        this.pixelsMaximo = pixelsMaximo;
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(fila),
+                r -> {
+                    Thread t = new Thread(r, "imagem-variantes-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        executor.shutdownNow();
+    }
+
+    public boolean larguraSuportada(Integer largura) {
+        return largura != null && larguras.contains(largura);
+    }
+
+    /** Agenda a geração das variantes da imagem recém-gravada. Não bloqueia. */
+    public void agendar(String caminhoImagem) {
+        Optional<String> chave = ImagemStorage.chaveDe(caminhoImagem);
+        if (chave.isEmpty()) return;
+        try {
+            executor.execute(() -> gerar(chave.get()));
+        } catch (RejectedExecutionException e) {
+            log.warn("[IMAGENS] fila de variantes cheia; variantes de {} não serão geradas", chave.get());
+        }
+    }
+
+    /**
+     * Caminho da variante pedida se ela já existir no store; caso contrário o caminho original.
+     */
+    public String resolver(String caminhoImagem, Integer largura) throws IOException {
+        if (!larguraSuportada(largura)) return caminhoImagem;
+        Optional<String> chave = ImagemStorage.chaveDe(caminhoImagem);
+        if (chave.isEmpty()) return caminhoImagem;
+        String variante = chaveVariante(chave.get(), largura);
+        return store.tamanho(variante).isPresent() ? ImagemStorage.PREFIXO + variante : caminhoImagem;
+    }
+
+    /** Chave da variante: "produto_1_123.png" -> "produto_1_123@w128.png" (JPEG continua JPEG, o resto vira PNG). */
+    public static String chaveVariante(String chave, int largura) {
+        int ponto = chave.lastIndexOf('.');
+        String base = ponto > 0 ? chave.substring(0, ponto) : chave;
+        return base + "@w" + largura + "." + formatoSaida(chave);
+    }
+
+    private void gerar(String chave) {
+        try {
+            byte[] dados = store.ler(chave);
+            Optional<DimensoesImagem> dimensoes = DimensoesImagem.ler(new ByteArrayInputStream(dados));
+            if (dimensoes.isEmpty()) {
+                log.info("[IMAGENS] formato de {} não decodificável; sem variantes", chave);
+                return;
+            }
+            if (dimensoes.get().largura() <= larguras.stream().mapToInt(Integer::intValue).min().orElse(0)) return; // o original já serve
+            if (dimensoes.get().pixels() > pixelsMaximo) {
+                log.warn("[IMAGENS] {} tem {}x{} pixels, acima de {}; sem variantes",
+                        chave, dimensoes.get().largura(), dimensoes.get().altura(), pixelsMaximo);
+                return;
+            }
+            BufferedImage original = ImageIO.read(new ByteArrayInputStream(dados));
+            if (original == null) {
+                log.info("[IMAGENS] formato de {} não decodificável; sem variantes", chave);
+                return;
+            }
+            for (int largura : larguras) {
+                if (original.getWidth() <= largura) continue; // o original já serve
+                String variante = chaveVariante(chave, largura);
+                if (store.tamanho(variante).isPresent()) continue;
+                store.gravar(variante, redimensionar(original, largura, formatoSaida(chave)));
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("[IMAGENS] falha ao gerar variantes de {}: {}", chave, e.getMessage());
+        }
+    }
+
+    private static byte[] redimensionar(BufferedImage original, int largura, String formato) throws IOException {
+        int altura = Math.max(1, (int) Math.round((double) original.getHeight() * largura / original.getWidth()));
+        // JPEG não tem canal alfa
+        int tipo = "jpg".equals(formato) ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        BufferedImage destino = new BufferedImage(largura, altura, tipo);
+        Graphics2D g = destino.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(original, 0, 0, largura, altura, null);
+        } finally {
+            g.dispose();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(destino, "jpg".equals(formato) ? "jpeg" : "png", out);
+        return out.toByteArray();
+    }
+
+    private static String formatoSaida(String chave) {
+        String c = chave.toLowerCase();
+        return c.endsWith(".jpg") || c.endsWith(".jpeg") ? "jpg" : "png";
+    }
+}
@@ -0,0 +1,14 @@
+package br.com.ceidigital.service;
+
+import java.util.Collection;
+
+/**
+ * Publicado quando produtos de uma empresa são gravados ou removidos. Os ouvintes
+ * (índices e caches em memória) o recebem após o commit da transação.
+ *
+ * @param idEmpresa empresa dos produtos
+ * @param ids       produtos afetados; vazio quando não se sabe quais (ex.: importação em lote),
+ *                  caso em que os ouvintes tratam a empresa inteira como alterada
+ * @param removidos true se os produtos deixaram de existir
+ */
+public record ProdutoAlteradoEvent(Long idEmpresa, Collection<Long> ids, boolean removidos) {}
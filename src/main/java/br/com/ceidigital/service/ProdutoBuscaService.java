@@ -0,0 +1,368 @@
+package br.com.ceidigital.service;
+
+import br.com.ceidigital.repository.ProdutoRepository;
+import br.com.ceidigital.web.dto.response.ProdutoResumoDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Busca textual de produtos por empresa sobre nomeProduto e descricao, em memória.
+ * Cada empresa tem um índice invertido de n-gramas (trigramas para trechos no meio da palavra,
+ * prefixos de 1-2 letras para termos curtos) sobre o texto sem acentos e em minúsculas,
+ * carregado na primeira busca e mantido pelos {@link ProdutoAlteradoEvent}. As listas do índice
+ * guardam posições densas dos produtos em int[] ordenados; empresas com mais de
+ * app.produtos.busca.documentos-maximo produtos não ganham índice e são buscadas no banco.
+ */
+@Service
+public class ProdutoBuscaService {
+    private static final Logger log = LoggerFactory.getLogger(ProdutoBuscaService.class);
+
+    private static final Pattern MARCAS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARADORES = Pattern.compile("[^a-z0-9]+");
+    private static final int N = 3;
+    private static final String PREFIXO = "^";
+    // Sem acento para o LIKE da busca no banco (o mesmo que a decomposição NFD faz no índice)
+    private static final String ACENTOS = "áàâãäéèêëíìîïóòôõöúùûüçñý";
+    private static final String SEM_ACENTOS = "aaaaaeeeeiiiiooooouuuucny";
+    // Busca no banco: candidatos lidos para ordenar por relevância
+    private static final int CANDIDATOS_BANCO = 2000;
+
+    private final ProdutoRepository produtoRepository;
+    private final int documentosMaximo;
+    private final Map<Long, IndiceEmpresa> indices = new ConcurrentHashMap<>();
+    // Empresas acima do limite do índice, buscadas direto no banco
+    private final Set<Long> semIndice = ConcurrentHashMap.newKeySet();
+
+    public ProdutoBuscaService(
+            ProdutoRepository produtoRepository,
+            @Value("${app.produtos.busca.documentos-maximo:200000}") int documentosMaximo
+    ) {
+        this.produtoRepository = produtoRepository;
+        this.documentosMaximo = documentosMaximo;
+    }
+
+    /**
+     * Produtos da empresa cujo nome ou descrição contém todos os termos da consulta (ignorando
+     * acentos e caixa), do mais para o menos relevante: termo no início de palavra do nome,
+     * no meio do nome e, por último, só na descrição.
+     */
+    public List<ProdutoResumoDto> buscar(Long idEmpresa, String consulta, int limite) {
+        List<String> termos = new ArrayList<>(new LinkedHashSet<>(tokens(consulta)));
+        if (termos.isEmpty()) return List.of();
+        IndiceEmpresa indice = semIndice.contains(idEmpresa) ? null : indice(idEmpresa);
+        return indice != null ? indice.buscar(termos, limite) : buscarNoBanco(idEmpresa, termos, limite);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void aoAlterarProdutos(ProdutoAlteradoEvent evento) {
+        // Importação ou exclusões podem trazer a empresa de volta para baixo do limite
+        if (evento.ids().isEmpty() || evento.removidos()) semIndice.remove(evento.idEmpresa());
+        IndiceEmpresa indice = indices.get(evento.idEmpresa());
+        if (indice == null) return; // ainda não carregado: a carga já lerá o estado atual
+        if (evento.ids().isEmpty()) {
+            indices.remove(evento.idEmpresa(), indice); // recarregado na próxima busca
+            return;
+        }
+        if (evento.removidos()) {
+            evento.ids().forEach(indice::remover);
+            return;
+        }
+        Set<Long> pendentes = new HashSet<>(evento.ids());
+        for (Object[] linha : produtoRepository.camposBusca(evento.ids())) {
+            indice.indexar(linha);
+            pendentes.remove((Long) linha[0]);
+        }
+        pendentes.forEach(indice::remover); // removidos por outra transação nesse meio tempo
+        if (indice.tamanho() > documentosMaximo && indices.remove(evento.idEmpresa(), indice)) {
+            semIndice.add(evento.idEmpresa());
+            log.info("[BUSCA] empresa {} passou de {} produtos; índice descartado, busca no banco", evento.idEmpresa(), documentosMaximo);
+        }
+    }
+
+    // Índice carregado da empresa, ou null se ela tem produtos demais para ficar em memória
+    private IndiceEmpresa indice(Long idEmpresa) {
+        IndiceEmpresa novo = new IndiceEmpresa();
+        IndiceEmpresa atual = indices.putIfAbsent(idEmpresa, novo);
+        if (atual != null) {
+            atual.carga.join();
+            return semIndice.contains(idEmpresa) ? null : atual;
+        }
+        long inicio = System.nanoTime();
+        try {
+            if (produtoRepository.contarPorEmpresa(idEmpresa) > documentosMaximo) {
+                semIndice.add(idEmpresa);
+                indices.remove(idEmpresa, novo);
+                novo.carga.complete(null);
+                log.info("[BUSCA] empresa {} tem mais de {} produtos; busca no banco", idEmpresa, documentosMaximo);
+                return null;
+            }
+            novo.carregar(produtoRepository.camposBuscaPorEmpresa(idEmpresa));
+        } catch (RuntimeException e) {
+            indices.remove(idEmpresa, novo);
+            novo.carga.completeExceptionally(e);
+            throw e;
+        }
+        log.info("[BUSCA] índice da empresa {} carregado: {} produto(s) em {} ms",
+                idEmpresa, novo.tamanho(), (System.nanoTime() - inicio) / 1_000_000);
+        return novo;
+    }
+
+    /**
+     * Busca sem índice: o banco filtra pelo termo mais longo (o mais seletivo) e a mesma pontuação do
+     * índice confirma os demais termos e ordena; com mais de CANDIDATOS_BANCO candidatos, só esses entram.
+     */
+    private List<ProdutoResumoDto> buscarNoBanco(Long idEmpresa, List<String> termos, int limite) {
+        String maisLongo = termos.stream().max(Comparator.comparingInt(String::length)).orElseThrow();
+        List<Object[]> linhas = produtoRepository.camposBuscaPorPadrao(idEmpresa, "%" + maisLongo + "%",
+                ACENTOS, SEM_ACENTOS, Limit.of(CANDIDATOS_BANCO));
+        PriorityQueue<Resultado> melhores = new PriorityQueue<>(limite + 1, RELEVANCIA);
+        for (Object[] linha : linhas) {
+            considerar(documento(linha), termos, melhores, limite);
+        }
+        return ordenados(melhores);
+    }
+
+    /** Texto sem acentos, em minúsculas, quebrado em palavras alfanuméricas. */
+    static List<String> tokens(String texto) {
+        if (texto == null || texto.isBlank()) return List.of();
+        String dobrado = MARCAS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+        return Arrays.stream(SEPARADORES.split(dobrado)).filter(t -> !t.isEmpty()).toList();
+    }
+
+    private static Documento documento(Object[] linha) {
+        String nome = (String) linha[2];
+        String[] tokensNome = tokens(nome).stream().distinct().toArray(String[]::new);
+        String[] tokensDescricao = tokens((String) linha[3]).stream().distinct().toArray(String[]::new);
+        return new Documento((Long) linha[0], nome, (BigDecimal) linha[4], tokensNome, tokensDescricao);
+    }
+
+    // Chaves do índice para um documento
+    private static Set<String> chaves(Documento d) {
+        Set<String> chaves = new HashSet<>();
+        for (String t : d.tokensNome()) gramas(t, chaves);
+        for (String t : d.tokensDescricao()) gramas(t, chaves);
+        return chaves;
+    }
+
+    // Chaves do índice para uma palavra: prefixos curtos marcados e todos os trigramas
+    private static void gramas(String token, Set<String> destino) {
+        for (int k = 1; k <= Math.min(N - 1, token.length()); k++) {
+            destino.add(PREFIXO + token.substring(0, k));
+        }
+        for (int i = 0; i + N <= token.length(); i++) {
+            destino.add(token.substring(i, i + N));
+        }
+    }
+
+    private record Documento(Long id, String nome, BigDecimal preco, String[] tokensNome, String[] tokensDescricao) {}
+
+    private record Resultado(Documento documento, int pontos) {}
+
+    private static final Comparator<Resultado> RELEVANCIA = Comparator.comparingInt(Resultado::pontos)
+            .thenComparing(r -> r.documento().nome(), Comparator.reverseOrder())
+            .thenComparing(r -> r.documento().id(), Comparator.reverseOrder());
+
+    // Pontua o documento em todos os termos e o mantém entre os {@code limite} melhores se casar com todos
+    private static void considerar(Documento d, List<String> termos, PriorityQueue<Resultado> melhores, int limite) {
+        int pontos = 0;
+        for (String termo : termos) {
+            int p = pontuar(d, termo);
+            if (p == 0) return;
+            pontos += p;
+        }
+        melhores.add(new Resultado(d, pontos));
+        if (melhores.size() > limite) melhores.poll();
+    }
+
+    private static int pontuar(Documento d, String termo) {
+        int pontos = 0;
+        for (String t : d.tokensNome()) {
+            if (t.startsWith(termo)) return 3;
+            if (t.contains(termo)) pontos = 2;
+        }
+        if (pontos > 0) return pontos;
+        for (String t : d.tokensDescricao()) {
+            if (t.contains(termo)) return 1;
+        }
+        return 0;
+    }
+
+    private static List<ProdutoResumoDto> ordenados(PriorityQueue<Resultado> melhores) {
+        List<Resultado> ordenados = new ArrayList<>(melhores);
+        ordenados.sort(RELEVANCIA.reversed());
+        return ordenados.stream()
+                .map(r -> new ProdutoResumoDto(r.documento().id(), r.documento().nome(), r.documento().preco()))
+                .toList();
+    }
+
+    /** Posições de documentos em ordem crescente, num int[] que cresce sob demanda. */
+    private static final class Posicoes {
+        private int[] itens = new int[4];
+        private int tamanho;
+
+        void adicionar(int posicao) {
+            // Na carga as posições chegam em ordem crescente e o binarySearch cai no fim
+            int i = Arrays.binarySearch(itens, 0, tamanho, posicao);
+            if (i >= 0) return;
+            i = -i - 1;
+            if (tamanho == itens.length) itens = Arrays.copyOf(itens, tamanho + (tamanho >> 1) + 1);
+            System.arraycopy(itens, i, itens, i + 1, tamanho - i);
+            itens[i] = posicao;
+            tamanho++;
+        }
+
+        void remover(int posicao) {
+            int i = Arrays.binarySearch(itens, 0, tamanho, posicao);
+            if (i < 0) return;
+            System.arraycopy(itens, i + 1, itens, i, tamanho - i - 1);
+            tamanho--;
+        }
+
+        boolean contem(int posicao) {
+            return Arrays.binarySearch(itens, 0, tamanho, posicao) >= 0;
+        }
+
+        void ajustar() {
+            if (itens.length > tamanho) itens = Arrays.copyOf(itens, tamanho);
+        }
+    }
+
+    private static final class IndiceEmpresa {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<String, Posicoes> postings = new HashMap<>();
+        // Posição densa de cada produto; posições liberadas são reaproveitadas
+        private final Map<Long, Integer> posicoes = new HashMap<>();
+        private Documento[] documentos = new Documento[16];
+        private final ArrayDeque<Integer> livres = new ArrayDeque<>();
+        private final CompletableFuture<Void> carga = new CompletableFuture<>();
+        // Produtos alterados por eventos enquanto a carga inicial roda; a carga não os sobrescreve
+        private Set<Long> alteradosNaCarga = new HashSet<>();
+
+        void carregar(List<Object[]> linhas) {
+            lock.writeLock().lock();
+            try {
+                for (Object[] linha : linhas) {
+                    if (!alteradosNaCarga.contains((Long) linha[0])) adicionar(documento(linha));
+                }
+                alteradosNaCarga = null;
+                postings.values().forEach(Posicoes::ajustar);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            carga.complete(null);
+        }
+
+        int tamanho() {
+            lock.readLock().lock();
+            try {
+                return posicoes.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void indexar(Object[] linha) {
+            lock.writeLock().lock();
+            try {
+                Long id = (Long) linha[0];
+                if (alteradosNaCarga != null) alteradosNaCarga.add(id);
+                retirar(id);
+                adicionar(documento(linha));
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void remover(Long id) {
+            lock.writeLock().lock();
+            try {
+                if (alteradosNaCarga != null) alteradosNaCarga.add(id);
+                retirar(id);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        List<ProdutoResumoDto> buscar(List<String> termos, int limite) {
+            lock.readLock().lock();
+            try {
+                List<Posicoes> listas = new ArrayList<>();
+                for (String termo : termos) {
+                    Set<String> chaves = new HashSet<>();
+                    if (termo.length() < N) {
+                        chaves.add(PREFIXO + termo);
+                    } else {
+                        for (int i = 0; i + N <= termo.length(); i++) chaves.add(termo.substring(i, i + N));
+                    }
+                    for (String chave : chaves) {
+                        Posicoes lista = postings.get(chave);
+                        if (lista == null) return List.of();
+                        listas.add(lista);
+                    }
+                }
+                // Interseção a partir da menor lista; os trigramas só filtram, a pontuação confirma o termo
+                listas.sort(Comparator.comparingInt(l -> l.tamanho));
+                Posicoes menor = listas.get(0);
+                PriorityQueue<Resultado> melhores = new PriorityQueue<>(limite + 1, RELEVANCIA);
+                candidatos:
+                for (int k = 0; k < menor.tamanho; k++) {
+                    int posicao = menor.itens[k];
+                    for (int i = 1; i < listas.size(); i++) {
+                        if (!listas.get(i).contem(posicao)) continue candidatos;
+                    }
+                    considerar(documentos[posicao], termos, melhores, limite);
+                }
+                return ordenados(melhores);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void adicionar(Documento d) {
+            Integer livre = livres.poll();
+            int posicao = livre != null ? livre : posicoes.size();
+            if (posicao == documentos.length) documentos = Arrays.copyOf(documentos, posicao * 2);
+            documentos[posicao] = d;
+            posicoes.put(d.id(), posicao);
+            for (String chave : chaves(d)) {
+                postings.computeIfAbsent(chave, k -> new Posicoes()).adicionar(posicao);
+            }
+        }
+
+        private void retirar(Long id) {
+            Integer posicao = posicoes.remove(id);
+            if (posicao == null) return;
+            for (String chave : chaves(documentos[posicao])) {
+                Posicoes lista = postings.get(chave);
+                if (lista == null) continue;
+                lista.remover(posicao);
+                if (lista.tamanho == 0) postings.remove(chave);
+            }
+            documentos[posicao] = null;
+            livres.push(posicao);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package br.com.ceidigital.service;
+
+import br.com.ceidigital.repository.ProdutoRepository;
+import br.com.ceidigital.util.Gtin;
+import br.com.ceidigital.web.dto.response.ProdutoCodigoBarrasDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Busca de produto por código de barras (leitura no caixa) em memória: por empresa, um mapa hash
+ * da chave GTIN-14 para os dados que o caixa precisa. A leitura não trava nem vai ao banco; o
+ * índice é carregado na primeira busca e mantido pelos {@link ProdutoAlteradoEvent}.
+ * Na inicialização converte para GTIN-14 os códigos gravados em outro formato.
+ */
+@Service
+public class ProdutoCodigoBarrasService implements CommandLineRunner {
+    private static final Logger log = LoggerFactory.getLogger(ProdutoCodigoBarrasService.class);
+
+    // Códigos válidos curtos e os GTIN-14 com que colidiriam, agrupados por empresa e chave
+    private static final String CHAVES = "select id_produto, lpad(codigo_barras, 14, '0') as chave, "
+            + "count(*) over (partition by id_empresa, lpad(codigo_barras, 14, '0')) as repeticoes "
+            + "from produto where codigo_barras ~ '^([0-9]{8}|[0-9]{12,14})$'";
+
+    private final ProdutoRepository produtoRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Long, IndiceEmpresa> indices = new ConcurrentHashMap<>();
+
+    public ProdutoCodigoBarrasService(ProdutoRepository produtoRepository, JdbcTemplate jdbcTemplate) {
+        this.produtoRepository = produtoRepository;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Grava como GTIN-14 os códigos anteriores à normalização. Os que colidem com outro produto da
+     * mesma empresa (mesmo GTIN em formatos diferentes) ficam como estão, para o usuário resolver.
+     */
+    @Override
+    public void run(String... args) {
+        try {
+            int n = jdbcTemplate.update("update produto p set codigo_barras = c.chave from (" + CHAVES + ") c "
+                    + "where p.id_produto = c.id_produto and c.repeticoes = 1 and p.codigo_barras <> c.chave");
+            if (n > 0) log.info("[CODIGO-BARRAS] {} código(s) convertido(s) para GTIN-14", n);
+            Integer conflitos = jdbcTemplate.queryForObject("select count(*) from (" + CHAVES + ") c where c.repeticoes > 1", Integer.class);
+            if (conflitos != null && conflitos > 0) {
+                log.warn("[CODIGO-BARRAS] {} produto(s) com o mesmo GTIN de outro produto da empresa em outro formato; não convertidos", conflitos);
+            }
+        } catch (Exception e) {
+            log.warn("[CODIGO-BARRAS] falha ao converter códigos para GTIN-14: {}", e.getMessage());
+        }
+    }
+
+    /** Produto da empresa com o código (EAN-8, UPC-A, EAN-13 ou GTIN-14 equivalentes); vazio se inválido ou inexistente. */
+    public Optional<ProdutoCodigoBarrasDto> buscar(Long idEmpresa, String codigo) {
+        String chave = Gtin.chave(codigo);
+        if (chave == null) return Optional.empty();
+        return Optional.ofNullable(indice(idEmpresa).porChave.get(chave));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void aoAlterarProdutos(ProdutoAlteradoEvent evento) {
+        IndiceEmpresa indice = indices.get(evento.idEmpresa());
+        if (indice == null) return; // ainda não carregado: a carga já lerá o estado atual
+        // Empresa toda alterada ou índice ainda em carga: descarta e recarrega na próxima busca
+        if (evento.ids().isEmpty() || !indice.carga.isDone()) {
+            indices.remove(evento.idEmpresa(), indice);
+            return;
+        }
+        if (evento.removidos()) {
+            evento.ids().forEach(indice::remover);
+            return;
+        }
+        Set<Long> pendentes = new HashSet<>(evento.ids());
+        for (ProdutoCodigoBarrasDto p : produtoRepository.camposCodigoBarras(evento.ids())) {
+            indice.gravar(p);
+            pendentes.remove(p.idProduto());
+        }
+        pendentes.forEach(indice::remover); // removidos por outra transação nesse meio tempo
+    }
+
+    private IndiceEmpresa indice(Long idEmpresa) {
+        IndiceEmpresa atual = indices.get(idEmpresa);
+        if (atual != null && atual.carga.isDone()) return atual; // caminho do caixa: só leituras sem trava
+        IndiceEmpresa novo = new IndiceEmpresa();
+        atual = indices.putIfAbsent(idEmpresa, novo);
+        if (atual != null) {
+            atual.carga.join();
+            return atual;
+        }
+        long inicio = System.nanoTime();
+        try {
+            novo.carregar(produtoRepository.camposCodigoBarrasPorEmpresa(idEmpresa));
+        } catch (RuntimeException e) {
+            indices.remove(idEmpresa, novo);
+            novo.carga.completeExceptionally(e);
+            throw e;
+        }
+        log.info("[CODIGO-BARRAS] índice da empresa {} carregado: {} código(s) em {} ms",
+                idEmpresa, novo.porChave.size(), (System.nanoTime() - inicio) / 1_000_000);
+        return novo;
+    }
+
+    private static final class IndiceEmpresa {
+        private final ConcurrentHashMap<String, ProdutoCodigoBarrasDto> porChave = new ConcurrentHashMap<>();
+        // id -> chave atual, para tirar a chave antiga quando o código muda ou o produto sai
+        private final ConcurrentHashMap<Long, String> chavePorId = new ConcurrentHashMap<>();
+        private final CompletableFuture<Void> carga = new CompletableFuture<>();
+
+        void carregar(List<ProdutoCodigoBarrasDto> produtos) {
+            produtos.forEach(this::gravar);
+            carga.complete(null);
+        }
+
+        // Escritas serializadas por empresa; as leituras do mapa seguem sem trava
+        synchronized void gravar(ProdutoCodigoBarrasDto p) {
+            String chave = Gtin.chave(p.codigoBarras());
+            String anterior = chave != null ? chavePorId.put(p.idProduto(), chave) : chavePorId.remove(p.idProduto());
+            if (anterior != null && !anterior.equals(chave)) desassociar(anterior, p.idProduto());
+            if (chave != null) porChave.put(chave, p);
+        }
+
+        synchronized void remover(Long id) {
+            String anterior = chavePorId.remove(id);
+            if (anterior != null) desassociar(anterior, id);
+        }
+
+        private void desassociar(String chave, Long id) {
+            porChave.computeIfPresent(chave, (k, p) -> p.idProduto().equals(id) ? null : p);
+        }
+    }
+}
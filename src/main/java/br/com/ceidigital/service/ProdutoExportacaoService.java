@@ -0,0 +1,152 @@
+package br.com.ceidigital.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * Exportação do catálogo de uma empresa em NDJSON ou CSV, escrita linha a linha na resposta.
+ * As linhas vêm de um cursor JDBC somente-avanço com fetch size limitado (no PostgreSQL isso exige
+ * uma transação aberta), então a memória usada não depende do tamanho do catálogo.
+ */
+@Service
+public class ProdutoExportacaoService {
+
+    public enum Formato {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+
+        private final String mediaType;
+        private final String extensao;
+
+        Formato(String mediaType, String extensao) {
+            this.mediaType = mediaType;
+            this.extensao = extensao;
+        }
+
+        public String mediaType() { return mediaType; }
+        public String extensao() { return extensao; }
+    }
+
+    private static final String COLUNAS = "id_produto, id_empresa, nome_produto, descricao, preco_unitario, preco_compra, "
+            + "consignado, quantidade_estoque, ativo, criado_em, atualizado_em, caminho_imagem, codigo_barras";
+    private static final String[] CABECALHO = {"idProduto", "idEmpresa", "nomeProduto", "descricao", "precoUnitario", "precoCompra",
+            "consignado", "quantidadeEstoque", "ativo", "criadoEm", "atualizadoEm", "caminhoImagem", "codigoBarras"};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transacaoLeitura;
+    private final ObjectMapper objectMapper;
+    private final int fetchSize;
+
+    public ProdutoExportacaoService(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            ObjectMapper objectMapper,
+            @Value("${app.produtos.exportacao.fetch-size:500}") int fetchSize
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transacaoLeitura = new TransactionTemplate(transactionManager);
+        this.transacaoLeitura.setReadOnly(true);
+        this.objectMapper = objectMapper;
+        this.fetchSize = fetchSize;
+    }
+
+    /** Escreve os produtos da empresa (null = todas, para o administrador) em ordem de id. */
+    public void exportar(Long idEmpresa, Formato formato, OutputStream out) throws IOException {
+        String sql = "select " + COLUNAS + " from produto"
+                + (idEmpresa != null ? " where id_empresa = ?" : "") + " order by id_produto";
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        RowCallbackHandler linha = formato == Formato.NDJSON ? ndjson(writer) : csv(writer);
+        try {
+            transacaoLeitura.executeWithoutResult(status -> jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(fetchSize);
+                if (idEmpresa != null) ps.setLong(1, idEmpresa);
+                return ps;
+            }, linha));
+        } catch (UncheckedIOException e) {
+            throw e.getCause(); // cliente desconectou no meio da exportação
+        }
+        writer.flush();
+    }
+
+    private RowCallbackHandler ndjson(Writer writer) throws IOException {
+        JsonGenerator gen = objectMapper.getFactory().createGenerator(writer)
+                .disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM); // o flush por linha só esvazia o gerador
+        gen.setRootValueSeparator(null); // objetos separados só pela quebra de linha
+        return rs -> {
+            try {
+                gen.writeStartObject();
+                gen.writeNumberField(CABECALHO[0], rs.getLong(1));
+                gen.writeNumberField(CABECALHO[1], rs.getLong(2));
+                gen.writeStringField(CABECALHO[2], rs.getString(3));
+                gen.writeStringField(CABECALHO[3], rs.getString(4));
+                gen.writeNumberField(CABECALHO[4], rs.getBigDecimal(5));
+                gen.writeNumberField(CABECALHO[5], rs.getBigDecimal(6));
+                gen.writeBooleanField(CABECALHO[6], rs.getBoolean(7));
+                gen.writeNumberField(CABECALHO[7], rs.getInt(8));
+                gen.writeBooleanField(CABECALHO[8], rs.getBoolean(9));
+                gen.writeStringField(CABECALHO[9], texto(rs.getTimestamp(10)));
+                gen.writeStringField(CABECALHO[10], texto(rs.getTimestamp(11)));
+                gen.writeStringField(CABECALHO[11], rs.getString(12));
+                gen.writeStringField(CABECALHO[12], rs.getString(13));
+                gen.writeEndObject();
+                gen.flush();
+                writer.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    private RowCallbackHandler csv(Writer writer) throws IOException {
+        writer.write(String.join(",", CABECALHO));
+        writer.write("\r\n");
+        return rs -> {
+            try {
+                for (int i = 1; i <= CABECALHO.length; i++) {
+                    if (i > 1) writer.write(',');
+                    writer.write(campoCsv(rs, i));
+                }
+                writer.write("\r\n");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    private static String campoCsv(ResultSet rs, int coluna) throws SQLException {
+        Object valor = rs.getObject(coluna);
+        if (valor == null) return "";
+        if (valor instanceof Timestamp t) return texto(t);
+        if (valor instanceof BigDecimal b) return b.toPlainString();
+        String s = valor.toString();
+        // RFC 4180: aspas em volta quando há separador, aspas ou quebra de linha
+        if (s.indexOf(',') >= 0 || s.indexOf('"') >= 0 || s.indexOf('\n') >= 0 || s.indexOf('\r') >= 0) {
+            return '"' + s.replace("\"", "\"\"") + '"';
+        }
+        return s;
+    }
+
+    private static String texto(Timestamp t) {
+        return t == null ? null : t.toLocalDateTime().toString();
+    }
+}
@@ -0,0 +1,283 @@
+package br.com.ceidigital.service;
+
+import br.com.ceidigital.repository.ProdutoRepository;
+import br.com.ceidigital.web.dto.response.ProdutoFacetasDto;
+import br.com.ceidigital.web.dto.response.ProdutoListaDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Filtros facetados do catálogo por empresa (ativo, consignado, esgotado e faixa de preço), em memória.
+ * Cada empresa numera seus produtos em ordem de id (posições densas) e mantém um BitSet por valor de
+ * faceta; filtros e contagens são interseções desses bitmaps. O índice é carregado na primeira
+ * consulta e mantido pelos {@link ProdutoAlteradoEvent}.
+ */
+@Service
+public class ProdutoFacetaService {
+    private static final Logger log = LoggerFactory.getLogger(ProdutoFacetaService.class);
+
+    /** Filtros da consulta; null (ou vazio, para faixas) = sem filtro naquela faceta. */
+    public record Filtro(Boolean ativo, Boolean consignado, Boolean esgotado, Set<String> faixas) {}
+
+    private final ProdutoRepository produtoRepository;
+    private final BigDecimal[] limitesPreco;
+    private final String[] faixas;
+    private final Map<Long, IndiceEmpresa> indices = new ConcurrentHashMap<>();
+
+    public ProdutoFacetaService(
+            ProdutoRepository produtoRepository,
+            @Value("${app.produtos.facetas.faixas-preco:10,50,100,500}") List<BigDecimal> limitesPreco
+    ) {
+        this.produtoRepository = produtoRepository;
+        this.limitesPreco = limitesPreco.stream().sorted().toArray(BigDecimal[]::new);
+        this.faixas = new String[this.limitesPreco.length + 1];
+        BigDecimal anterior = BigDecimal.ZERO;
+        for (int i = 0; i < this.limitesPreco.length; i++) {
+            faixas[i] = anterior.toPlainString() + "-" + this.limitesPreco[i].toPlainString();
+            anterior = this.limitesPreco[i];
+        }
+        faixas[this.limitesPreco.length] = anterior.toPlainString() + "+";
+    }
+
+    /** Rótulos das faixas de preço, na ordem (ex.: "0-10", "10-50", ..., "500+"). */
+    public List<String> faixas() {
+        return List.of(faixas);
+    }
+
+    /**
+     * Até {@code limite} produtos da empresa que atendem ao filtro, com id maior que {@code after} e em
+     * ordem de id, mais o total e as contagens por faceta (cada faceta conta com os demais filtros).
+     */
+    public ProdutoFacetasDto filtrar(Long idEmpresa, Filtro filtro, Long after, int limite) {
+        for (String faixa : filtro.faixas()) {
+            if (!Arrays.asList(faixas).contains(faixa)) throw new IllegalArgumentException("Faixa de preço inválida: " + faixa);
+        }
+        List<Long> ids = new ArrayList<>(limite);
+        int[] total = new int[1];
+        Map<String, Map<String, Integer>> facetas = indice(idEmpresa).filtrar(filtro, after != null ? after : 0L, limite, ids, total);
+        List<ProdutoListaDto> produtos = ids.isEmpty() ? List.of() : produtoRepository.buscarListaPorIds(ids);
+        return new ProdutoFacetasDto(produtos, total[0], facetas);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void aoAlterarProdutos(ProdutoAlteradoEvent evento) {
+        IndiceEmpresa indice = indices.get(evento.idEmpresa());
+        if (indice == null) return; // ainda não carregado: a carga já lerá o estado atual
+        // Empresa toda alterada ou índice ainda em carga: descarta e recarrega na próxima consulta
+        if (evento.ids().isEmpty() || !indice.carga.isDone()) {
+            indices.remove(evento.idEmpresa(), indice);
+            return;
+        }
+        boolean valido = evento.removidos()
+                ? indice.remover(evento.ids())
+                : indice.atualizar(evento.ids(), produtoRepository.camposFaceta(evento.ids()));
+        if (!valido) indices.remove(evento.idEmpresa(), indice);
+    }
+
+    private IndiceEmpresa indice(Long idEmpresa) {
+        IndiceEmpresa novo = new IndiceEmpresa();
+        IndiceEmpresa atual = indices.putIfAbsent(idEmpresa, novo);
+        if (atual != null) {
+            atual.carga.join();
+            return atual;
+        }
+        long inicio = System.nanoTime();
+        try {
+            novo.carregar(produtoRepository.camposFacetaPorEmpresa(idEmpresa));
+        } catch (RuntimeException e) {
+            indices.remove(idEmpresa, novo);
+            novo.carga.completeExceptionally(e);
+            throw e;
+        }
+        log.info("[FACETAS] índice da empresa {} carregado: {} produto(s) em {} ms",
+                idEmpresa, novo.posicoes.size(), (System.nanoTime() - inicio) / 1_000_000);
+        return novo;
+    }
+
+    private static int contar(BitSet base, BitSet valor) {
+        BitSet b = (BitSet) base.clone();
+        b.and(valor);
+        return b.cardinality();
+    }
+
+    private static Map<String, Integer> contarBooleano(BitSet base, BitSet verdadeiros) {
+        int sim = contar(base, verdadeiros);
+        Map<String, Integer> m = new LinkedHashMap<>();
+        m.put("true", sim);
+        m.put("false", base.cardinality() - sim);
+        return m;
+    }
+
+    private int faixa(BigDecimal preco) {
+        int i = 0;
+        while (i < limitesPreco.length && preco.compareTo(limitesPreco[i]) >= 0) i++;
+        return i;
+    }
+
+    private final class IndiceEmpresa {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final CompletableFuture<Void> carga = new CompletableFuture<>();
+        // posição -> id, crescente; posições de produtos excluídos ficam vagas (fora de "vivos")
+        private long[] ids = new long[1024];
+        private int tamanho;
+        private final Map<Long, Integer> posicoes = new HashMap<>();
+        private final BitSet vivos = new BitSet();
+        private final BitSet ativos = new BitSet();
+        private final BitSet consignados = new BitSet();
+        private final BitSet esgotados = new BitSet();
+        private final BitSet[] porFaixa = new BitSet[faixas.length];
+
+        IndiceEmpresa() {
+            for (int i = 0; i < porFaixa.length; i++) porFaixa[i] = new BitSet();
+        }
+
+        void carregar(List<Object[]> linhas) {
+            lock.writeLock().lock();
+            try {
+                for (Object[] linha : linhas) gravar(linha);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            carga.complete(null);
+        }
+
+        /** Regrava os produtos; false se o índice precisa ser recarregado. */
+        boolean atualizar(Collection<Long> alterados, List<Object[]> linhas) {
+            lock.writeLock().lock();
+            try {
+                Set<Long> presentes = new HashSet<>();
+                for (Object[] linha : linhas) {
+                    presentes.add((Long) linha[0]);
+                    if (!gravar(linha)) return false;
+                }
+                // Excluídos por outra transação nesse meio tempo
+                for (Long id : alterados) {
+                    if (!presentes.contains(id)) vagar(id);
+                }
+                return !fragmentado();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        boolean remover(Collection<Long> removidos) {
+            lock.writeLock().lock();
+            try {
+                removidos.forEach(this::vagar);
+                return !fragmentado();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        Map<String, Map<String, Integer>> filtrar(Filtro filtro, long after, int limite, List<Long> pagina, int[] total) {
+            lock.readLock().lock();
+            try {
+                BitSet fAtivo = filtro.ativo() == null ? null : valor(ativos, filtro.ativo());
+                BitSet fConsignado = filtro.consignado() == null ? null : valor(consignados, filtro.consignado());
+                BitSet fEsgotado = filtro.esgotado() == null ? null : valor(esgotados, filtro.esgotado());
+                BitSet fFaixa = null;
+                if (!filtro.faixas().isEmpty()) {
+                    fFaixa = new BitSet();
+                    for (int i = 0; i < faixas.length; i++) {
+                        if (filtro.faixas().contains(faixas[i])) fFaixa.or(porFaixa[i]);
+                    }
+                }
+
+                BitSet resultado = intersecao(fAtivo, fConsignado, fEsgotado, fFaixa);
+                total[0] = resultado.cardinality();
+                // Posições seguem a ordem de id: a página começa na primeira posição com id > after
+                int inicio = Arrays.binarySearch(ids, 0, tamanho, after);
+                inicio = inicio >= 0 ? inicio + 1 : -inicio - 1;
+                for (int p = resultado.nextSetBit(inicio); p >= 0 && pagina.size() < limite; p = resultado.nextSetBit(p + 1)) {
+                    pagina.add(ids[p]);
+                }
+
+                // Contagem de cada faceta com os filtros das outras (o filtro da própria faceta não restringe seus valores)
+                Map<String, Map<String, Integer>> facetas = new LinkedHashMap<>();
+                facetas.put("ativo", contarBooleano(intersecao(null, fConsignado, fEsgotado, fFaixa), ativos));
+                facetas.put("consignado", contarBooleano(intersecao(fAtivo, null, fEsgotado, fFaixa), consignados));
+                BitSet semEsgotado = intersecao(fAtivo, fConsignado, null, fFaixa);
+                Map<String, Integer> estoque = new LinkedHashMap<>();
+                estoque.put("esgotado", contar(semEsgotado, esgotados));
+                estoque.put("disponivel", semEsgotado.cardinality() - estoque.get("esgotado"));
+                facetas.put("estoque", estoque);
+                BitSet semFaixa = intersecao(fAtivo, fConsignado, fEsgotado, null);
+                Map<String, Integer> precos = new LinkedHashMap<>();
+                for (int i = 0; i < faixas.length; i++) precos.put(faixas[i], contar(semFaixa, porFaixa[i]));
+                facetas.put("faixaPreco", precos);
+                return facetas;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private BitSet valor(BitSet verdadeiros, boolean valor) {
+            BitSet b = (BitSet) (valor ? verdadeiros : vivos).clone();
+            if (!valor) b.andNot(verdadeiros);
+            return b;
+        }
+
+        private BitSet intersecao(BitSet... filtros) {
+            BitSet r = (BitSet) vivos.clone();
+            for (BitSet f : filtros) {
+                if (f != null) r.and(f);
+            }
+            return r;
+        }
+
+        // false se um produto novo chegou fora da ordem de id (ex.: transações confirmadas fora de ordem)
+        private boolean gravar(Object[] linha) {
+            Long id = (Long) linha[0];
+            Integer p = posicoes.get(id);
+            if (p == null) {
+                if (tamanho > 0 && id <= ids[tamanho - 1]) return false;
+                if (tamanho == ids.length) ids = Arrays.copyOf(ids, tamanho * 2);
+                p = tamanho++;
+                ids[p] = id;
+                posicoes.put(id, p);
+            }
+            vivos.set(p);
+            ativos.set(p, Boolean.TRUE.equals(linha[1]));
+            consignados.set(p, Boolean.TRUE.equals(linha[2]));
+            Integer quantidade = (Integer) linha[4];
+            esgotados.set(p, quantidade == null || quantidade <= 0);
+            int f = faixa((BigDecimal) linha[3]);
+            for (int i = 0; i < porFaixa.length; i++) porFaixa[i].set(p, i == f);
+            return true;
+        }
+
+        private void vagar(Long id) {
+            Integer p = posicoes.remove(id);
+            if (p == null) return;
+            vivos.clear(p);
+            ativos.clear(p);
+            consignados.clear(p);
+            esgotados.clear(p);
+            for (BitSet b : porFaixa) b.clear(p);
+        }
+
+        // Muitas posições vagas: recarregar compacta os bitmaps
+        private boolean fragmentado() {
+            return tamanho > 1024 && posicoes.size() < tamanho / 2;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package br.com.ceidigital.service;
+
+import br.com.ceidigital.domain.MovimentoEstoque;
+import br.com.ceidigital.util.CsvLeitor;
+import br.com.ceidigital.util.Gtin;
+import br.com.ceidigital.web.dto.response.ProdutoImportacaoDto;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Importação de produtos a partir de CSV (mesmas colunas da exportação; idProduto/idEmpresa são
+ * ignorados). O arquivo é lido em streaming e processado em blocos: as linhas de cada bloco são
+ * validadas em paralelo e as válidas inseridas com JDBC batch numa transação por bloco, junto com
+ * os movimentos de estoque (ids reservados antes na sequência, para ligar produto e movimento).
+ * Códigos de barras repetidos no arquivo ou já cadastrados na empresa (comparados como GTIN-14)
+ * são recusados por linha, antes do insert.
+ */
+@Service
+public class ProdutoImportacaoService {
+    private static final Logger log = LoggerFactory.getLogger(ProdutoImportacaoService.class);
+
+    private static final int ERROS_MAXIMOS = 1000;
+    private static final String INSERT = "insert into produto (id_produto, id_empresa, nome_produto, descricao, preco_unitario, preco_compra, "
+            + "consignado, quantidade_estoque, ativo, criado_em, atualizado_em, codigo_barras) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String RESERVAR_IDS = "select nextval(pg_get_serial_sequence('produto', 'id_produto')) from generate_series(1, ?)";
+    private static final String CODIGOS_EMPRESA = "select codigo_barras from produto where id_empresa = ? and codigo_barras is not null";
+
+    /** Linha validada e pronta para o insert. */
+    private record Linha(String nome, String descricao, BigDecimal preco, BigDecimal precoCompra,
+                         boolean consignado, int quantidade, boolean ativo, String codigoBarras) {}
+
+    /** Resultado da validação: a linha ou a mensagem de erro. */
+    private record Validacao(long numero, Linha linha, String erro) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventos;
+    private final EstoqueMovimentoService estoque;
+    private final int tamanhoBloco;
+    private final int tamanhoLote;
+    private final int paralelismo;
+    private final ExecutorService executor;
+
+    public ProdutoImportacaoService(
+            JdbcTemplate jdbcTemplate,
+            TransactionTemplate transactionTemplate,
+            ApplicationEventPublisher eventos,
+            EstoqueMovimentoService estoque,
+            @Value("${app.produtos.importacao.bloco:2000}") int tamanhoBloco,
+            @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}") int tamanhoLote
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.eventos = eventos;
+        this.estoque = estoque;
+        this.tamanhoBloco = tamanhoBloco;
+        this.tamanhoLote = tamanhoLote;
+        this.paralelismo = Runtime.getRuntime().availableProcessors();
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(paralelismo, r -> {
+            Thread t = new Thread(r, "produto-importacao-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Importa o CSV para a empresa. A primeira linha é o cabeçalho (nomes das colunas, separados
+     * por vírgula ou ponto e vírgula); colunas desconhecidas são ignoradas.
+     */
+    public ProdutoImportacaoDto importar(InputStream csv, Long idEmpresa) throws IOException {
+        long inicio = System.nanoTime();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8));
+        reader.mark(64 * 1024);
+        String primeira = reader.readLine();
+        if (primeira == null) throw new IllegalArgumentException("Arquivo vazio");
+        reader.reset();
+        char separador = primeira.indexOf(';') >= 0 && primeira.indexOf(',') < 0 ? ';' : ',';
+        CsvLeitor leitor = new CsvLeitor(reader, separador);
+        Map<String, Integer> colunas = colunas(leitor.proximo());
+        if (!colunas.containsKey("nomeproduto") || !colunas.containsKey("precounitario")) {
+            throw new IllegalArgumentException("Cabeçalho deve ter as colunas nomeProduto e precoUnitario");
+        }
+
+        // Código de barras (GTIN-14) -> linha do arquivo que o usa; 0 = já cadastrado na empresa
+        Map<String, Long> codigos = new HashMap<>();
+        for (String codigo : jdbcTemplate.queryForList(CODIGOS_EMPRESA, String.class, idEmpresa)) {
+            String chave = Gtin.chave(codigo);
+            codigos.put(chave != null ? chave : codigo, 0L);
+        }
+        long linhas = 0;
+        long importados = 0;
+        long rejeitados = 0;
+        List<ProdutoImportacaoDto.ErroLinha> erros = new ArrayList<>();
+        List<List<String>> bloco = new ArrayList<>(tamanhoBloco);
+        List<Long> numeros = new ArrayList<>(tamanhoBloco);
+        boolean fim = false;
+        try {
+            while (!fim) {
+                long numero = leitor.linha();
+                List<String> registro = leitor.proximo();
+                fim = registro == null;
+                if (!fim) {
+                    if (registro.size() == 1 && registro.get(0).isBlank()) continue; // linha em branco
+                    bloco.add(registro);
+                    numeros.add(numero);
+                    linhas++;
+                }
+                if (bloco.size() == tamanhoBloco || (fim && !bloco.isEmpty())) {
+                    List<Validacao> validas = new ArrayList<>(bloco.size());
+                    List<Validacao> recusadas = new ArrayList<>();
+                    for (Validacao v : validar(bloco, numeros, colunas)) {
+                        String erro = v.erro() != null ? v.erro() : codigoRepetido(v, codigos);
+                        if (erro == null) {
+                            validas.add(v);
+                        } else {
+                            recusadas.add(new Validacao(v.numero(), null, erro));
+                        }
+                    }
+                    try {
+                        inserir(validas.stream().map(Validacao::linha).toList(), idEmpresa);
+                        importados += validas.size();
+                    } catch (DataIntegrityViolationException e) {
+                        // Outra gravação concorrente usou um dos códigos: o bloco inteiro volta
+                        log.warn("[PRODUTOS] bloco da importação da empresa {} recusado pelo banco: {}", idEmpresa, e.getMostSpecificCause().getMessage());
+                        for (Validacao v : validas) recusadas.add(new Validacao(v.numero(), null, "Recusada pelo banco (conflito com outra gravação); importe de novo"));
+                    }
+                    for (Validacao v : recusadas) {
+                        rejeitados++;
+                        if (erros.size() < ERROS_MAXIMOS) erros.add(new ProdutoImportacaoDto.ErroLinha(v.numero(), v.erro()));
+                    }
+                    bloco.clear();
+                    numeros.clear();
+                }
+            }
+        } finally {
+            // Também quando um bloco falha: os blocos anteriores já estão gravados
+            if (importados > 0) {
+                // Sem os ids gerados (batch): lista vazia = a empresa toda mudou
+                eventos.publishEvent(new ProdutoAlteradoEvent(idEmpresa, List.of(), false));
+            }
+        }
+        long duracaoMs = Math.max(1, (System.nanoTime() - inicio) / 1_000_000);
+        double porSegundo = linhas * 1000.0 / duracaoMs;
+        log.info("[PRODUTOS] importação CSV da empresa {}: {} linha(s), {} importada(s), {} rejeitada(s) em {} ms ({} linhas/s)",
+                idEmpresa, linhas, importados, rejeitados, duracaoMs, Math.round(porSegundo));
+        return new ProdutoImportacaoDto(linhas, importados, rejeitados, duracaoMs, porSegundo, erros);
+    }
+
+    // Divide o bloco entre os workers; a ordem das linhas é preservada no resultado
+    private List<Validacao> validar(List<List<String>> bloco, List<Long> numeros, Map<String, Integer> colunas) throws IOException {
+        int fatia = Math.max(1, (bloco.size() + paralelismo - 1) / paralelismo);
+        List<Callable<List<Validacao>>> tarefas = new ArrayList<>();
+        for (int de = 0; de < bloco.size(); de += fatia) {
+            int inicio = de;
+            int fim = Math.min(bloco.size(), de + fatia);
+            tarefas.add(() -> {
+                List<Validacao> parcial = new ArrayList<>(fim - inicio);
+                for (int i = inicio; i < fim; i++) parcial.add(validar(numeros.get(i), bloco.get(i), colunas));
+                return parcial;
+            });
+        }
+        List<Validacao> resultado = new ArrayList<>(bloco.size());
+        try {
+            for (Future<List<Validacao>> f : executor.invokeAll(tarefas)) resultado.addAll(f.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Importação interrompida", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Falha na validação: " + e.getCause().getMessage(), e.getCause());
+        }
+        return resultado;
+    }
+
+    private static Validacao validar(long numero, List<String> registro, Map<String, Integer> colunas) {
+        try {
+            String nome = campo(registro, colunas, "nomeproduto");
+            if (nome == null) return new Validacao(numero, null, "nomeProduto é obrigatório");
+            if (nome.length() > 150) return new Validacao(numero, null, "nomeProduto excede 150 caracteres");
+            BigDecimal preco = decimal(campo(registro, colunas, "precounitario"), "precoUnitario");
+            if (preco == null) return new Validacao(numero, null, "precoUnitario é obrigatório");
+            BigDecimal precoCompra = decimal(campo(registro, colunas, "precocompra"), "precoCompra");
+            String quantidade = campo(registro, colunas, "quantidadeestoque");
+            int qtd;
+            try {
+                qtd = quantidade == null ? 0 : Integer.parseInt(quantidade);
+            } catch (NumberFormatException e) {
+                return new Validacao(numero, null, "quantidadeEstoque inválida: " + quantidade);
+            }
+            if (qtd < 0) return new Validacao(numero, null, "quantidadeEstoque não pode ser negativa");
+            boolean consignado = booleano(campo(registro, colunas, "consignado"), false, "consignado");
+            boolean ativo = booleano(campo(registro, colunas, "ativo"), true, "ativo");
+            String codigoBarras = campo(registro, colunas, "codigobarras");
+            if (codigoBarras != null && !Gtin.valido(codigoBarras)) return new Validacao(numero, null, "codigoBarras inválido: " + codigoBarras);
+            // Gravado como GTIN-14, a forma que a restrição única da empresa compara
+            return new Validacao(numero, new Linha(nome, campo(registro, colunas, "descricao"), preco, precoCompra, consignado, qtd, ativo,
+                    Gtin.chave(codigoBarras)), null);
+        } catch (IllegalArgumentException e) {
+            return new Validacao(numero, null, e.getMessage());
+        }
+    }
+
+    // Registra o código da linha, ou devolve o erro se ele já está na empresa ou numa linha anterior
+    private static String codigoRepetido(Validacao v, Map<String, Long> codigos) {
+        String codigo = v.linha().codigoBarras();
+        if (codigo == null) return null;
+        Long anterior = codigos.putIfAbsent(codigo, v.numero());
+        if (anterior == null) return null;
+        return anterior == 0 ? "codigoBarras já cadastrado na empresa: " + codigo
+                : "codigoBarras repetido no arquivo (linha " + anterior + "): " + codigo;
+    }
+
+    private void inserir(List<Linha> linhas, Long idEmpresa) {
+        if (linhas.isEmpty()) return;
+        LocalDateTime agora = LocalDateTime.now();
+        Timestamp quando = Timestamp.valueOf(agora);
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Long> ids = jdbcTemplate.queryForList(RESERVAR_IDS, Long.class, linhas.size());
+            List<Integer> indices = IntStream.range(0, linhas.size()).boxed().toList();
+            jdbcTemplate.batchUpdate(INSERT, indices, tamanhoLote, (ps, i) -> {
+                Linha l = linhas.get(i);
+                ps.setLong(1, ids.get(i));
+                ps.setLong(2, idEmpresa);
+                ps.setString(3, l.nome());
+                ps.setString(4, l.descricao());
+                ps.setBigDecimal(5, l.preco());
+                if (l.precoCompra() != null) ps.setBigDecimal(6, l.precoCompra()); else ps.setNull(6, Types.NUMERIC);
+                ps.setBoolean(7, l.consignado());
+                ps.setInt(8, l.quantidade());
+                ps.setBoolean(9, l.ativo());
+                ps.setTimestamp(10, quando);
+                ps.setTimestamp(11, quando);
+                ps.setString(12, l.codigoBarras());
+            });
+            List<EstoqueMovimentoService.Movimento> movimentos = new ArrayList<>();
+            for (int i = 0; i < linhas.size(); i++) {
+                int quantidade = linhas.get(i).quantidade();
+                if (quantidade != 0) {
+                    movimentos.add(new EstoqueMovimentoService.Movimento(ids.get(i), idEmpresa, quantidade, quantidade, MovimentoEstoque.Origem.IMPORTACAO));
+                }
+            }
+            estoque.registrar(movimentos, agora);
+        });
+    }
+
+    private static Map<String, Integer> colunas(List<String> cabecalho) {
+        if (cabecalho == null) throw new IllegalArgumentException("Arquivo vazio");
+        Map<String, Integer> colunas = new HashMap<>();
+        for (int i = 0; i < cabecalho.size(); i++) {
+            String nome = cabecalho.get(i).replace("\uFEFF", "").trim().toLowerCase(Locale.ROOT);
+            colunas.putIfAbsent(nome, i);
+        }
+        return colunas;
+    }
+
+    private static String campo(List<String> registro, Map<String, Integer> colunas, String coluna) {
+        Integer i = colunas.get(coluna);
+        if (i == null || i >= registro.size()) return null;
+        String valor = registro.get(i).trim();
+        return valor.isEmpty() ? null : valor;
+    }
+
+    // Aceita "10.50" e o formato brasileiro "1.234,50"
+    private static BigDecimal decimal(String valor, String coluna) {
+        if (valor == null) return null;
+        String normalizado = valor.contains(",") ? valor.replace(".", "").replace(',', '.') : valor;
+        try {
+            BigDecimal d = new BigDecimal(normalizado);
+            if (d.signum() < 0) throw new IllegalArgumentException(coluna + " não pode ser negativo");
+            if (d.scale() > 2 || d.precision() - d.scale() > 8) throw new IllegalArgumentException(coluna + " fora do formato 99999999,99: " + valor);
+            return d;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(coluna + " inválido: " + valor);
+        }
+    }
+
+    private static boolean booleano(String valor, boolean padrao, String coluna) {
+        if (valor == null) return padrao;
+        return switch (valor.toLowerCase(Locale.ROOT)) {
+            case "true", "1", "sim", "s" -> true;
+            case "false", "0", "nao", "não", "n" -> false;
+            default -> throw new IllegalArgumentException(coluna + " inválido: " + valor);
+        };
+    }
+}
@@ -0,0 +1,76 @@
+package br.com.ceidigital.service;
+
+import br.com.ceidigital.web.dto.response.ValoracaoEstoqueDto;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Relatórios agregados do catálogo. A valoração do estoque sai de uma única consulta agregada por
+ * empresa e fica em memória com a versão do catálogo ({@link ProdutoService#versaoCatalogo}) lida antes
+ * dela; só é servida enquanto a versão no banco for a mesma, então alterações feitas por outra instância
+ * também a invalidam. Uma alteração local ({@link ProdutoAlteradoEvent}) já a descarta.
+ */
+@Service
+public class ProdutoRelatorioService {
+
+    private static final String VALORACAO = "select count(*), "
+            + "count(*) filter (where ativo), "
+            + "count(*) filter (where quantidade_estoque > 0), "
+            + "count(*) filter (where quantidade_estoque > 0 and preco_compra is null), "
+            + "coalesce(sum(quantidade_estoque), 0), "
+            + "coalesce(sum(quantidade_estoque * preco_compra), 0), "
+            + "coalesce(sum(quantidade_estoque * preco_unitario), 0), "
+            + "coalesce(sum(quantidade_estoque * preco_unitario) filter (where preco_compra is not null), 0), "
+            + "count(*) filter (where consignado), "
+            + "coalesce(sum(quantidade_estoque) filter (where consignado), 0), "
+            + "coalesce(sum(quantidade_estoque * preco_compra) filter (where consignado), 0), "
+            + "coalesce(sum(quantidade_estoque * preco_unitario) filter (where consignado), 0) "
+            + "from produto where id_empresa = ?";
+
+    private record Guardada(ValoracaoEstoqueDto valoracao, LocalDateTime versao) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ProdutoService produtoService;
+    private final Map<Long, Guardada> valoracoes = new ConcurrentHashMap<>();
+
+    public ProdutoRelatorioService(JdbcTemplate jdbcTemplate, ProdutoService produtoService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.produtoService = produtoService;
+    }
+
+    public ValoracaoEstoqueDto valoracao(Long idEmpresa) {
+        // Sem versão definitiva (alteração recente) a valoração é calculada e não guardada
+        Optional<LocalDateTime> versao = produtoService.versaoCatalogo(idEmpresa);
+        Guardada guardada = valoracoes.get(idEmpresa);
+        if (guardada != null && versao.isPresent() && guardada.versao().equals(versao.get())) return guardada.valoracao();
+        ValoracaoEstoqueDto valoracao = jdbcTemplate.queryForObject(VALORACAO, (rs, n) -> {
+            BigDecimal vendaComCusto = rs.getBigDecimal(8);
+            BigDecimal custo = rs.getBigDecimal(6);
+            BigDecimal margem = vendaComCusto.subtract(custo);
+            // Margem sobre o preço de venda, em %
+            BigDecimal percentual = vendaComCusto.signum() == 0 ? null
+                    : margem.multiply(BigDecimal.valueOf(100)).divide(vendaComCusto, 2, RoundingMode.HALF_UP);
+            return new ValoracaoEstoqueDto(idEmpresa, rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4), rs.getLong(5),
+                    custo, rs.getBigDecimal(7), margem, percentual,
+                    new ValoracaoEstoqueDto.Consignado(rs.getLong(9), rs.getLong(10), rs.getBigDecimal(11), rs.getBigDecimal(12)),
+                    LocalDateTime.now());
+        }, idEmpresa);
+        // Calculada depois de ler a versão: nunca mais antiga que ela
+        if (versao.isPresent()) valoracoes.put(idEmpresa, new Guardada(valoracao, versao.get()));
+        else valoracoes.remove(idEmpresa);
+        return valoracao;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void aoAlterarProdutos(ProdutoAlteradoEvent evento) {
+        valoracoes.remove(evento.idEmpresa());
+    }
+}
@@ -1,13 +1,60 @@
 package br.com.ceidigital.service;
 
 import br.com.ceidigital.domain.Produto;
+import br.com.ceidigital.web.dto.request.ProdutoPatchDto;
+import br.com.ceidigital.web.dto.response.EstoqueAjusteResultadoDto;
+import br.com.ceidigital.web.dto.response.ProdutoAlteracoesDto;
+import br.com.ceidigital.web.dto.response.ProdutoListaDto;
+import br.com.ceidigital.web.dto.response.ProdutoPatchResultadoDto;
+import br.com.ceidigital.web.dto.response.ProdutoResumoDto;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface ProdutoService {
-    Produto salvar(Produto produto);
+    /** Cadastra um produto novo; o estoque inicial é registrado como movimento de cadastro. */
+    Produto criar(Produto produto);
+    /**
+     * Aplica {@code alteracao} ao produto numa transação, gravando só as colunas alteradas (vazio se
+     * não existe). O estoque não muda por aqui: use {@link #ajustarEstoque} ou {@link #atualizarEmLote}.
+     */
+    Optional<Produto> alterar(Long id, Consumer<Produto> alteracao);
     Optional<Produto> buscarPorId(Long id);
     List<Produto> listarPorEmpresa(Long idEmpresa);
+    /**
+     * Página keyset: até {@code limite} produtos com id maior que {@code after}; idEmpresa null = todas,
+     * {@code limite} null = sem limite.
+     * Sem a descrição, que só é lida por {@link #buscarPorId}.
+     */
+    List<ProdutoListaDto> listarPagina(Long idEmpresa, Long after, Integer limite);
+    /** Mesma paginação de {@link #listarPagina}, só produtos ativos e só id, nome e preço; {@code limite} null = sem limite. */
+    List<ProdutoResumoDto> listarAtivos(Long idEmpresa, Long after, Integer limite);
     List<Produto> listarTodos();
     void remover(Long id);
+    /**
+     * Versão do catálogo da empresa: instante da última alteração ou exclusão de produto (1970-01-01 se
+     * não houver). Vazio enquanto uma transação aberta ainda puder confirmar alterações sem mudá-la.
+     */
+    Optional<LocalDateTime> versaoCatalogo(Long idEmpresa);
+    /**
+     * Alterações da empresa depois do cursor ({@code since}, {@code after}; after null = depois de since)
+     * até {@code ate}: até {@code limite} produtos alterados e os ids excluídos. since null = sincronização completa.
+     */
+    ProdutoAlteracoesDto listarAlteracoes(Long idEmpresa, LocalDateTime since, Long after, int limite, LocalDateTime ate);
+    /**
+     * Instante até o qual as alterações de produto já estão todas confirmadas (limite {@code ate} de
+     * {@link #listarAlteracoes}): agora, ou o início da transação aberta mais antiga no banco.
+     */
+    LocalDateTime confirmadoAte();
+    /**
+     * Aplica alterações parciais (preço, custo, estoque, ativo) numa única transação, gravando só as
+     * colunas informadas. Retorna o resultado de cada item na ordem recebida; idEmpresa null = qualquer empresa.
+     */
+    List<ProdutoPatchResultadoDto> atualizarEmLote(List<ProdutoPatchDto> itens, Long idEmpresa);
+    /**
+     * Soma {@code delta} ao estoque num único UPDATE condicional, sem lock pessimista; não deixa o
+     * estoque ficar negativo. idEmpresa null = qualquer empresa.
+     */
+    EstoqueAjusteResultadoDto ajustarEstoque(Long idProduto, int delta, Long idEmpresa);
 }
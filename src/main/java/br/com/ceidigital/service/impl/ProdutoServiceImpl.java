@@ -1,22 +1,108 @@
 package br.com.ceidigital.service.impl;
 
+import br.com.ceidigital.domain.MovimentoEstoque;
 import br.com.ceidigital.domain.Produto;
+import br.com.ceidigital.domain.ProdutoRemovido;
+import br.com.ceidigital.repository.ProdutoRemovidoRepository;
 import br.com.ceidigital.repository.ProdutoRepository;
+import br.com.ceidigital.service.EstoqueMovimentoService;
+import br.com.ceidigital.service.ProdutoAlteradoEvent;
 import br.com.ceidigital.service.ProdutoService;
+import br.com.ceidigital.web.dto.request.ProdutoPatchDto;
+import br.com.ceidigital.web.dto.response.EstoqueAjusteResultadoDto;
+import br.com.ceidigital.web.dto.response.ProdutoAlteracoesDto;
+import br.com.ceidigital.web.dto.response.ProdutoListaDto;
+import br.com.ceidigital.web.dto.response.ProdutoPatchResultadoDto;
+import br.com.ceidigital.web.dto.response.ProdutoResumoDto;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Service
 public class ProdutoServiceImpl implements ProdutoService {
     @Autowired
     private ProdutoRepository produtoRepository;
+    @Autowired
+    private ProdutoRemovidoRepository removidoRepository;
+    @Autowired
+    private ApplicationEventPublisher eventos;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private EstoqueMovimentoService estoque;
+    @Value("${app.produtos.sincronizacao.margem:2s}")
+    private Duration margemSincronizacao;
+
+    // Início da sincronização completa (sem cursor)
+    private static final LocalDateTime INICIO = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    // Itens por UPDATE ... FROM (VALUES ...); mantém o número de parâmetros bem abaixo do limite do driver
+    private static final int ITENS_POR_UPDATE = 1000;
 
+    /** Colunas alteráveis pelo PATCH em lote: nome, tipo SQL do VALUES e leitura do item. */
+    private enum ColunaPatch {
+        PRECO_UNITARIO("preco_unitario", "numeric", ProdutoPatchDto::precoUnitario),
+        PRECO_COMPRA("preco_compra", "numeric", ProdutoPatchDto::precoCompra),
+        QUANTIDADE_ESTOQUE("quantidade_estoque", "integer", ProdutoPatchDto::quantidadeEstoque),
+        ATIVO("ativo", "boolean", ProdutoPatchDto::ativo);
+
+        final String coluna;
+        final String tipo;
+        final Function<ProdutoPatchDto, Object> valor;
+
+        ColunaPatch(String coluna, String tipo, Function<ProdutoPatchDto, Object> valor) {
+            this.coluna = coluna;
+            this.tipo = tipo;
+            this.valor = valor;
+        }
+    }
+
+    // Só produto novo: o estoque inicial vira o movimento de CADASTRO
     @Override
-    public Produto salvar(Produto produto) {
-        return produtoRepository.save(produto);
+    @Transactional
+    public Produto criar(Produto produto) {
+        Produto salvo = produtoRepository.save(produto);
+        int quantidade = salvo.getQuantidadeEstoque();
+        if (quantidade != 0) {
+            estoque.registrar(List.of(new EstoqueMovimentoService.Movimento(salvo.getIdProduto(), salvo.getEmpresa().getId(),
+                    quantidade, quantidade, MovimentoEstoque.Origem.CADASTRO)), LocalDateTime.now());
+        }
+        eventos.publishEvent(new ProdutoAlteradoEvent(salvo.getEmpresa().getId(), List.of(salvo.getIdProduto()), false));
+        return salvo;
+    }
+
+    /**
+     * O produto é lido e alterado dentro da transação, e o UPDATE leva só as colunas modificadas
+     * (Produto é @DynamicUpdate): o estoque, que a alteração não toca, não é regravado com um valor
+     * antigo por cima dos ajustes feitos enquanto isso.
+     */
+    @Override
+    @Transactional
+    public Optional<Produto> alterar(Long id, Consumer<Produto> alteracao) {
+        Optional<Produto> produto = produtoRepository.findById(id);
+        produto.ifPresent(p -> {
+            alteracao.accept(p);
+            p.setAtualizadoEm(LocalDateTime.now());
+            eventos.publishEvent(new ProdutoAlteradoEvent(p.getEmpresa().getId(), List.of(id), false));
+        });
+        return produto;
     }
 
     @Override
@@ -26,9 +112,25 @@ public class ProdutoServiceImpl implements ProdutoService {
 
     @Override
     public List<Produto> listarPorEmpresa(Long idEmpresa) {
-        return produtoRepository.findAll().stream()
-                .filter(p -> p.getEmpresa() != null && p.getEmpresa().getId().equals(idEmpresa))
-                .toList();
+        return produtoRepository.findByEmpresaIdOrderByIdProduto(idEmpresa);
+    }
+
+    @Override
+    public List<ProdutoListaDto> listarPagina(Long idEmpresa, Long after, Integer limite) {
+        long inicio = after != null ? after : 0L;
+        Limit l = limite != null ? Limit.of(limite) : Limit.unlimited();
+        return idEmpresa == null
+                ? produtoRepository.buscarPagina(inicio, l)
+                : produtoRepository.buscarPaginaPorEmpresa(idEmpresa, inicio, l);
+    }
+
+    @Override
+    public List<ProdutoResumoDto> listarAtivos(Long idEmpresa, Long after, Integer limite) {
+        long inicio = after != null ? after : 0L;
+        Limit l = limite != null ? Limit.of(limite) : Limit.unlimited();
+        return idEmpresa == null
+                ? produtoRepository.buscarAtivos(inicio, l)
+                : produtoRepository.buscarAtivosPorEmpresa(idEmpresa, inicio, l);
     }
 
     @Override
@@ -36,8 +138,225 @@ public class ProdutoServiceImpl implements ProdutoService {
         return produtoRepository.findAll();
     }
 
+    /**
+     * Os itens são agrupados pelo conjunto de colunas que alteram; cada grupo vira poucos
+     * UPDATE ... FROM (VALUES ...) RETURNING, que dizem quais ids existiam (na empresa).
+     */
+    @Override
+    @Transactional
+    public List<ProdutoPatchResultadoDto> atualizarEmLote(List<ProdutoPatchDto> itens, Long idEmpresa) {
+        ProdutoPatchResultadoDto[] resultados = new ProdutoPatchResultadoDto[itens.size()];
+        Map<Long, Integer> ocorrencias = new HashMap<>();
+        itens.forEach(i -> { if (i != null && i.idProduto() != null) ocorrencias.merge(i.idProduto(), 1, Integer::sum); });
+
+        Map<List<ColunaPatch>, List<Integer>> grupos = new LinkedHashMap<>();
+        for (int i = 0; i < itens.size(); i++) {
+            ProdutoPatchDto item = itens.get(i);
+            String erro = validar(item, ocorrencias);
+            if (erro != null) {
+                resultados[i] = new ProdutoPatchResultadoDto(item != null ? item.idProduto() : null, ProdutoPatchResultadoDto.Status.INVALIDO, erro);
+                continue;
+            }
+            List<ColunaPatch> colunas = new ArrayList<>();
+            for (ColunaPatch c : ColunaPatch.values()) {
+                if (c.valor.apply(item) != null) colunas.add(c);
+            }
+            grupos.computeIfAbsent(colunas, k -> new ArrayList<>()).add(i);
+        }
+
+        Timestamp agora = Timestamp.valueOf(LocalDateTime.now());
+        Map<Long, List<Long>> alteradosPorEmpresa = new HashMap<>();
+        List<EstoqueMovimentoService.Movimento> movimentos = new ArrayList<>();
+        for (Map.Entry<List<ColunaPatch>, List<Integer>> grupo : grupos.entrySet()) {
+            List<Integer> indices = grupo.getValue();
+            for (int de = 0; de < indices.size(); de += ITENS_POR_UPDATE) {
+                List<Integer> parte = indices.subList(de, Math.min(indices.size(), de + ITENS_POR_UPDATE));
+                Map<Long, Long> atualizados = atualizar(grupo.getKey(), parte, itens, idEmpresa, agora, movimentos);
+                for (int i : parte) {
+                    Long id = itens.get(i).idProduto();
+                    Long empresa = atualizados.get(id);
+                    if (empresa != null) {
+                        resultados[i] = new ProdutoPatchResultadoDto(id, ProdutoPatchResultadoDto.Status.ATUALIZADO, null);
+                        alteradosPorEmpresa.computeIfAbsent(empresa, k -> new ArrayList<>()).add(id);
+                    } else {
+                        resultados[i] = new ProdutoPatchResultadoDto(id, ProdutoPatchResultadoDto.Status.NAO_ENCONTRADO, "Produto não encontrado");
+                    }
+                }
+            }
+        }
+        estoque.registrar(movimentos, agora.toLocalDateTime());
+        alteradosPorEmpresa.forEach((empresa, ids) -> eventos.publishEvent(new ProdutoAlteradoEvent(empresa, ids, false)));
+        return List.of(resultados);
+    }
+
+    /**
+     * Retorna id -> empresa dos produtos efetivamente atualizados. Quando o grupo altera o estoque, as
+     * linhas são travadas antes (CTE "a", FOR UPDATE) para ler a quantidade anterior exata, e as
+     * mudanças viram movimentos em {@code movimentos}.
+     */
+    private Map<Long, Long> atualizar(List<ColunaPatch> colunas, List<Integer> parte, List<ProdutoPatchDto> itens, Long idEmpresa,
+                                      Timestamp agora, List<EstoqueMovimentoService.Movimento> movimentos) {
+        boolean estoqueAlterado = colunas.contains(ColunaPatch.QUANTIDADE_ESTOQUE);
+        StringBuilder sql = new StringBuilder("with v(id_produto");
+        for (ColunaPatch c : colunas) sql.append(", ").append(c.coluna);
+        sql.append(") as (values ");
+        List<Object> args = new ArrayList<>();
+        for (int n = 0; n < parte.size(); n++) {
+            ProdutoPatchDto item = itens.get(parte.get(n));
+            sql.append(n == 0 ? "(" : ", (").append("?::bigint");
+            args.add(item.idProduto());
+            for (ColunaPatch c : colunas) {
+                sql.append(", ?::").append(c.tipo);
+                args.add(c.valor.apply(item));
+            }
+            sql.append(')');
+        }
+        sql.append(')');
+        if (estoqueAlterado) {
+            sql.append(", a as (select pr.id_produto, pr.quantidade_estoque from produto pr join v on v.id_produto = pr.id_produto");
+            if (idEmpresa != null) {
+                sql.append(" where pr.id_empresa = ?");
+                args.add(idEmpresa);
+            }
+            sql.append(" for update of pr)");
+        }
+        sql.append(" update produto p set ");
+        for (ColunaPatch c : colunas) sql.append(c.coluna).append(" = v.").append(c.coluna).append(", ");
+        sql.append("atualizado_em = ? from v");
+        args.add(agora);
+        if (estoqueAlterado) sql.append(" join a on a.id_produto = v.id_produto");
+        sql.append(" where p.id_produto = v.id_produto");
+        if (idEmpresa != null) {
+            sql.append(" and p.id_empresa = ?");
+            args.add(idEmpresa);
+        }
+        sql.append(" returning p.id_produto, p.id_empresa");
+        if (estoqueAlterado) sql.append(", a.quantidade_estoque, p.quantidade_estoque");
+        Map<Long, Long> atualizados = new HashMap<>();
+        jdbcTemplate.query(sql.toString(), rs -> {
+            atualizados.put(rs.getLong(1), rs.getLong(2));
+            if (estoqueAlterado && rs.getInt(3) != rs.getInt(4)) {
+                movimentos.add(new EstoqueMovimentoService.Movimento(rs.getLong(1), rs.getLong(2),
+                        rs.getInt(4) - rs.getInt(3), rs.getInt(4), MovimentoEstoque.Origem.LOTE));
+            }
+        }, args.toArray());
+        return atualizados;
+    }
+
+    /**
+     * O teste e a soma acontecem no mesmo UPDATE: o PostgreSQL serializa os ajustes concorrentes na
+     * trava da linha e reavalia o WHERE sobre a versão já atualizada, então baixas simultâneas não se
+     * perdem nem passam do estoque. A conta em bigint evita estouro de integer no teste.
+     * O movimento do livro-razão é inserido no mesmo comando (CTE), sem ida extra ao banco.
+     */
     @Override
+    @Transactional
+    public EstoqueAjusteResultadoDto ajustarEstoque(Long idProduto, int delta, Long idEmpresa) {
+        String filtroEmpresa = idEmpresa != null ? " and id_empresa = ?" : "";
+        Timestamp agora = Timestamp.valueOf(LocalDateTime.now());
+        String origem = MovimentoEstoque.Origem.AJUSTE.name();
+        Object[] args = idEmpresa != null
+                ? new Object[]{delta, agora, idProduto, idEmpresa, delta, delta, origem, agora}
+                : new Object[]{delta, agora, idProduto, delta, delta, origem, agora};
+        List<long[]> ajustado = jdbcTemplate.query(
+                "with u as (update produto set quantidade_estoque = quantidade_estoque + ?, atualizado_em = ? where id_produto = ?" + filtroEmpresa
+                        + " and quantidade_estoque::bigint + ? between 0 and 2147483647 returning id_produto, id_empresa, quantidade_estoque) "
+                        + "insert into movimento_estoque (id_produto, id_empresa, delta, quantidade, origem, criado_em) "
+                        + "select id_produto, id_empresa, ?, quantidade_estoque, ?, ? from u returning quantidade, id_empresa",
+                (rs, n) -> new long[]{rs.getLong(1), rs.getLong(2)}, args);
+        if (!ajustado.isEmpty()) {
+            eventos.publishEvent(new ProdutoAlteradoEvent(ajustado.get(0)[1], List.of(idProduto), false));
+            return new EstoqueAjusteResultadoDto(idProduto, EstoqueAjusteResultadoDto.Status.AJUSTADO, (int) ajustado.get(0)[0]);
+        }
+        // Nenhuma linha: produto inexistente (ou de outra empresa) ou estoque insuficiente
+        List<Integer> atual = idEmpresa != null
+                ? jdbcTemplate.queryForList("select quantidade_estoque from produto where id_produto = ? and id_empresa = ?", Integer.class, idProduto, idEmpresa)
+                : jdbcTemplate.queryForList("select quantidade_estoque from produto where id_produto = ?", Integer.class, idProduto);
+        if (atual.isEmpty()) return new EstoqueAjusteResultadoDto(idProduto, EstoqueAjusteResultadoDto.Status.NAO_ENCONTRADO, null);
+        return new EstoqueAjusteResultadoDto(idProduto, EstoqueAjusteResultadoDto.Status.ESTOQUE_INSUFICIENTE, atual.get(0));
+    }
+
+    private static String validar(ProdutoPatchDto item, Map<Long, Integer> ocorrencias) {
+        if (item == null || item.idProduto() == null) return "idProduto é obrigatório";
+        if (ocorrencias.get(item.idProduto()) > 1) return "idProduto repetido no lote";
+        if (item.precoUnitario() == null && item.precoCompra() == null && item.quantidadeEstoque() == null && item.ativo() == null) {
+            return "Nenhum campo para atualizar";
+        }
+        String erro = validarPreco(item.precoUnitario(), "precoUnitario");
+        if (erro == null) erro = validarPreco(item.precoCompra(), "precoCompra");
+        if (erro == null && item.quantidadeEstoque() != null && item.quantidadeEstoque() < 0) {
+            erro = "quantidadeEstoque não pode ser negativa";
+        }
+        return erro;
+    }
+
+    // Mesmos limites da coluna numeric(10,2)
+    private static String validarPreco(BigDecimal preco, String campo) {
+        if (preco == null) return null;
+        if (preco.signum() < 0) return campo + " não pode ser negativo";
+        if (preco.scale() > 2 || preco.precision() - preco.scale() > 8) return campo + " fora do formato 99999999,99";
+        return null;
+    }
+
+    // A marca de exclusão é gravada na mesma transação, para GET /changes avisar os clientes
+    @Override
+    @Transactional
     public void remover(Long id) {
-        produtoRepository.deleteById(id);
+        produtoRepository.findById(id).ifPresent(p -> {
+            produtoRepository.delete(p);
+            removidoRepository.save(new ProdutoRemovido(id, p.getEmpresa().getId(), LocalDateTime.now()));
+            eventos.publishEvent(new ProdutoAlteradoEvent(p.getEmpresa().getId(), List.of(id), true));
+        });
+    }
+
+    /**
+     * O máximo dos carimbos só é versão depois de anterior ao início de toda transação aberta (menos a
+     * margem entre o relógio da aplicação, que carimba, e o do banco): o que ainda confirmar terá carimbo
+     * maior e a mudará. Antes disso, uma transação aberta poderia confirmar linhas com carimbo menor sem
+     * alterar o máximo, e quem guardou a versão ficaria com o catálogo antigo.
+     */
+    @Override
+    public Optional<LocalDateTime> versaoCatalogo(Long idEmpresa) {
+        LocalDateTime alteracao = produtoRepository.ultimaAtualizacao(idEmpresa);
+        LocalDateTime remocao = removidoRepository.ultimaRemocao(idEmpresa);
+        LocalDateTime ultima = alteracao == null || remocao != null && remocao.isAfter(alteracao) ? remocao : alteracao;
+        if (ultima == null) ultima = INICIO;
+        return ultima.isBefore(confirmadoAte().minus(margemSincronizacao)) ? Optional.of(ultima) : Optional.empty();
+    }
+
+    /**
+     * atualizado_em e removido_em são carimbados na escrita, não no commit: uma transação ainda aberta
+     * pode confirmar depois linhas com carimbo anterior a agora, mas nunca anterior ao próprio início.
+     * Conta qualquer transação aberta (também as só de leitura), já que o carimbo pode ser tirado
+     * antes da primeira escrita. Requer que o usuário do banco enxergue as próprias sessões em pg_stat_activity.
+     */
+    @Override
+    public LocalDateTime confirmadoAte() {
+        Timestamp inicio = jdbcTemplate.queryForObject("select min(xact_start) from pg_stat_activity "
+                + "where datname = current_database() and pid <> pg_backend_pid() and xact_start is not null", Timestamp.class);
+        LocalDateTime agora = LocalDateTime.now();
+        return inicio != null && inicio.toLocalDateTime().isBefore(agora) ? inicio.toLocalDateTime() : agora;
+    }
+
+    /**
+     * Os produtos vêm em ordem (atualizadoEm, idProduto), então a página cheia devolve como cursor a
+     * última linha; a página incompleta devolve {@code ate}. As exclusões de (since, ate] vão em
+     * todas as páginas (aplicá-las de novo não muda nada no cliente).
+     */
+    @Override
+    public ProdutoAlteracoesDto listarAlteracoes(Long idEmpresa, LocalDateTime since, Long after, int limite, LocalDateTime ate) {
+        LocalDateTime desde = since != null ? since : INICIO;
+        if (!ate.isAfter(desde) && after == null) {
+            return new ProdutoAlteracoesDto(List.of(), List.of(), desde, null, true);
+        }
+        List<ProdutoListaDto> alterados = produtoRepository.buscarAlteracoes(idEmpresa, desde,
+                after != null ? after : Long.MAX_VALUE, ate, Limit.of(limite));
+        // Na sincronização completa o cliente descarta o que tinha: exclusões não interessam
+        List<Long> removidos = since != null ? removidoRepository.buscarIds(idEmpresa, desde, ate) : List.of();
+        if (alterados.size() == limite) {
+            ProdutoListaDto ultimo = alterados.get(alterados.size() - 1);
+            return new ProdutoAlteracoesDto(alterados, removidos, LocalDateTime.parse(ultimo.atualizadoEm()), ultimo.idProduto(), false);
+        }
+        return new ProdutoAlteracoesDto(alterados, removidos, ate, null, true);
     }
 }
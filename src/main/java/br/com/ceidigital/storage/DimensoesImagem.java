@@ -0,0 +1,36 @@
+package br.com.ceidigital.storage;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Optional;
+
+/**
+ * Largura e altura de uma imagem lidas só do cabeçalho (ImageReader.getWidth/getHeight), sem
+ * decodificar os pixels. Serve para recusar imagens grandes demais antes de um ImageIO.read,
+ * que aloca largura x altura x 4 bytes independentemente do tamanho do arquivo.
+ */
+public record DimensoesImagem(int largura, int altura) {
+
+    public long pixels() {
+        return (long) largura * altura;
+    }
+
+    /** Dimensões da primeira imagem do stream; vazio se nenhum leitor do ImageIO reconhece o formato. */
+    public static Optional<DimensoesImagem> ler(InputStream in) throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> leitores = iis == null ? null : ImageIO.getImageReaders(iis);
+            if (leitores == null || !leitores.hasNext()) return Optional.empty();
+            ImageReader leitor = leitores.next();
+            try {
+                leitor.setInput(iis, true, true);
+                return Optional.of(new DimensoesImagem(leitor.getWidth(0), leitor.getHeight(0)));
+            } finally {
+                leitor.dispose();
+            }
+        }
+    }
+}
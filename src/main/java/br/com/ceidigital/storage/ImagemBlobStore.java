@@ -0,0 +1,452 @@
+package br.com.ceidigital.storage;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Backend local de {@link ImagemStorage}: imagens de produto em segmentos append-only.
+ * Cada imagem é gravada como um registro [cabeçalho][chave][bytes] no fim do segmento ativo;
+ * um índice em memória (chave -> segmento/offset/tamanho) é reconstruído na inicialização
+ * varrendo os segmentos, de modo que cada leitura é uma única leitura posicional.
+ * Uploads são endereçados pelo conteúdo (SHA-256), então imagens idênticas ocupam um único registro.
+ */
+@Component
+@ConditionalOnProperty(name = "app.imagens.storage", havingValue = "local", matchIfMissing = true)
+public class ImagemBlobStore implements ImagemStorage {
+    private static final Logger log = LoggerFactory.getLogger(ImagemBlobStore.class);
+
+    private static final int MAGIC = 0x43454942; // "CEIB"
+    private static final int CABECALHO = 4 + 2 + 8; // magic + tamanho da chave + tamanho dos dados
+    private static final String SUBDIR = "segmentos";
+    private static final int BLOCO = 64 * 1024;
+
+    private final Path dir;
+    private final long tamanhoMaximoSegmento;
+    private final Map<String, Localizacao> indice = new ConcurrentHashMap<>();
+    private final Map<Integer, FileChannel> canais = new ConcurrentHashMap<>();
+    // Segmentos já compactados -> instante da compactação; só são apagados no ciclo seguinte
+    private final Map<Integer, Long> aposentados = new ConcurrentHashMap<>();
+
+    // Segmento que recebe as gravações; acesso sempre sob o lock da instância
+    private int segmentoAtivo;
+    // Falha ao abrir o diretório (ex.: sem permissão de escrita): a aplicação sobe e cada uso a informa
+    private volatile IOException indisponivel;
+
+    // Posição de uma imagem dentro de um segmento
+    private record Localizacao(int segmento, Path arquivo, long offset, long tamanho, long gravadoEm) {
+        Localizacao renovada(long instante) {
+            return new Localizacao(segmento, arquivo, offset, tamanho, instante);
+        }
+    }
+
+    public ImagemBlobStore(
+            @Value("${app.imagens.dir:imagens_produto}") String dir,
+            @Value("${app.imagens.segmento-tamanho-maximo:64MB}") DataSize tamanhoMaximoSegmento
+    ) {
+        this.dir = Paths.get(dir).resolve(SUBDIR);
+        this.tamanhoMaximoSegmento = tamanhoMaximoSegmento.toBytes();
+    }
+
+    @PostConstruct
+    public synchronized void abrir() {
+        try {
+            carregar();
+            indisponivel = null;
+        } catch (IOException e) {
+            indisponivel = e;
+            log.error("[IMAGENS] diretório {} inutilizável ({}); uploads e leituras de imagem vão falhar até corrigir app.imagens.dir",
+                    dir.toAbsolutePath(), e.toString());
+        }
+    }
+
+    private void carregar() throws IOException {
+        Files.createDirectories(dir);
+        List<Integer> numeros = new ArrayList<>();
+        List<Path> uploads = new ArrayList<>();
+        try (Stream<Path> arquivos = Files.list(dir)) {
+            arquivos.forEach(p -> {
+                String n = p.getFileName().toString();
+                if (n.startsWith("seg-") && n.endsWith(".dat")) numeros.add(Integer.parseInt(n.substring(4, n.length() - 4)));
+                else if (n.startsWith("upload-") && n.endsWith(".tmp")) uploads.add(p);
+            });
+        }
+        numeros.sort(null);
+        // Uploads interrompidos pela queda anterior: nunca chegaram a um segmento
+        for (Path p : uploads) Files.deleteIfExists(p);
+        for (int numero : numeros) {
+            carregarSegmento(numero);
+        }
+        segmentoAtivo = numeros.isEmpty() ? 1 : numeros.get(numeros.size() - 1);
+        if (numeros.isEmpty()) canal(segmentoAtivo);
+        log.info("[IMAGENS] store aberto em {}: {} segmento(s), {} imagem(ns)", dir.toAbsolutePath(), canais.size(), indice.size());
+    }
+
+    @PreDestroy
+    public synchronized void fechar() {
+        for (FileChannel c : canais.values()) {
+            try {
+                c.close();
+            } catch (IOException e) {
+                log.warn("[IMAGENS] falha ao fechar segmento: {}", e.getMessage());
+            }
+        }
+        canais.clear();
+    }
+
+    @Override
+    public String gravar(String chave, byte[] dados) throws IOException {
+        verificarDisponivel();
+        synchronized (this) {
+            indice.put(chave, acrescentar(chave, Channels.newChannel(new ByteArrayInputStream(dados)), dados.length,
+                    System.currentTimeMillis()));
+        }
+        return PREFIXO + chave;
+    }
+
+    /**
+     * Grava a imagem endereçada pelo conteúdo: a chave é "sha256.extensao". O upload é recebido
+     * fora do lock num arquivo temporário ao lado dos segmentos, calculando o SHA-256 e verificando
+     * {@code limite} durante a cópia ({@link ImagemRejeitadaException} se passar); só a consulta ao
+     * índice e o append ao segmento ativo são serializados, então um cliente lento não trava os demais.
+     * Se o mesmo conteúdo já estiver no store, a imagem existente é reaproveitada, com o instante de
+     * gravação renovado (a compactação não a descarta durante a carência).
+     */
+    @Override
+    public Gravacao gravar(String extensao, InputStream in, long limite) throws IOException {
+        verificarDisponivel();
+        Path tmp = dir.resolve("upload-" + UUID.randomUUID() + ".tmp");
+        try (FileChannel recebido = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MessageDigest sha256 = sha256();
+            long tamanho = 0;
+            byte[] bloco = new byte[BLOCO];
+            int lidos;
+            while ((lidos = in.read(bloco)) != -1) {
+                tamanho += lidos;
+                if (tamanho > limite) {
+                    throw new ImagemRejeitadaException(ImagemRejeitadaException.Motivo.TAMANHO_EXCEDIDO,
+                            "Imagem excede o limite de " + limite + " bytes");
+                }
+                sha256.update(bloco, 0, lidos);
+                escrever(recebido, ByteBuffer.wrap(bloco, 0, lidos), tamanho - lidos);
+            }
+            String hash = HexFormat.of().formatHex(sha256.digest());
+            String chave = hash + "." + extensao;
+            synchronized (this) {
+                // Conteúdo já armazenado: reaproveita o registro existente. A entrada é trocada por uma com
+                // gravadoEm renovado, então uma compactação em curso (que só remove a entrada que avaliou)
+                // não a leva antes de o produto passar a referenciá-la
+                if (indice.computeIfPresent(chave, (k, loc) -> loc.renovada(System.currentTimeMillis())) != null) {
+                    return new Gravacao(PREFIXO + chave, tamanho, hash, false);
+                }
+                recebido.position(0);
+                indice.put(chave, acrescentar(chave, recebido, tamanho, System.currentTimeMillis()));
+            }
+            return new Gravacao(PREFIXO + chave, tamanho, hash, true);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Acrescenta ao segmento ativo (girando-o se estiver cheio) um registro com os {@code tamanho}
+     * bytes lidos de {@code fonte} a partir da posição atual dela. Chamar sob o lock da instância.
+     * Se a cópia falhar o registro parcial é desfeito.
+     */
+    private Localizacao acrescentar(String chave, ReadableByteChannel fonte, long tamanho, long gravadoEm) throws IOException {
+        byte[] chaveBytes = chave.getBytes(StandardCharsets.UTF_8);
+        if (chaveBytes.length > Short.MAX_VALUE) throw new IllegalArgumentException("Chave muito longa");
+        FileChannel destino = canal(segmentoAtivo);
+        if (destino.size() >= tamanhoMaximoSegmento) {
+            segmentoAtivo++;
+            destino = canal(segmentoAtivo);
+        }
+        long inicio = destino.size();
+        long inicioDados = inicio + CABECALHO + chaveBytes.length;
+        try {
+            // Tamanho -1 marca o registro como incompleto até o fim da cópia
+            ByteBuffer cabecalho = ByteBuffer.allocate(CABECALHO + chaveBytes.length);
+            cabecalho.putInt(MAGIC).putShort((short) chaveBytes.length).putLong(-1L).put(chaveBytes).flip();
+            escrever(destino, cabecalho, inicio);
+            long copiados = 0;
+            while (copiados < tamanho) {
+                long n = destino.transferFrom(fonte, inicioDados + copiados, tamanho - copiados);
+                if (n <= 0) throw new EOFException("Origem terminou antes de " + tamanho + " bytes: " + chave);
+                copiados += n;
+            }
+            escrever(destino, ByteBuffer.allocate(8).putLong(0, tamanho), inicio + 4 + 2);
+            destino.force(false);
+        } catch (IOException | RuntimeException e) {
+            destino.truncate(inicio);
+            throw e;
+        }
+        return new Localizacao(segmentoAtivo, arquivo(segmentoAtivo), inicioDados, tamanho, gravadoEm);
+    }
+
+    @Override
+    public OptionalLong tamanho(String chave) throws IOException {
+        verificarDisponivel();
+        Localizacao loc = indice.get(chave);
+        return loc == null ? OptionalLong.empty() : OptionalLong.of(loc.tamanho());
+    }
+
+    @Override
+    public Optional<Regiao> regiao(String chave) {
+        return Optional.ofNullable(indice.get(chave)).map(loc -> new Regiao(loc.arquivo(), loc.offset(), loc.tamanho()));
+    }
+
+    /** Lê a imagem inteira com uma única leitura posicional. */
+    @Override
+    public byte[] ler(String chave) throws IOException {
+        Localizacao loc = localizar(chave);
+        ByteBuffer buf = ByteBuffer.allocate(Math.toIntExact(loc.tamanho()));
+        lerCompleto(canal(loc), buf, loc.offset());
+        return buf.array();
+    }
+
+    @Override
+    public InputStream abrir(String chave, long inicio, long quantidade) throws IOException {
+        Localizacao loc = localizar(chave);
+        FileChannel canal = canal(loc);
+        // Leituras posicionais: o canal é compartilhado e sua posição não é alterada
+        return new InputStream() {
+            private long pos = loc.offset() + inicio;
+            private final long fim = pos + quantidade;
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (pos >= fim) return -1;
+                int n = canal.read(ByteBuffer.wrap(b, off, (int) Math.min(len, fim - pos)), pos);
+                if (n < 0) throw new EOFException("Segmento truncado: " + loc.arquivo());
+                pos += n;
+                return n;
+            }
+        };
+    }
+
+    /**
+     * Copia um trecho da imagem para o canal de destino via FileChannel.transferTo,
+     * sem passar os bytes pelo heap quando o destino permite.
+     */
+    @Override
+    public void transferir(String chave, long inicio, long quantidade, WritableByteChannel destino) throws IOException {
+        Localizacao loc = localizar(chave);
+        FileChannel canal = canal(loc);
+        long pos = loc.offset() + inicio;
+        long fim = pos + quantidade;
+        while (pos < fim) {
+            long enviados = canal.transferTo(pos, fim - pos, destino);
+            if (enviados <= 0) throw new EOFException("Segmento truncado: " + loc.arquivo());
+            pos += enviados;
+        }
+    }
+
+    private Localizacao localizar(String chave) throws IOException {
+        verificarDisponivel();
+        Localizacao loc = indice.get(chave);
+        if (loc == null) throw new FileNotFoundException("Imagem não encontrada: " + chave);
+        return loc;
+    }
+
+    private void verificarDisponivel() throws IOException {
+        IOException causa = indisponivel;
+        if (causa != null) {
+            throw new IOException("Storage de imagens indisponível: não foi possível usar o diretório "
+                    + dir.toAbsolutePath() + " (" + causa + "); verifique app.imagens.dir", causa);
+        }
+    }
+
+    private FileChannel canal(Localizacao loc) throws FileNotFoundException {
+        FileChannel canal = canais.get(loc.segmento());
+        if (canal == null) throw new FileNotFoundException("Segmento indisponível: " + loc.arquivo());
+        return canal;
+    }
+
+    /**
+     * Compacta os segmentos selados. Imagens para as quais {@code viva} retorna false e gravadas
+     * há mais de {@code carencia} saem do índice; segmentos cuja fração de bytes mortos passa de
+     * {@code limiarDesperdicio} têm as imagens vivas copiadas para o segmento ativo e são aposentados.
+     * Leitores nunca esperam: o índice é trocado entrada a entrada e o arquivo aposentado só é
+     * fechado e apagado na compactação seguinte (após a carência), quando não há mais leituras em curso.
+     */
+    @Override
+    public Compactacao compactar(Predicate<String> viva, Duration carencia, double limiarDesperdicio) throws IOException {
+        verificarDisponivel();
+        long agora = System.currentTimeMillis();
+        long limite = agora - carencia.toMillis();
+        apagarAposentados(limite);
+        int selado;
+        synchronized (this) {
+            if (canal(segmentoAtivo).size() > 0) {
+                segmentoAtivo++;
+                canal(segmentoAtivo);
+            }
+            selado = segmentoAtivo; // segmentos anteriores não recebem mais gravações
+        }
+
+        int orfas = 0;
+        for (Map.Entry<String, Localizacao> e : indice.entrySet()) {
+            Localizacao loc = e.getValue();
+            if (loc.segmento() < selado && loc.gravadoEm() < limite && !viva.test(e.getKey())
+                    && indice.remove(e.getKey(), loc)) {
+                orfas++;
+            }
+        }
+
+        Map<Integer, Long> bytesVivos = new HashMap<>();
+        for (Map.Entry<String, Localizacao> e : indice.entrySet()) {
+            bytesVivos.merge(e.getValue().segmento(), tamanhoRegistro(e.getKey(), e.getValue()), Long::sum);
+        }
+        int compactados = 0;
+        long recuperados = 0;
+        List<Integer> numeros = new ArrayList<>(canais.keySet());
+        numeros.sort(null);
+        for (int numero : numeros) {
+            if (numero >= selado || aposentados.containsKey(numero)) continue;
+            long total = canais.get(numero).size();
+            long vivos = bytesVivos.getOrDefault(numero, 0L);
+            if (total == 0 || (double) (total - vivos) / total < limiarDesperdicio) continue;
+            for (Map.Entry<String, Localizacao> e : indice.entrySet()) {
+                if (e.getValue().segmento() == numero) copiar(e.getKey(), e.getValue());
+            }
+            aposentados.put(numero, agora);
+            compactados++;
+            recuperados += total - vivos;
+        }
+        return new Compactacao(compactados, orfas, recuperados);
+    }
+
+    // Copia um registro vivo para o segmento ativo e aponta o índice para a cópia (se ninguém o substituiu antes)
+    private synchronized void copiar(String chave, Localizacao lida) throws IOException {
+        // Relida sob o lock: um upload pode ter renovado a entrada (mesmo registro, outro gravadoEm) desde a varredura
+        Localizacao origem = indice.get(chave);
+        if (origem == null || origem.segmento() != lida.segmento() || origem.offset() != lida.offset()) return;
+        FileChannel fonte = canais.get(origem.segmento());
+        // A posição dos canais dos segmentos só é usada aqui e sempre sob o lock; leituras e gravações são posicionais
+        fonte.position(origem.offset());
+        indice.replace(chave, origem, acrescentar(chave, fonte, origem.tamanho(), origem.gravadoEm()));
+    }
+
+    private void apagarAposentados(long limite) {
+        for (Map.Entry<Integer, Long> e : aposentados.entrySet()) {
+            if (e.getValue() >= limite) continue;
+            int numero = e.getKey();
+            try {
+                FileChannel c = canais.remove(numero);
+                if (c != null) c.close();
+                Files.deleteIfExists(arquivo(numero));
+                aposentados.remove(numero);
+            } catch (IOException ex) {
+                log.warn("[IMAGENS] falha ao apagar segmento {}: {}", numero, ex.getMessage());
+            }
+        }
+    }
+
+    private static long tamanhoRegistro(String chave, Localizacao loc) {
+        return CABECALHO + chave.getBytes(StandardCharsets.UTF_8).length + loc.tamanho();
+    }
+
+    // Varre o segmento reconstruindo o índice; um registro incompleto no fim (queda no meio da gravação) é descartado
+    private void carregarSegmento(int numero) throws IOException {
+        FileChannel canal = canal(numero);
+        long tamanho = canal.size();
+        long pos = 0;
+        long gravadoEm = Files.getLastModifiedTime(arquivo(numero)).toMillis();
+        ByteBuffer cabecalho = ByteBuffer.allocate(CABECALHO);
+        while (pos < tamanho) {
+            cabecalho.clear();
+            if (tamanho - pos < CABECALHO || canal.read(cabecalho, pos) < CABECALHO) break;
+            cabecalho.flip();
+            int magic = cabecalho.getInt();
+            short tamanhoChave = cabecalho.getShort();
+            long tamanhoDados = cabecalho.getLong();
+            long fim = pos + CABECALHO + tamanhoChave + tamanhoDados;
+            if (magic != MAGIC || tamanhoChave < 0 || tamanhoDados < 0 || fim > tamanho) break;
+            ByteBuffer chave = ByteBuffer.allocate(tamanhoChave);
+            lerCompleto(canal, chave, pos + CABECALHO);
+            String k = new String(chave.array(), StandardCharsets.UTF_8);
+            indice.put(k, new Localizacao(numero, arquivo(numero), pos + CABECALHO + tamanhoChave, tamanhoDados, gravadoEm));
+            pos = fim;
+        }
+        if (pos < tamanho) {
+            log.warn("[IMAGENS] segmento {} com registro incompleto na posição {}; truncando", numero, pos);
+            canal.truncate(pos);
+        }
+    }
+
+    private FileChannel canal(int numero) throws IOException {
+        FileChannel c = canais.get(numero);
+        if (c == null) {
+            c = FileChannel.open(arquivo(numero), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            canais.put(numero, c);
+        }
+        return c;
+    }
+
+    private Path arquivo(int numero) {
+        return dir.resolve(String.format("seg-%06d.dat", numero));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void lerCompleto(FileChannel canal, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int lidos = canal.read(buf, pos);
+            if (lidos < 0) throw new EOFException("Segmento truncado");
+            pos += lidos;
+        }
+    }
+
+    private static void escrever(FileChannel canal, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            pos += canal.write(buf, pos);
+        }
+    }
+}
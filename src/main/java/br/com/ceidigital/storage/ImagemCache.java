@@ -0,0 +1,89 @@
+package br.com.ceidigital.storage;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache LRU de bytes de imagens, limitado pelo total de bytes (não pelo número de entradas).
+ * Chaveado por Produto.caminhoImagem. Expõe métricas imagens.cache.* (hits, misses, evictions, bytes).
+ */
+@Component
+public class ImagemCache {
+
+    private final long capacidade;
+    private final long tamanhoMaximoEntrada;
+    // accessOrder=true: iteração do menos para o mais recentemente usado
+    private final LinkedHashMap<String, byte[]> entradas = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ImagemCache(
+            @Value("${app.imagens.cache.tamanho-maximo:64MB}") DataSize capacidade,
+            @Value("${app.imagens.cache.entrada-maxima:2MB}") DataSize tamanhoMaximoEntrada,
+            MeterRegistry registry
+    ) {
+        this.capacidade = capacidade.toBytes();
+        this.tamanhoMaximoEntrada = Math.min(tamanhoMaximoEntrada.toBytes(), this.capacidade);
+        FunctionCounter.builder("imagens.cache.hits", hits, AtomicLong::get).register(registry);
+        FunctionCounter.builder("imagens.cache.misses", misses, AtomicLong::get).register(registry);
+        FunctionCounter.builder("imagens.cache.evictions", evictions, AtomicLong::get).register(registry);
+        Gauge.builder("imagens.cache.bytes", this, ImagemCache::bytes).baseUnit("bytes").register(registry);
+        Gauge.builder("imagens.cache.entradas", this, ImagemCache::entradas).register(registry);
+    }
+
+    public synchronized byte[] obter(String caminho) {
+        byte[] dados = entradas.get(caminho);
+        if (dados == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return dados;
+    }
+
+    /** Guarda a imagem, despejando as menos usadas até caber no orçamento. Imagens grandes demais são ignoradas. */
+    public synchronized void guardar(String caminho, byte[] dados) {
+        if (!aceita(dados.length)) return;
+        byte[] anterior = entradas.put(caminho, dados);
+        if (anterior != null) bytes -= anterior.length;
+        bytes += dados.length;
+        Iterator<Map.Entry<String, byte[]>> it = entradas.entrySet().iterator();
+        while (bytes > capacidade && it.hasNext()) {
+            Map.Entry<String, byte[]> e = it.next();
+            bytes -= e.getValue().length;
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /** Indica se uma imagem deste tamanho seria mantida no cache. */
+    public boolean aceita(long tamanho) {
+        return tamanho <= tamanhoMaximoEntrada;
+    }
+
+    public synchronized void invalidar(String caminho) {
+        if (caminho == null) return;
+        byte[] removido = entradas.remove(caminho);
+        if (removido != null) bytes -= removido.length;
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized int entradas() {
+        return entradas.size();
+    }
+}
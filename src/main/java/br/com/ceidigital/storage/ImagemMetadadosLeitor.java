@@ -0,0 +1,41 @@
+package br.com.ceidigital.storage;
+
+import br.com.ceidigital.domain.ImagemMetadados;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+
+/**
+ * Apura os metadados de uma imagem recém-gravada. As dimensões vêm só do cabeçalho
+ * ({@link DimensoesImagem}), sem decodificar os pixels.
+ */
+@Component
+public class ImagemMetadadosLeitor {
+    private static final Logger log = LoggerFactory.getLogger(ImagemMetadadosLeitor.class);
+
+    private final ImagemStorage storage;
+
+    public ImagemMetadadosLeitor(ImagemStorage storage) {
+        this.storage = storage;
+    }
+
+    public ImagemMetadados ler(ImagemStorage.Gravacao gravacao, TipoImagem tipo) {
+        Integer largura = null;
+        Integer altura = null;
+        String chave = ImagemStorage.chaveDe(gravacao.caminho()).orElseThrow();
+        try (InputStream in = storage.abrir(chave, 0, gravacao.tamanho())) {
+            Optional<DimensoesImagem> dimensoes = DimensoesImagem.ler(in);
+            if (dimensoes.isPresent()) {
+                largura = dimensoes.get().largura();
+                altura = dimensoes.get().altura();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.info("[IMAGENS] dimensões de {} indisponíveis: {}", chave, e.getMessage());
+        }
+        return new ImagemMetadados(gravacao.tamanho(), tipo.mediaType(), largura, altura, gravacao.sha256());
+    }
+}
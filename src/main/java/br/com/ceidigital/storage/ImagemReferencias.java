@@ -0,0 +1,40 @@
+package br.com.ceidigital.storage;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Contagem de quantos produtos referenciam cada imagem (chave do storage).
+ * Mantida pelos uploads/exclusões e reconciliada com o banco na inicialização e a cada compactação.
+ */
+@Component
+public class ImagemReferencias {
+
+    private final Map<String, Integer> referencias = new ConcurrentHashMap<>();
+
+    /** Registra mais um produto apontando para a imagem. */
+    public void reter(String caminho) {
+        ImagemStorage.chaveDe(caminho).ifPresent(k -> referencias.merge(k, 1, Integer::sum));
+    }
+
+    /** Remove uma referência à imagem e retorna quantas restam (0 = nenhum produto a usa mais). */
+    public int liberar(String caminho) {
+        Optional<String> chave = ImagemStorage.chaveDe(caminho);
+        if (chave.isEmpty()) return 0;
+        Integer restantes = referencias.computeIfPresent(chave.get(), (k, n) -> n > 1 ? n - 1 : null);
+        return restantes == null ? 0 : restantes;
+    }
+
+    public int referencias(String chave) {
+        return referencias.getOrDefault(chave, 0);
+    }
+
+    /** Substitui as contagens pelas apuradas no banco (chave -> número de produtos). */
+    public void redefinir(Map<String, Integer> contagens) {
+        referencias.keySet().retainAll(contagens.keySet());
+        referencias.putAll(contagens);
+    }
+}
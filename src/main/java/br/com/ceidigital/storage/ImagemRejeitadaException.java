@@ -0,0 +1,18 @@
+package br.com.ceidigital.storage;
+
+/**
+ * Upload de imagem recusado durante a gravação (tamanho acima do limite ou formato não reconhecido).
+ */
+public class ImagemRejeitadaException extends RuntimeException {
+
+    public enum Motivo { TAMANHO_EXCEDIDO, TIPO_NAO_SUPORTADO }
+
+    private final Motivo motivo;
+
+    public ImagemRejeitadaException(Motivo motivo, String mensagem) {
+        super(mensagem);
+        this.motivo = motivo;
+    }
+
+    public Motivo getMotivo() { return motivo; }
+}
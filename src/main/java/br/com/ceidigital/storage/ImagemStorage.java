@@ -0,0 +1,82 @@
+package br.com.ceidigital.storage;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.function.Predicate;
+
+/**
+ * Contrato de armazenamento das imagens de produto. O backend é escolhido por
+ * {@code app.imagens.storage}: "local" ({@link ImagemBlobStore}, segmentos no disco da máquina)
+ * ou "s3" ({@link S3ImagemStorage}, qualquer serviço compatível com S3, o que permite várias instâncias).
+ */
+public interface ImagemStorage {
+
+    /** Prefixo gravado em Produto.caminhoImagem para imagens deste storage. */
+    String PREFIXO = "blob:";
+
+    /**
+     * Resultado de uma gravação: caminho para Produto.caminhoImagem, tamanho, SHA-256 (hex) do conteúdo
+     * e se o conteúdo era inédito (false quando já existia e foi reaproveitado).
+     */
+    record Gravacao(String caminho, long tamanho, String sha256, boolean nova) {}
+
+    /** Trecho de arquivo local com o conteúdo da imagem, para envio via sendfile. */
+    record Regiao(Path arquivo, long offset, long tamanho) {}
+
+    /** Resultado de uma compactação: unidades reescritas/removidas, imagens órfãs descartadas e bytes liberados. */
+    record Compactacao(int segmentos, int orfas, long bytesRecuperados) {}
+
+    /**
+     * Grava a imagem endereçada pelo conteúdo: a chave é "sha256.extensao" e conteúdo repetido é
+     * reaproveitado. Acima de {@code limite} bytes lança {@link ImagemRejeitadaException}.
+     */
+    Gravacao gravar(String extensao, InputStream in, long limite) throws IOException;
+
+    /** Grava com chave explícita (usado para variantes derivadas de uma imagem). Retorna o caminho. */
+    String gravar(String chave, byte[] dados) throws IOException;
+
+    /** Tamanho da imagem, ou vazio se a chave não existe; falha de acesso ao backend é IOException, não "não existe". */
+    OptionalLong tamanho(String chave) throws IOException;
+
+    /** Abre a leitura de um trecho da imagem como stream, sem carregá-la inteira. */
+    InputStream abrir(String chave, long inicio, long quantidade) throws IOException;
+
+    /** Lê a imagem inteira (uso restrito a imagens pequenas: cache, variantes). */
+    default byte[] ler(String chave) throws IOException {
+        long tamanho = tamanho(chave).orElseThrow(() -> new FileNotFoundException("Imagem não encontrada: " + chave));
+        try (InputStream in = abrir(chave, 0, tamanho)) {
+            return in.readAllBytes();
+        }
+    }
+
+    /** Região de arquivo local com a imagem, quando o backend a tem em disco (permite sendfile). */
+    default Optional<Regiao> regiao(String chave) {
+        return Optional.empty();
+    }
+
+    /** Copia um trecho da imagem para o canal de destino. */
+    default void transferir(String chave, long inicio, long quantidade, WritableByteChannel destino) throws IOException {
+        try (InputStream in = abrir(chave, inicio, quantidade)) {
+            in.transferTo(Channels.newOutputStream(destino));
+        }
+    }
+
+    /**
+     * Descarta imagens para as quais {@code viva} retorna false, gravadas há mais de {@code carencia},
+     * e recupera o espaço que ocupavam.
+     */
+    Compactacao compactar(Predicate<String> viva, Duration carencia, double limiarDesperdicio) throws IOException;
+
+    /** Extrai a chave de um caminho no formato "blob:chave"; vazio para caminhos legados (zip). */
+    static Optional<String> chaveDe(String caminho) {
+        if (caminho == null || !caminho.startsWith(PREFIXO)) return Optional.empty();
+        return Optional.of(caminho.substring(PREFIXO.length()));
+    }
+}
@@ -0,0 +1,267 @@
+package br.com.ceidigital.storage;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.TreeMap;
+
+/**
+ * Cliente mínimo da API REST do S3 (e compatíveis, como MinIO) com assinatura AWS Signature V4.
+ * Assim como o envio de SMS, falamos HTTP direto em vez de depender do SDK no build.
+ */
+class S3Cliente {
+
+    private static final DateTimeFormatter AMZ_DATA = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+    private static final String VAZIO_SHA256 = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+
+    /** Objeto listado no bucket. */
+    record Objeto(String chave, long tamanho, Instant modificadoEm) {}
+
+    /** Página de uma listagem (token vazio quando não há mais páginas). */
+    record Pagina(List<Objeto> objetos, String proximoToken) {}
+
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    private final URI endpoint;
+    private final String regiao;
+    private final String bucket;
+    private final String accessKey;
+    private final String secretKey;
+    private final boolean pathStyle;
+
+    S3Cliente(String endpoint, String regiao, String bucket, String accessKey, String secretKey, boolean pathStyle) {
+        this.endpoint = URI.create(endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint);
+        this.regiao = regiao;
+        this.bucket = bucket;
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+        this.pathStyle = pathStyle;
+    }
+
+    void put(String chave, byte[] corpo) throws IOException {
+        enviar("PUT", chave, Map.of(), Map.of(), HttpRequest.BodyPublishers.ofByteArray(corpo),
+                HexFormat.of().formatHex(sha256(corpo)), HttpResponse.BodyHandlers.discarding());
+    }
+
+    /** PUT do conteúdo de um arquivo, enviado em streaming com o tamanho conhecido; {@code sha256} é o hash (hex) do arquivo. */
+    void put(String chave, Path arquivo, String sha256) throws IOException {
+        enviar("PUT", chave, Map.of(), Map.of(), HttpRequest.BodyPublishers.ofFile(arquivo), sha256, HttpResponse.BodyHandlers.discarding());
+    }
+
+    OptionalLong head(String chave) throws IOException {
+        HttpResponse<Void> r = executar("HEAD", chave, Map.of(), Map.of(), null, VAZIO_SHA256, HttpResponse.BodyHandlers.discarding());
+        if (r.statusCode() == 404) return OptionalLong.empty();
+        verificar(r, chave);
+        return r.headers().firstValueAsLong("Content-Length");
+    }
+
+    /** GET de um trecho do objeto, devolvendo o corpo como stream (sem carregar em memória). */
+    InputStream get(String chave, long inicio, long quantidade) throws IOException {
+        Map<String, String> headers = Map.of("Range", "bytes=" + inicio + "-" + (inicio + quantidade - 1));
+        HttpResponse<InputStream> r = executar("GET", chave, Map.of(), headers, null, VAZIO_SHA256, HttpResponse.BodyHandlers.ofInputStream());
+        if (r.statusCode() >= 300) {
+            r.body().close();
+            verificar(r, chave);
+        }
+        return r.body();
+    }
+
+    /** Baixa o objeto inteiro direto para um arquivo. */
+    void baixar(String chave, Path destino) throws IOException {
+        enviar("GET", chave, Map.of(), Map.of(), null, VAZIO_SHA256, HttpResponse.BodyHandlers.ofFile(destino));
+    }
+
+    void delete(String chave) throws IOException {
+        enviar("DELETE", chave, Map.of(), Map.of(), null, VAZIO_SHA256, HttpResponse.BodyHandlers.discarding());
+    }
+
+    /** Data da última modificação do objeto, ou vazio se ele não existe. */
+    Optional<Instant> modificadoEm(String chave) throws IOException {
+        HttpResponse<Void> r = executar("HEAD", chave, Map.of(), Map.of(), null, VAZIO_SHA256, HttpResponse.BodyHandlers.discarding());
+        if (r.statusCode() == 404) return Optional.empty();
+        verificar(r, chave);
+        return r.headers().firstValue("Last-Modified").map(v -> DateTimeFormatter.RFC_1123_DATE_TIME.parse(v, Instant::from));
+    }
+
+    /**
+     * Renova o LastModified do objeto copiando-o sobre ele mesmo (o S3 só aceita a cópia para a
+     * mesma chave trocando os metadados). {@link FileNotFoundException} se ele não existe.
+     */
+    void tocar(String chave) throws IOException {
+        Map<String, String> headers = Map.of("x-amz-copy-source", "/" + bucket + "/" + codificar(chave, false),
+                "x-amz-metadata-directive", "REPLACE");
+        enviar("PUT", chave, Map.of(), headers, null, VAZIO_SHA256, HttpResponse.BodyHandlers.discarding());
+    }
+
+    Pagina listar(String token) throws IOException {
+        Map<String, String> query = new TreeMap<>();
+        query.put("list-type", "2");
+        if (token != null && !token.isEmpty()) query.put("continuation-token", token);
+        HttpResponse<byte[]> r = enviar("GET", "", query, Map.of(), null, VAZIO_SHA256, HttpResponse.BodyHandlers.ofByteArray());
+        Element raiz = xml(r.body()).getDocumentElement();
+        List<Objeto> objetos = new ArrayList<>();
+        NodeList contents = raiz.getElementsByTagName("Contents");
+        for (int i = 0; i < contents.getLength(); i++) {
+            Element c = (Element) contents.item(i);
+            objetos.add(new Objeto(texto(c, "Key"), Long.parseLong(texto(c, "Size")), Instant.parse(texto(c, "LastModified"))));
+        }
+        String proximo = "true".equals(texto(raiz, "IsTruncated")) ? texto(raiz, "NextContinuationToken") : "";
+        return new Pagina(objetos, proximo);
+    }
+
+    private <T> HttpResponse<T> enviar(String metodo, String chave, Map<String, String> query, Map<String, String> headers,
+                                       HttpRequest.BodyPublisher corpo, String payloadHash, HttpResponse.BodyHandler<T> handler) throws IOException {
+        HttpResponse<T> r = executar(metodo, chave, query, headers, corpo, payloadHash, handler);
+        verificar(r, chave);
+        return r;
+    }
+
+    private <T> HttpResponse<T> executar(String metodo, String chave, Map<String, String> query, Map<String, String> headers,
+                                         HttpRequest.BodyPublisher corpo, String payloadHash, HttpResponse.BodyHandler<T> handler) throws IOException {
+        String amzData = AMZ_DATA.format(Instant.now());
+        // Além de host e dos cabeçalhos de data e hash, assina os x-amz-*
+        Map<String, String> assinados = new TreeMap<>();
+        headers.forEach((k, v) -> {
+            if (k.toLowerCase().startsWith("x-amz-")) assinados.put(k, v);
+        });
+        String qs = consulta(query);
+        URI uri = URI.create(endpoint.getScheme() + "://" + host() + caminho(chave) + (qs.isEmpty() ? "" : "?" + qs));
+        HttpRequest.Builder b = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofMinutes(2))
+                .header("x-amz-content-sha256", payloadHash)
+                .header("x-amz-date", amzData)
+                .header("Authorization", autorizacao(metodo, chave, query, assinados, payloadHash, amzData));
+        headers.forEach(b::header);
+        b.method(metodo, corpo == null ? HttpRequest.BodyPublishers.noBody() : corpo);
+        try {
+            return http.send(b.build(), handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Requisição ao S3 interrompida", e);
+        }
+    }
+
+    /**
+     * Valor do header Authorization (AWS Signature V4) da requisição. Assina host, x-amz-content-sha256,
+     * x-amz-date e os {@code headers} informados, com {@code amzData} no formato yyyyMMdd'T'HHmmss'Z'.
+     */
+    String autorizacao(String metodo, String chave, Map<String, String> query, Map<String, String> headers,
+                       String payloadHash, String amzData) {
+        String data = amzData.substring(0, 8);
+        // Cabeçalhos canônicos: nomes em minúsculas, em ordem alfabética
+        Map<String, String> assinados = new TreeMap<>();
+        assinados.put("host", host());
+        assinados.put("x-amz-content-sha256", payloadHash);
+        assinados.put("x-amz-date", amzData);
+        headers.forEach((k, v) -> assinados.put(k.toLowerCase(), v));
+        StringBuilder canonicos = new StringBuilder();
+        assinados.forEach((k, v) -> canonicos.append(k).append(':').append(v.trim()).append('\n'));
+        String nomesAssinados = String.join(";", assinados.keySet());
+
+        String requisicaoCanonica = metodo + "\n" + caminho(chave) + "\n" + consulta(query) + "\n" + canonicos + "\n"
+                + nomesAssinados + "\n" + payloadHash;
+        String escopo = data + "/" + regiao + "/s3/aws4_request";
+        String paraAssinar = "AWS4-HMAC-SHA256\n" + amzData + "\n" + escopo + "\n"
+                + HexFormat.of().formatHex(sha256(requisicaoCanonica.getBytes(StandardCharsets.UTF_8)));
+        byte[] chaveAssinatura = hmac(hmac(hmac(hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), data), regiao), "s3"), "aws4_request");
+        String assinatura = HexFormat.of().formatHex(hmac(chaveAssinatura, paraAssinar));
+        return "AWS4-HMAC-SHA256 Credential=" + accessKey + "/" + escopo
+                + ",SignedHeaders=" + nomesAssinados + ",Signature=" + assinatura;
+    }
+
+    private String caminho(String chave) {
+        return pathStyle ? "/" + bucket + "/" + codificar(chave, false) : "/" + codificar(chave, false);
+    }
+
+    private String host() {
+        String host = pathStyle ? endpoint.getHost() : bucket + "." + endpoint.getHost();
+        return endpoint.getPort() != -1 ? host + ":" + endpoint.getPort() : host;
+    }
+
+    // Query string canônica: chaves e valores codificados, em ordem alfabética
+    private static String consulta(Map<String, String> query) {
+        Map<String, String> ordenada = new TreeMap<>();
+        query.forEach((k, v) -> ordenada.put(codificar(k, true), codificar(v, true)));
+        StringBuilder qs = new StringBuilder();
+        ordenada.forEach((k, v) -> qs.append(qs.length() == 0 ? "" : "&").append(k).append('=').append(v));
+        return qs.toString();
+    }
+
+    private static void verificar(HttpResponse<?> r, String chave) throws IOException {
+        if (r.statusCode() == 404) throw new FileNotFoundException("Objeto não encontrado no S3: " + chave);
+        if (r.statusCode() >= 300) throw new IOException("S3 respondeu " + r.statusCode() + " para " + chave);
+    }
+
+    // URI encoding do SigV4: só A-Z a-z 0-9 - _ . ~ passam sem codificação ('/' também, fora da query)
+    private static String codificar(String s, boolean query) {
+        StringBuilder out = new StringBuilder();
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '~' || (c == '/' && !query)) {
+                out.append(c);
+            } else {
+                out.append('%').append(String.format("%02X", b & 0xFF));
+            }
+        }
+        return out.toString();
+    }
+
+    private static byte[] sha256(byte[] dados) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(dados);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] hmac(byte[] chave, String dados) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(chave, "HmacSHA256"));
+            return mac.doFinal(dados.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Document xml(byte[] corpo) throws IOException {
+        try {
+            DocumentBuilderFactory f = DocumentBuilderFactory.newInstance();
+            f.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            return f.newDocumentBuilder().parse(new ByteArrayInputStream(corpo));
+        } catch (Exception e) {
+            throw new IOException("Resposta XML inválida do S3", e);
+        }
+    }
+
+    private static String texto(Element pai, String tag) {
+        NodeList nos = pai.getElementsByTagName(tag);
+        return nos.getLength() == 0 ? "" : nos.item(0).getTextContent();
+    }
+}
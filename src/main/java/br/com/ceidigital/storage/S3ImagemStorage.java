@@ -0,0 +1,328 @@
+package br.com.ceidigital.storage;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Backend S3 de {@link ImagemStorage} (AWS S3, MinIO ou outro serviço compatível), para rodar
+ * várias instâncias sobre o mesmo acervo. As chaves continuam "sha256.extensao": o upload é gravado
+ * primeiro num arquivo do cache local (calculando o hash, sem ter a imagem inteira em memória) e
+ * enviado num único PUT em streaming para a chave final. As leituras usam GET com Range e um cache
+ * read-through em disco local (LRU por bytes), que também permite o envio via sendfile.
+ */
+@Component
+@ConditionalOnProperty(name = "app.imagens.storage", havingValue = "s3")
+public class S3ImagemStorage implements ImagemStorage {
+    private static final Logger log = LoggerFactory.getLogger(S3ImagemStorage.class);
+
+    private static final int BLOCO = 64 * 1024;
+
+    private final S3Cliente s3;
+    private final Path cacheDir;
+    private final long cacheCapacidade;
+    // accessOrder=true: iteração do arquivo menos para o mais recentemente usado
+    private final LinkedHashMap<String, Long> cacheLocal = new LinkedHashMap<>(256, 0.75f, true);
+    private long cacheBytes;
+    // Falha ao abrir o diretório do cache: uploads falham com o motivo e as leituras vão direto ao bucket
+    private volatile IOException cacheIndisponivel;
+
+    public S3ImagemStorage(
+            @Value("${app.imagens.s3.endpoint}") String endpoint,
+            @Value("${app.imagens.s3.regiao:us-east-1}") String regiao,
+            @Value("${app.imagens.s3.bucket}") String bucket,
+            @Value("${app.imagens.s3.access-key}") String accessKey,
+            @Value("${app.imagens.s3.secret-key}") String secretKey,
+            @Value("${app.imagens.s3.path-style:true}") boolean pathStyle,
+            @Value("${app.imagens.s3.cache-dir:${java.io.tmpdir}/cei-imagens-s3}") String cacheDir,
+            @Value("${app.imagens.s3.cache-tamanho-maximo:512MB}") DataSize cacheCapacidade
+    ) {
+        this.s3 = new S3Cliente(endpoint, regiao, bucket, accessKey, secretKey, pathStyle);
+        this.cacheDir = Paths.get(cacheDir);
+        this.cacheCapacidade = cacheCapacidade.toBytes();
+    }
+
+    /** Recarrega o cache local deixado pela execução anterior (mais antigos primeiro). */
+    @PostConstruct
+    public void abrir() {
+        try {
+            recarregarCache();
+            cacheIndisponivel = null;
+        } catch (IOException e) {
+            cacheIndisponivel = e;
+            log.error("[IMAGENS] diretório do cache S3 {} inutilizável ({}); uploads vão falhar até corrigir app.imagens.s3.cache-dir",
+                    cacheDir.toAbsolutePath(), e.toString());
+            return;
+        }
+        log.info("[IMAGENS] storage S3 pronto; cache local com {} imagem(ns), {} bytes", cacheLocal.size(), cacheBytes);
+    }
+
+    private void recarregarCache() throws IOException {
+        Files.createDirectories(cacheDir);
+        try (Stream<Path> arquivos = Files.list(cacheDir)) {
+            List<Path> lista = arquivos.filter(Files::isRegularFile).sorted(Comparator.comparingLong(S3ImagemStorage::modificadoEm)).toList();
+            for (Path p : lista) {
+                String nome = p.getFileName().toString();
+                if (nome.endsWith(".tmp")) {
+                    Files.deleteIfExists(p);
+                    continue;
+                }
+                registrarNoCache(nome, Files.size(p));
+            }
+        }
+    }
+
+    @Override
+    public Gravacao gravar(String extensao, InputStream in, long limite) throws IOException {
+        IOException causa = cacheIndisponivel;
+        if (causa != null) {
+            throw new IOException("Storage de imagens indisponível: não foi possível usar o diretório do cache "
+                    + cacheDir.toAbsolutePath() + " (" + causa + "); verifique app.imagens.s3.cache-dir", causa);
+        }
+        // A chave depende do conteúdo e o PUT assinado precisa do hash do corpo antes de começar
+        Path tmp = cacheDir.resolve("upload-" + UUID.randomUUID() + ".tmp");
+        try {
+            MessageDigest sha256 = sha256();
+            long tamanho = 0;
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                byte[] bloco = new byte[BLOCO];
+                int lidos;
+                while ((lidos = in.read(bloco)) != -1) {
+                    tamanho += lidos;
+                    verificarLimite(tamanho, limite);
+                    sha256.update(bloco, 0, lidos);
+                    out.write(bloco, 0, lidos);
+                }
+            }
+            String hash = HexFormat.of().formatHex(sha256.digest());
+            String chave = hash + "." + extensao;
+            boolean nova = !reaproveitar(chave);
+            if (nova) s3.put(chave, tmp, hash);
+            guardarNoCache(chave, tmp, tamanho);
+            return new Gravacao(PREFIXO + chave, tamanho, hash, nova);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Conteúdo já no bucket: renova o LastModified do objeto, para a compactação (que só apaga objetos
+     * mais antigos que a carência) não levá-lo antes de o produto passar a referenciá-lo. False se o
+     * objeto não existe (inclusive se foi apagado por outra instância), caso em que ele é gravado de novo.
+     */
+    private boolean reaproveitar(String chave) throws IOException {
+        try {
+            s3.tocar(chave);
+            return true;
+        } catch (FileNotFoundException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public String gravar(String chave, byte[] dados) throws IOException {
+        s3.put(chave, dados);
+        return PREFIXO + chave;
+    }
+
+    @Override
+    public OptionalLong tamanho(String chave) throws IOException {
+        // Só a cópia local dispensa o HEAD: o objeto pode ter sido apagado por outra instância
+        synchronized (cacheLocal) {
+            Long local = cacheLocal.get(chave);
+            if (local != null && Files.exists(cacheDir.resolve(chave))) return OptionalLong.of(local);
+        }
+        return s3.head(chave);
+    }
+
+    @Override
+    public InputStream abrir(String chave, long inicio, long quantidade) throws IOException {
+        Optional<Regiao> local = regiao(chave);
+        if (local.isPresent()) {
+            FileChannel canal = FileChannel.open(local.get().arquivo(), StandardOpenOption.READ);
+            canal.position(inicio);
+            return limitar(Channels.newInputStream(canal), quantidade);
+        }
+        return s3.get(chave, inicio, quantidade);
+    }
+
+    /**
+     * Garante a imagem no cache local (baixando-a do bucket se preciso) e devolve o arquivo.
+     * Vazio se o download falhar; nesse caso a leitura segue por GET com Range.
+     */
+    @Override
+    public Optional<Regiao> regiao(String chave) {
+        if (cacheIndisponivel != null) return Optional.empty();
+        Path arquivo = cacheDir.resolve(chave);
+        synchronized (cacheLocal) {
+            Long tamanho = cacheLocal.get(chave);
+            if (tamanho != null && Files.exists(arquivo)) return Optional.of(new Regiao(arquivo, 0, tamanho));
+        }
+        try {
+            Path tmp = cacheDir.resolve(chave + "." + UUID.randomUUID() + ".tmp");
+            try {
+                s3.baixar(chave, tmp);
+                Files.move(tmp, arquivo, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            long tamanho = Files.size(arquivo);
+            registrarNoCache(chave, tamanho);
+            return Optional.of(new Regiao(arquivo, 0, tamanho));
+        } catch (FileNotFoundException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            log.warn("[IMAGENS] falha ao baixar {} para o cache local: {}", chave, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Lista o bucket e apaga as imagens para as quais {@code viva} retorna false, gravadas (ou
+     * reaproveitadas por um upload) há mais de {@code carencia}. No S3 não há segmentos a
+     * reescrever, então {@code limiarDesperdicio} não se aplica.
+     */
+    @Override
+    public Compactacao compactar(Predicate<String> viva, Duration carencia, double limiarDesperdicio) throws IOException {
+        Instant limite = Instant.now().minus(carencia);
+        int orfas = 0;
+        long recuperados = 0;
+        String token = "";
+        do {
+            S3Cliente.Pagina pagina = s3.listar(token);
+            for (S3Cliente.Objeto o : pagina.objetos()) {
+                if (!o.modificadoEm().isBefore(limite)) continue;
+                if (viva.test(o.chave())) continue;
+                // Um upload pode ter reaproveitado o objeto depois da listagem (e renovado o LastModified)
+                if (!s3.modificadoEm(o.chave()).map(m -> m.isBefore(limite)).orElse(false)) continue;
+                s3.delete(o.chave());
+                removerDoCache(o.chave());
+                orfas++;
+                recuperados += o.tamanho();
+            }
+            token = pagina.proximoToken();
+        } while (!token.isEmpty());
+        return new Compactacao(0, orfas, recuperados);
+    }
+
+    // O arquivo do upload já é a imagem: vira a cópia local em vez de ser baixado de novo na primeira leitura
+    private void guardarNoCache(String chave, Path arquivo, long tamanho) {
+        try {
+            Files.move(arquivo, cacheDir.resolve(chave), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            registrarNoCache(chave, tamanho);
+        } catch (IOException e) {
+            log.warn("[IMAGENS] falha ao guardar {} no cache local: {}", chave, e.getMessage());
+        }
+    }
+
+    private void registrarNoCache(String chave, long tamanho) {
+        List<String> despejadas = new ArrayList<>();
+        synchronized (cacheLocal) {
+            Long anterior = cacheLocal.put(chave, tamanho);
+            if (anterior != null) cacheBytes -= anterior;
+            cacheBytes += tamanho;
+            Iterator<Map.Entry<String, Long>> it = cacheLocal.entrySet().iterator();
+            while (cacheBytes > cacheCapacidade && it.hasNext()) {
+                Map.Entry<String, Long> e = it.next();
+                if (e.getKey().equals(chave)) continue;
+                cacheBytes -= e.getValue();
+                despejadas.add(e.getKey());
+                it.remove();
+            }
+        }
+        // Arquivos ainda abertos (ex.: sendfile em andamento) continuam legíveis após o unlink
+        for (String d : despejadas) {
+            try {
+                Files.deleteIfExists(cacheDir.resolve(d));
+            } catch (IOException e) {
+                log.warn("[IMAGENS] falha ao remover {} do cache local: {}", d, e.getMessage());
+            }
+        }
+    }
+
+    private void removerDoCache(String chave) throws IOException {
+        synchronized (cacheLocal) {
+            Long t = cacheLocal.remove(chave);
+            if (t != null) cacheBytes -= t;
+        }
+        Files.deleteIfExists(cacheDir.resolve(chave));
+    }
+
+    private static void verificarLimite(long tamanho, long limite) {
+        if (tamanho > limite) {
+            throw new ImagemRejeitadaException(ImagemRejeitadaException.Motivo.TAMANHO_EXCEDIDO,
+                    "Imagem excede o limite de " + limite + " bytes");
+        }
+    }
+
+    private static InputStream limitar(InputStream in, long quantidade) {
+        return new FilterInputStream(in) {
+            private long restante = quantidade;
+
+            @Override
+            public int read() throws IOException {
+                if (restante <= 0) return -1;
+                int b = super.read();
+                if (b >= 0) restante--;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (restante <= 0) return -1;
+                int n = super.read(b, off, (int) Math.min(len, restante));
+                if (n > 0) restante -= n;
+                return n;
+            }
+        };
+    }
+
+    private static long modificadoEm(Path p) {
+        try {
+            return Files.getLastModifiedTime(p).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
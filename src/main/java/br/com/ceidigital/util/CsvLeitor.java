@@ -0,0 +1,87 @@
+package br.com.ceidigital.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Leitor de CSV (RFC 4180) em streaming: devolve um registro por vez, sem carregar o arquivo.
+ * Aceita campos entre aspas com separador, aspas dobradas e quebras de linha dentro deles.
+ */
+public class CsvLeitor {
+
+    private final Reader reader;
+    private final char separador;
+    private final char[] buffer = new char[8192];
+    private int pos;
+    private int fim;
+    private long linha = 1;
+
+    public CsvLeitor(Reader reader, char separador) {
+        this.reader = reader;
+        this.separador = separador;
+    }
+
+    /** Linha do arquivo (1 = primeira) em que começa o próximo registro. */
+    public long linha() {
+        return linha;
+    }
+
+    /** Próximo registro, ou null no fim do arquivo. */
+    public List<String> proximo() throws IOException {
+        int c = ler();
+        if (c == -1) return null;
+        List<String> campos = new ArrayList<>();
+        StringBuilder campo = new StringBuilder();
+        boolean aspas = false;
+        while (true) {
+            if (aspas) {
+                if (c == -1) throw new IOException("Aspas não fechadas no registro iniciado antes da linha " + linha);
+                if (c == '"') {
+                    int proximo = espiar();
+                    if (proximo == '"') {
+                        ler();
+                        campo.append('"');
+                    } else {
+                        aspas = false;
+                    }
+                } else {
+                    if (c == '\n') linha++;
+                    campo.append((char) c);
+                }
+            } else if (c == '"' && campo.isEmpty()) {
+                aspas = true;
+            } else if (c == separador) {
+                campos.add(campo.toString());
+                campo.setLength(0);
+            } else if (c == '\r' || c == '\n' || c == -1) {
+                if (c == '\r' && espiar() == '\n') ler();
+                if (c != -1) linha++;
+                campos.add(campo.toString());
+                return campos;
+            } else {
+                campo.append((char) c);
+            }
+            c = ler();
+        }
+    }
+
+    private int ler() throws IOException {
+        if (pos == fim && !encher()) return -1;
+        return buffer[pos++];
+    }
+
+    private int espiar() throws IOException {
+        if (pos == fim && !encher()) return -1;
+        return buffer[pos];
+    }
+
+    private boolean encher() throws IOException {
+        int n = reader.read(buffer, 0, buffer.length);
+        if (n <= 0) return false;
+        pos = 0;
+        fim = n;
+        return true;
+    }
+}
@@ -0,0 +1,35 @@
+package br.com.ceidigital.util;
+
+/**
+ * Códigos de barras GTIN (EAN-8, UPC-A, EAN-13 e GTIN-14): validação do dígito verificador e
+ * chave de busca comum aos quatro formatos.
+ */
+public final class Gtin {
+
+    private Gtin() {}
+
+    /** Só dígitos, com 8, 12, 13 ou 14 posições e dígito verificador correto. */
+    public static boolean valido(String codigo) {
+        if (codigo == null) return false;
+        int n = codigo.length();
+        if (n != 8 && n != 12 && n != 13 && n != 14) return false;
+        int soma = 0;
+        // Pesos 3,1,3,1... a partir do dígito à esquerda do verificador
+        for (int i = n - 2, peso = 3; i >= 0; i--, peso = 4 - peso) {
+            char c = codigo.charAt(i);
+            if (c < '0' || c > '9') return false;
+            soma += (c - '0') * peso;
+        }
+        char verificador = codigo.charAt(n - 1);
+        return verificador >= '0' && verificador <= '9' && (10 - soma % 10) % 10 == verificador - '0';
+    }
+
+    /**
+     * Chave de busca: o código completado com zeros à esquerda até 14 dígitos (o mesmo produto lido
+     * como UPC-A ou EAN-13 cai na mesma chave), ou null se o código não é um GTIN válido.
+     */
+    public static String chave(String codigo) {
+        if (!valido(codigo)) return null;
+        return codigo.length() == 14 ? codigo : "0".repeat(14 - codigo.length()) + codigo;
+    }
+}
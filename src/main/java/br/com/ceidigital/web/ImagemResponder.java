@@ -0,0 +1,200 @@
+package br.com.ceidigital.web;
+
+import br.com.ceidigital.domain.ImagemMetadados;
+import br.com.ceidigital.storage.ImagemCache;
+import br.com.ceidigital.storage.ImagemStorage;
+import br.com.ceidigital.util.ImagemZipUtil;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Optional;
+
+/**
+ * Escreve a imagem de um produto na resposta HTTP. Imagens pequenas e frequentes saem do
+ * {@link ImagemCache}; as demais são enviadas como região de arquivo local quando o storage a
+ * oferece (sendfile do Tomcat), senão copiadas pelo próprio storage, sem passar pelo heap.
+ * Suporta ETag/If-None-Match (304 sem tocar no disco), Range de um único intervalo e If-Range.
+ * Com os metadados do produto, HEAD e os cabeçalhos saem do banco, sem consultar o storage.
+ */
+@Component
+public class ImagemResponder {
+
+    // Atributos de request reconhecidos pelo conector do Tomcat para envio via sendfile
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final String CACHE_CONTROL = CacheControl.noCache().cachePrivate().getHeaderValue();
+
+    private final ImagemStorage storage;
+    private final ImagemCache cache;
+
+    public ImagemResponder(ImagemStorage storage, ImagemCache cache) {
+        this.storage = storage;
+        this.cache = cache;
+    }
+
+    /**
+     * @param metadados metadados gravados no produto para esta imagem, ou null (caminhos legados,
+     *                  variantes) para consultá-la no storage
+     */
+    public void responder(String caminhoImagem, ImagemMetadados metadados,
+                          HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String etag = metadados != null && metadados.hash() != null ? "\"" + metadados.hash() + "\"" : etag(caminhoImagem);
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (correspondeEtag(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        String ext = extensao(caminhoImagem);
+        response.setContentType(metadados != null && metadados.mediaType() != null ? metadados.mediaType() : mediaType(ext).toString());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=imagem_produto." + ext);
+        Long tamanhoConhecido = metadados != null ? metadados.tamanho() : null;
+        if (tamanhoConhecido != null && "HEAD".equals(request.getMethod())) {
+            long[] intervalo = intervalo(request, etag, tamanhoConhecido, response);
+            if (intervalo != null) response.setContentLengthLong(intervalo[1] - intervalo[0] + 1);
+            return;
+        }
+
+        byte[] imagem = cache.obter(caminhoImagem);
+        if (imagem == null) {
+            Optional<String> chave = ImagemStorage.chaveDe(caminhoImagem);
+            if (chave.isPresent()) {
+                long tamanho = tamanhoConhecido != null ? tamanhoConhecido : storage.tamanho(chave.get())
+                        .orElseThrow(() -> new FileNotFoundException("Imagem não encontrada: " + chave.get()));
+                if (!cache.aceita(tamanho) || "HEAD".equals(request.getMethod())) {
+                    enviarRegiao(chave.get(), tamanho, etag, request, response);
+                    return;
+                }
+                imagem = storage.ler(chave.get());
+            } else {
+                imagem = ImagemZipUtil.extrairImagem(caminhoImagem);
+            }
+            cache.guardar(caminhoImagem, imagem);
+        }
+        long[] intervalo = intervalo(request, etag, imagem.length, response);
+        if (intervalo == null) return;
+        int inicio = (int) intervalo[0];
+        int quantidade = (int) (intervalo[1] - intervalo[0] + 1);
+        response.setContentLength(quantidade);
+        if ("HEAD".equals(request.getMethod())) return;
+        response.getOutputStream().write(imagem, inicio, quantidade);
+    }
+
+    // Envia o trecho pedido direto do arquivo (ou do storage), sem passar pelo heap
+    private void enviarRegiao(String chave, long tamanho, String etag, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long[] intervalo = intervalo(request, etag, tamanho, response);
+        if (intervalo == null) return;
+        long inicio = intervalo[0];
+        long quantidade = intervalo[1] - intervalo[0] + 1;
+        response.setContentLengthLong(quantidade);
+        if ("HEAD".equals(request.getMethod())) return;
+        Optional<ImagemStorage.Regiao> regiao = Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))
+                ? storage.regiao(chave) : Optional.empty();
+        if (regiao.isPresent()) {
+            ImagemStorage.Regiao loc = regiao.get();
+            request.setAttribute(SENDFILE_FILENAME, loc.arquivo().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, loc.offset() + inicio);
+            request.setAttribute(SENDFILE_END, loc.offset() + inicio + quantidade);
+            return;
+        }
+        WritableByteChannel destino = Channels.newChannel(response.getOutputStream());
+        storage.transferir(chave, inicio, quantidade, destino);
+    }
+
+    /**
+     * Resolve o intervalo [inicio, fim] a enviar. Sem Range (ou com If-Range divergente, ou com
+     * múltiplos intervalos) envia a imagem inteira. Retorna null quando já respondeu 416.
+     */
+    private long[] intervalo(HttpServletRequest request, String etag, long tamanho, HttpServletResponse response) {
+        String range = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (range == null || !range.startsWith("bytes=") || range.contains(",")
+                || (ifRange != null && !ifRange.equals(etag)) || tamanho == 0) {
+            return new long[]{0, tamanho - 1};
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        int hifen = spec.indexOf('-');
+        long inicio;
+        long fim;
+        try {
+            if (hifen < 0) throw new NumberFormatException(spec);
+            String a = spec.substring(0, hifen).trim();
+            String b = spec.substring(hifen + 1).trim();
+            if (a.isEmpty()) {
+                // Sufixo: últimos N bytes
+                long n = Long.parseLong(b);
+                inicio = Math.max(0, tamanho - n);
+                fim = tamanho - 1;
+                if (n == 0) inicio = tamanho;
+            } else {
+                inicio = Long.parseLong(a);
+                fim = b.isEmpty() ? tamanho - 1 : Math.min(Long.parseLong(b), tamanho - 1);
+            }
+        } catch (NumberFormatException e) {
+            return new long[]{0, tamanho - 1};
+        }
+        if (inicio >= tamanho || inicio > fim) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + tamanho);
+            return null;
+        }
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + inicio + "-" + fim + "/" + tamanho);
+        return new long[]{inicio, fim};
+    }
+
+    /**
+     * Imagens do store são endereçadas pelo conteúdo, então a própria chave (SHA-256, com o sufixo
+     * da variante) é a ETag: imagens idênticas compartilham a mesma. Caminhos legados são imutáveis
+     * (cada upload gerava um nome novo) e usam um hash do caminho.
+     */
+    static String etag(String caminhoImagem) {
+        Optional<String> chave = ImagemStorage.chaveDe(caminhoImagem);
+        if (chave.isPresent()) {
+            String k = chave.get();
+            int ponto = k.lastIndexOf('.');
+            return "\"" + (ponto > 0 ? k.substring(0, ponto) : k) + "\"";
+        }
+        return "\"" + Integer.toHexString(caminhoImagem.hashCode()) + "-" + caminhoImagem.length() + "\"";
+    }
+
+    private static boolean correspondeEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String candidato : ifNoneMatch.split(",")) {
+            String c = candidato.trim();
+            if (c.startsWith("W/")) c = c.substring(2);
+            if (c.equals("*") || c.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    // Utilitário para extrair extensão
+    static String extensao(String nome) {
+        if (nome == null) return "jpg";
+        int i = nome.lastIndexOf('.');
+        return (i > 0) ? nome.substring(i + 1).toLowerCase() : "jpg";
+    }
+
+    // Utilitário para determinar MediaType
+    static MediaType mediaType(String ext) {
+        return switch (ext) {
+            case "png" -> MediaType.IMAGE_PNG;
+            case "gif" -> MediaType.IMAGE_GIF;
+            case "webp" -> MediaType.parseMediaType("image/webp");
+            default -> MediaType.IMAGE_JPEG;
+        };
+    }
+}
@@ -1,43 +1,149 @@
 package br.com.ceidigital.web;
 
+import br.com.ceidigital.domain.ImagemMetadados;
 import br.com.ceidigital.domain.Produto;
 import br.com.ceidigital.domain.Usuario;
 import br.com.ceidigital.repository.UsuarioRepository;
+import br.com.ceidigital.service.EstoqueMovimentoService;
+import br.com.ceidigital.service.ImagemImportacaoService;
+import br.com.ceidigital.service.ImagemVarianteService;
+import br.com.ceidigital.service.ProdutoBuscaService;
+import br.com.ceidigital.service.ProdutoCodigoBarrasService;
+import br.com.ceidigital.service.ProdutoExportacaoService;
+import br.com.ceidigital.service.ProdutoFacetaService;
+import br.com.ceidigital.service.ProdutoImportacaoService;
+import br.com.ceidigital.service.ProdutoRelatorioService;
 import br.com.ceidigital.service.ProdutoService;
+import br.com.ceidigital.storage.ImagemCache;
+import br.com.ceidigital.storage.ImagemMetadadosLeitor;
+import br.com.ceidigital.storage.ImagemReferencias;
+import br.com.ceidigital.storage.ImagemRejeitadaException;
+import br.com.ceidigital.storage.ImagemStorage;
+import br.com.ceidigital.storage.TipoImagem;
+import br.com.ceidigital.util.Gtin;
 import br.com.ceidigital.web.dto.DtoMapper;
 import br.com.ceidigital.web.dto.ProdutoDto;
-import br.com.ceidigital.util.ImagemZipUtil;
+import br.com.ceidigital.web.dto.request.EstoqueAjusteDto;
+import br.com.ceidigital.web.dto.request.ProdutoPatchDto;
+import br.com.ceidigital.web.dto.response.EstoqueSaldoDto;
+import br.com.ceidigital.web.dto.response.ImagemImportacaoDto;
+import br.com.ceidigital.web.dto.response.ProdutoAlteracoesDto;
+import br.com.ceidigital.web.dto.response.ProdutoCodigoBarrasDto;
+import br.com.ceidigital.web.dto.response.ProdutoFacetasDto;
+import br.com.ceidigital.web.dto.response.MovimentoEstoqueDto;
+import br.com.ceidigital.web.dto.response.ProdutoListaDto;
+import br.com.ceidigital.web.dto.response.ProdutoResumoDto;
+import br.com.ceidigital.web.dto.response.ValoracaoEstoqueDto;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
-import org.springframework.web.multipart.MultipartFile;
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.core.io.Resource;
 import org.springframework.http.ResponseEntity;
 import jakarta.validation.Valid;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.io.BufferedInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/produtos")
 public class ProdutoController {
 
+    private static final Logger log = LoggerFactory.getLogger(ProdutoController.class);
+
+    private static final int LIMITE_PADRAO = 100;
+    private static final int LIMITE_MAXIMO = 500;
+    private static final int LIMITE_BUSCA_PADRAO = 20;
+    private static final int LIMITE_BUSCA_MAXIMO = 100;
+    private static final int LOTE_MAXIMO = 5000;
+
     private final ProdutoService service;
+    private final ProdutoBuscaService busca;
+    private final ProdutoFacetaService facetas;
+    private final ProdutoCodigoBarrasService codigosBarras;
+    private final ProdutoRelatorioService relatorios;
+    private final ProdutoListaCache listaCache;
+    private final ProdutoExportacaoService exportacao;
+    private final ProdutoImportacaoService importacao;
+    private final EstoqueMovimentoService estoque;
+    // Bytes de JSON enviados por página da listagem (produtos.lista.bytes)
+    private final DistributionSummary bytesLista;
     private final UsuarioRepository usuarioRepository;
+    private final ImagemStorage imagemStore;
+    private final ImagemReferencias imagemReferencias;
+    private final ImagemMetadadosLeitor imagemMetadados;
+    private final ImagemResponder imagemResponder;
+    private final ImagemCache imagemCache;
+    private final ImagemVarianteService imagemVariantes;
+    private final ImagemImportacaoService imagemImportacao;
+    private final ObjectMapper objectMapper;
+    private final long tamanhoMaximoImagem;
+    private final Duration margemSincronizacao;
 
-    public ProdutoController(ProdutoService service, UsuarioRepository usuarioRepository) {
+    public ProdutoController(ProdutoService service, ProdutoBuscaService busca, ProdutoFacetaService facetas,
+                             ProdutoCodigoBarrasService codigosBarras, ProdutoRelatorioService relatorios, ProdutoListaCache listaCache,
+                             ProdutoExportacaoService exportacao, ProdutoImportacaoService importacao,
+                             EstoqueMovimentoService estoque, UsuarioRepository usuarioRepository,
+                             ImagemStorage imagemStore, ImagemReferencias imagemReferencias, ImagemMetadadosLeitor imagemMetadados,
+                             ImagemResponder imagemResponder, ImagemCache imagemCache, ImagemVarianteService imagemVariantes,
+                             ImagemImportacaoService imagemImportacao, ObjectMapper objectMapper, MeterRegistry registry,
+                             @Value("${app.imagens.tamanho-maximo:5MB}") DataSize tamanhoMaximoImagem,
+                             @Value("${app.produtos.sincronizacao.margem:2s}") Duration margemSincronizacao) {
         this.service = service;
+        this.busca = busca;
+        this.facetas = facetas;
+        this.codigosBarras = codigosBarras;
+        this.relatorios = relatorios;
+        this.listaCache = listaCache;
+        this.exportacao = exportacao;
+        this.importacao = importacao;
+        this.estoque = estoque;
+        this.bytesLista = DistributionSummary.builder("produtos.lista.bytes").baseUnit("bytes").register(registry);
         this.usuarioRepository = usuarioRepository;
+        this.imagemStore = imagemStore;
+        this.imagemReferencias = imagemReferencias;
+        this.imagemMetadados = imagemMetadados;
+        this.imagemResponder = imagemResponder;
+        this.imagemCache = imagemCache;
+        this.imagemVariantes = imagemVariantes;
+        this.imagemImportacao = imagemImportacao;
+        this.objectMapper = objectMapper;
+        this.tamanhoMaximoImagem = tamanhoMaximoImagem.toBytes();
+        this.margemSincronizacao = margemSincronizacao;
     }
 
     /**
-     * Upload de imagem para produto. Salva imagem zipada e atualiza caminho no banco.
+     * Upload de imagem para produto. Copia o arquivo em blocos para o store de segmentos
+     * (limite app.imagens.tamanho-maximo, tipo detectado pelo conteúdo) e atualiza caminho e metadados no banco.
      */
     @PostMapping("/{id}/imagem")
     public ResponseEntity<?> uploadImagem(@PathVariable Long id, @RequestParam("file") MultipartFile file) {
@@ -47,25 +153,73 @@ public class ProdutoController {
         if (!isAdmin() && !empresaDoUsuario(produto.getEmpresa().getId())) {
             return ResponseEntity.status(403).build();
         }
-        try {
-            String nomeArquivo = "produto_" + id + "_" + System.currentTimeMillis() + "." + getExtensao(file.getOriginalFilename());
-            String caminho = ImagemZipUtil.salvarImagemZip(file.getBytes(), nomeArquivo);
-            System.out.println("[DEBUG] Caminho gerado para imagem: " + caminho);
-            produto.setCaminhoImagem(caminho);
-            System.out.println("[DEBUG] Caminho setado no produto: " + produto.getCaminhoImagem());
-            produto.setAtualizadoEm(java.time.LocalDateTime.now());
-            Produto salvo = service.salvar(produto);
-            System.out.println("[DEBUG] Caminho salvo no banco: " + salvo.getCaminhoImagem());
+        try (InputStream in = new BufferedInputStream(file.getInputStream())) {
+            // Tipo decidido pelos magic bytes, não pela extensão enviada pelo cliente
+            in.mark(TipoImagem.BYTES_ASSINATURA);
+            Optional<TipoImagem> tipo = TipoImagem.detectar(in.readNBytes(TipoImagem.BYTES_ASSINATURA));
+            in.reset();
+            if (tipo.isEmpty()) {
+                return ResponseEntity.status(415).body("Formato de imagem não suportado.");
+            }
+            // Endereçada pelo conteúdo: a mesma foto enviada para vários produtos é armazenada uma vez só
+            ImagemStorage.Gravacao gravacao = imagemStore.gravar(tipo.get().extensao(), in, tamanhoMaximoImagem);
+            String caminho = gravacao.caminho();
+            log.debug("[IMAGENS] produto {}: imagem gravada em {} ({} bytes, nova: {})", id, caminho, gravacao.tamanho(), gravacao.nova());
+            ImagemMetadados metadados = imagemMetadados.ler(gravacao, tipo.get());
+            // Relido na transação: o upload pode ter demorado e o estoque mudado enquanto isso
+            AtomicReference<String> anterior = new AtomicReference<>();
+            Optional<Produto> salvo = service.alterar(id, p -> {
+                anterior.set(p.getCaminhoImagem());
+                p.trocarImagem(caminho, metadados);
+            });
+            if (salvo.isEmpty()) return ResponseEntity.notFound().build();
+            if (!caminho.equals(anterior.get())) {
+                imagemReferencias.reter(caminho);
+                liberarImagem(anterior.get());
+            }
+            imagemVariantes.agendar(caminho);
             return ResponseEntity.ok().body("Imagem enviada com sucesso.");
+        } catch (ImagemRejeitadaException e) {
+            return ResponseEntity.status(413).body(e.getMessage());
         } catch (Exception e) {
-            System.out.println("[ERROR] Erro ao salvar imagem: " + e.getMessage());
-            e.printStackTrace();
+            log.error("[IMAGENS] falha ao salvar a imagem do produto {}", id, e);
             return ResponseEntity.status(500).body("Erro ao salvar imagem: " + e.getMessage());
         }
     }
 
     /**
-     * Exclui imagem do produto (remove caminho do banco, não remove do zip).
+     * Importa imagens em lote a partir de um zip. O campo opcional "mapeamento" é um JSON
+     * {"arquivo.jpg": idProduto, ...}; sem ele, o id vem do nome no layout produto_<id>_<millis>.ext.
+     * Retorna o resultado por entrada do zip.
+     */
+    @PostMapping("/imagens/lote")
+    public ResponseEntity<?> importarImagens(@RequestParam("file") MultipartFile file,
+                                             @RequestParam(value = "mapeamento", required = false) String mapeamento) {
+        Long idEmpresa = null;
+        if (!isAdmin()) {
+            var current = getCurrentUser();
+            if (current.isEmpty() || current.get().getEmpresa() == null) return ResponseEntity.status(403).build();
+            idEmpresa = current.get().getEmpresa().getId();
+        }
+        Map<String, Long> porArquivo = Map.of();
+        if (mapeamento != null && !mapeamento.isBlank()) {
+            try {
+                porArquivo = objectMapper.readValue(mapeamento, new TypeReference<Map<String, Long>>() {});
+            } catch (Exception e) {
+                return ResponseEntity.badRequest().body("Mapeamento inválido: " + e.getMessage());
+            }
+        }
+        try (InputStream in = file.getInputStream()) {
+            List<ImagemImportacaoDto> resultados = imagemImportacao.importar(in, porArquivo, idEmpresa);
+            return ResponseEntity.ok(resultados);
+        } catch (IOException e) {
+            log.error("[IMAGENS] falha na importação em lote", e);
+            return ResponseEntity.status(500).body("Erro ao importar imagens: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Exclui imagem do produto (remove caminho do banco; o espaço no store é recuperado pela compactação).
      */
     @DeleteMapping("/{id}/imagem")
     public ResponseEntity<?> excluirImagem(@PathVariable Long id) {
@@ -75,73 +229,286 @@ public class ProdutoController {
         if (!isAdmin() && !empresaDoUsuario(produto.getEmpresa().getId())) {
             return ResponseEntity.status(403).build();
         }
-        produto.setCaminhoImagem(null);
-        produto.setAtualizadoEm(java.time.LocalDateTime.now());
-        service.salvar(produto);
+        AtomicReference<String> anterior = new AtomicReference<>();
+        if (service.alterar(id, p -> {
+            anterior.set(p.getCaminhoImagem());
+            p.trocarImagem(null, null);
+        }).isEmpty()) return ResponseEntity.notFound().build();
+        liberarImagem(anterior.get());
         return ResponseEntity.ok().body("Imagem excluída com sucesso.");
     }
 
     /**
-     * Servir imagem do produto (extrai do zip e retorna como recurso binário).
+     * Servir imagem do produto direto do arquivo (sendfile/transferTo), com suporte a Range e ETag.
+     * Com ?w=128 (ou outra largura configurada) serve a variante reduzida, se já gerada.
+     * HEAD, ETag e Content-Length do original saem dos metadados gravados no produto.
      */
-    @GetMapping("/{id}/imagem")
-    public ResponseEntity<Resource> servirImagem(@PathVariable Long id) {
+    @RequestMapping(value = "/{id}/imagem", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void servirImagem(@PathVariable Long id, @RequestParam(value = "w", required = false) Integer largura,
+                             HttpServletRequest request, HttpServletResponse response) throws IOException {
         Optional<Produto> produtoOpt = service.buscarPorId(id);
-        if (produtoOpt.isEmpty()) return ResponseEntity.notFound().build();
-        Produto produto = produtoOpt.get();
-        if (produto.getCaminhoImagem() == null) return ResponseEntity.notFound().build();
+        if (produtoOpt.isEmpty() || produtoOpt.get().getCaminhoImagem() == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
         try {
-            byte[] imagem = ImagemZipUtil.extrairImagem(produto.getCaminhoImagem());
-            String ext = getExtensao(produto.getCaminhoImagem());
-            MediaType mediaType = getMediaType(ext);
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=imagem_produto." + ext)
-                    .contentType(mediaType)
-                    .body(new ByteArrayResource(imagem));
-        } catch (Exception e) {
-            return ResponseEntity.status(500).build();
+            Produto produto = produtoOpt.get();
+            String caminho = imagemVariantes.resolver(produto.getCaminhoImagem(), largura);
+            // Os metadados descrevem o original, não a variante
+            ImagemMetadados metadados = caminho.equals(produto.getCaminhoImagem()) ? produto.getImagem() : null;
+            imagemResponder.responder(caminho, metadados, request, response);
+        } catch (FileNotFoundException e) {
+            response.reset();
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
         }
     }
 
-    // Utilitário para extrair extensão
-    private String getExtensao(String nome) {
-        if (nome == null) return "jpg";
-        int i = nome.lastIndexOf('.');
-        return (i > 0) ? nome.substring(i + 1).toLowerCase() : "jpg";
+    /**
+     * Lista os produtos ativos (para seleo em kits), só id, nome e preço. Sem ?limit= devolve todos,
+     * como a tela de kits espera; com ?limit= (e ?after=) é paginada como a listagem.
+     */
+    @GetMapping("/ativos")
+    public ResponseEntity<List<ProdutoResumoDto>> listAtivos(@RequestParam(value = "after", required = false) Long after,
+                                                             @RequestParam(value = "limit", required = false) Integer limit) {
+        Long idEmpresa = null;
+        if (!isAdmin()) {
+            var current = getCurrentUser();
+            if (current.isEmpty() || current.get().getEmpresa() == null) return ResponseEntity.ok(List.of());
+            idEmpresa = current.get().getEmpresa().getId();
+        }
+        if (limit == null) return ResponseEntity.ok(service.listarAtivos(idEmpresa, after, null));
+        int limite = limite(limit);
+        List<ProdutoResumoDto> pagina = service.listarAtivos(idEmpresa, after, limite);
+        Long ultimo = pagina.size() == limite ? pagina.get(pagina.size() - 1).idProduto() : null;
+        return paginado(ultimo, limite).body(pagina);
     }
 
-    // Utilitário para determinar MediaType
-    private MediaType getMediaType(String ext) {
-        return switch (ext) {
-            case "png" -> MediaType.IMAGE_PNG;
-            case "gif" -> MediaType.IMAGE_GIF;
-            default -> MediaType.IMAGE_JPEG;
-        };
+    /**
+     * Lista produtos da empresa do usu 7f 7frio ou todos se admin; com ?limit= (e ?after=) paginados por id.
+     * Sem a descrição, que vem só em GET /{id}. Para o usuário de empresa responde com ETag e
+     * Last-Modified da versão do catálogo e 304 quando o cliente já tem essa versão.
+     */
+    @GetMapping
+    public ResponseEntity<?> list(@RequestParam(value = "after", required = false) Long after,
+                                  @RequestParam(value = "limit", required = false) Integer limit,
+                                  WebRequest request) throws IOException {
+        // Sem ?limit= nem ?after= devolve o catálogo inteiro, como o grid espera. Com eles, paginação keyset:
+        // ?after=<último id recebido>; o link da próxima página vai no cabeçalho Link
+        Integer limite = limit == null && after == null ? null : limite(limit);
+        Long idEmpresa = null;
+        LocalDateTime versao = null;
+        if (!isAdmin()) {
+            var current = getCurrentUser();
+            if (current.isEmpty() || current.get().getEmpresa() == null) return ResponseEntity.ok(List.of());
+            idEmpresa = current.get().getEmpresa().getId();
+            // Lida do banco a cada requisição (max indexado): vale também para alterações feitas por outra instância.
+            // Logo após uma alteração ainda não é definitiva: a resposta sai sem ETag/Last-Modified e fora do cache
+            versao = service.versaoCatalogo(idEmpresa).orElse(null);
+            if (versao != null) {
+                // Last-Modified só tem segundos: o ETag (If-None-Match, que prevalece) distingue alterações no mesmo segundo
+                Instant instante = versao.atZone(ZoneId.systemDefault()).toInstant();
+                String etag = "\"" + idEmpresa + "-" + ChronoUnit.MICROS.between(Instant.EPOCH, instante) + "\"";
+                if (request.checkNotModified(etag, instante.toEpochMilli())) return null;
+            }
+        }
+        // Página já serializada em cache, servida enquanto a versão do catálogo for a mesma. As do
+        // administrador (todas as empresas) não têm versão barata de conferir e não entram no cache.
+        ProdutoListaCache.Pagina cache = versao != null ? listaCache.obter(idEmpresa, after, limite, versao) : null;
+        if (cache == null) {
+            // Projeção sem a descrição: o grid não a mostra, e ela vem só em GET /{id}
+            List<ProdutoListaDto> pagina = service.listarPagina(idEmpresa, after, limite);
+            Long ultimo = limite != null && pagina.size() == limite ? pagina.get(pagina.size() - 1).idProduto() : null;
+            cache = new ProdutoListaCache.Pagina(objectMapper.writeValueAsBytes(pagina), ultimo, versao);
+            if (versao != null) listaCache.guardar(idEmpresa, after, limite, cache);
+        }
+        bytesLista.record(cache.json().length);
+        ResponseEntity.BodyBuilder resposta = limite != null ? paginado(cache.ultimoId(), limite) : ResponseEntity.ok();
+        return resposta.contentType(MediaType.APPLICATION_JSON).body(cache.json());
     }
 
     /**
-     * Lista todos os produtos ativos (para seleo em kits).
+     * Sincronização incremental: produtos criados/alterados (sem a descrição) e ids excluídos desde o
+     * cursor ?since=&after= devolvido pela chamada anterior (sem since: catálogo completo). Só entram
+     * alterações anteriores ao início da transação aberta mais antiga, para não pular as que ainda vão confirmar.
+     * O administrador informa a empresa em ?empresa=.
      */
-    @GetMapping("/ativos")
-    public List<ProdutoDto> listAtivos() {
-        return service.listarTodos().stream()
-            .filter(Produto::getAtivo)
-            .map(DtoMapper::toDto)
-            .toList();
+    @GetMapping("/changes")
+    public ResponseEntity<ProdutoAlteracoesDto> changes(@RequestParam(value = "since", required = false)
+                                                        @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+                                                        @RequestParam(value = "after", required = false) Long after,
+                                                        @RequestParam(value = "limit", required = false) Integer limit,
+                                                        @RequestParam(value = "empresa", required = false) Long empresa) {
+        Long idEmpresa;
+        if (isAdmin()) {
+            if (empresa == null) return ResponseEntity.badRequest().build();
+            idEmpresa = empresa;
+        } else {
+            var current = getCurrentUser();
+            if (current.isEmpty() || current.get().getEmpresa() == null) return ResponseEntity.status(403).build();
+            idEmpresa = current.get().getEmpresa().getId();
+        }
+        int limite = limite(limit);
+        ProdutoAlteracoesDto alteracoes = service.listarAlteracoes(idEmpresa, since, after, limite,
+                service.confirmadoAte().minus(margemSincronizacao));
+        ResponseEntity.BodyBuilder resposta = ResponseEntity.ok();
+        if (!alteracoes.completo()) {
+            String proxima = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("since", alteracoes.since())
+                    .replaceQueryParam("after", alteracoes.after())
+                    .replaceQueryParam("limit", limite)
+                    .toUriString();
+            resposta.header(HttpHeaders.LINK, "<" + proxima + ">; rel=\"next\"");
+        }
+        return resposta.body(alteracoes);
     }
 
     /**
-     * Lista produtos da empresa do usu 7f 7frio ou todos se admin.
+     * Busca textual nos produtos da empresa (nome e descrição, sem acentos, por trecho de palavra).
+     * O administrador informa a empresa em ?empresa=.
      */
-    @GetMapping
-    public List<ProdutoDto> list() {
+    @GetMapping("/search")
+    public ResponseEntity<List<ProdutoResumoDto>> search(@RequestParam("q") String q,
+                                                         @RequestParam(value = "limit", required = false) Integer limit,
+                                                         @RequestParam(value = "empresa", required = false) Long empresa) {
+        Long idEmpresa;
         if (isAdmin()) {
-            return service.listarPorEmpresa(null).stream().map(DtoMapper::toDto).toList();
+            if (empresa == null) return ResponseEntity.badRequest().build();
+            idEmpresa = empresa;
+        } else {
+            var current = getCurrentUser();
+            if (current.isEmpty() || current.get().getEmpresa() == null) return ResponseEntity.ok(List.of());
+            idEmpresa = current.get().getEmpresa().getId();
         }
-        var current = getCurrentUser();
-        if (current.isEmpty() || current.get().getEmpresa() == null) return List.of();
-        Long idEmpresa = current.get().getEmpresa().getId();
-        return service.listarPorEmpresa(idEmpresa).stream().map(DtoMapper::toDto).toList();
+        int limite = limit == null ? LIMITE_BUSCA_PADRAO : Math.max(1, Math.min(limit, LIMITE_BUSCA_MAXIMO));
+        return ResponseEntity.ok(busca.buscar(idEmpresa, q, limite));
+    }
+
+    /**
+     * Filtra o catálogo da empresa por ativo, consignado, esgotado e faixa de preço (?faixa= repetível,
+     * ex.: 10-50) e devolve a página (?after=&limit=), o total e as contagens por faceta.
+     * O administrador informa a empresa em ?empresa=.
+     */
+    @GetMapping("/facets")
+    public ResponseEntity<?> facets(@RequestParam(value = "ativo", required = false) Boolean ativo,
+                                    @RequestParam(value = "consignado", required = false) Boolean consignado,
+                                    @RequestParam(value = "esgotado", required = false) Boolean esgotado,
+                                    @RequestParam(value = "faixa", required = false) List<String> faixa,
+                                    @RequestParam(value = "after", required = false) Long after,
+                                    @RequestParam(value = "limit", required = false) Integer limit,
+                                    @RequestParam(value = "empresa", required = false) Long empresa) {
+        Long idEmpresa;
+        if (isAdmin()) {
+            if (empresa == null) return ResponseEntity.badRequest().body("Informe a empresa (?empresa=).");
+            idEmpresa = empresa;
+        } else {
+            var current = getCurrentUser();
+            if (current.isEmpty() || current.get().getEmpresa() == null) return ResponseEntity.status(403).build();
+            idEmpresa = current.get().getEmpresa().getId();
+        }
+        int limite = limite(limit);
+        ProdutoFacetaService.Filtro filtro = new ProdutoFacetaService.Filtro(ativo, consignado, esgotado,
+                faixa != null ? Set.copyOf(faixa) : Set.of());
+        try {
+            ProdutoFacetasDto resultado = facetas.filtrar(idEmpresa, filtro, after, limite);
+            List<ProdutoListaDto> pagina = resultado.produtos();
+            Long ultimo = pagina.size() == limite ? pagina.get(pagina.size() - 1).idProduto() : null;
+            return paginado(ultimo, limite).body(resultado);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * Valoração do estoque da empresa: valor a custo e a venda, margem e exposição em consignado.
+     * O administrador informa a empresa em ?empresa=.
+     */
+    @GetMapping("/relatorios/valoracao")
+    public ResponseEntity<ValoracaoEstoqueDto> valoracao(@RequestParam(value = "empresa", required = false) Long empresa) {
+        Long idEmpresa;
+        if (isAdmin()) {
+            if (empresa == null) return ResponseEntity.badRequest().build();
+            idEmpresa = empresa;
+        } else {
+            var current = getCurrentUser();
+            if (current.isEmpty() || current.get().getEmpresa() == null) return ResponseEntity.status(403).build();
+            idEmpresa = current.get().getEmpresa().getId();
+        }
+        return ResponseEntity.ok(relatorios.valoracao(idEmpresa));
+    }
+
+    /**
+     * Exporta todo o catálogo da empresa (todas, para o administrador) em NDJSON ou CSV,
+     * escrevendo as linhas conforme são lidas do banco.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(value = "format", defaultValue = "ndjson") String format) {
+        ProdutoExportacaoService.Formato formato;
+        try {
+            formato = ProdutoExportacaoService.Formato.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        Long idEmpresa = null;
+        if (!isAdmin()) {
+            var current = getCurrentUser();
+            if (current.isEmpty() || current.get().getEmpresa() == null) return ResponseEntity.status(403).build();
+            idEmpresa = current.get().getEmpresa().getId();
+        }
+        Long empresa = idEmpresa;
+        StreamingResponseBody corpo = out -> exportacao.exportar(empresa, formato, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(formato.mediaType() + ";charset=UTF-8"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=produtos." + formato.extensao())
+                .body(corpo);
+    }
+
+    /**
+     * Importa produtos de um CSV (colunas como na exportação) para a empresa do usuário;
+     * o administrador informa a empresa em ?empresa=. Retorna os totais, a vazão e os erros por linha.
+     */
+    @PostMapping("/import")
+    public ResponseEntity<?> importar(@RequestParam("file") MultipartFile file,
+                                      @RequestParam(value = "empresa", required = false) Long empresa) {
+        Long idEmpresa;
+        if (isAdmin()) {
+            if (empresa == null) return ResponseEntity.badRequest().body("Informe a empresa (?empresa=).");
+            idEmpresa = empresa;
+        } else {
+            var current = getCurrentUser();
+            if (current.isEmpty() || current.get().getEmpresa() == null) return ResponseEntity.status(403).build();
+            idEmpresa = current.get().getEmpresa().getId();
+        }
+        try (InputStream in = file.getInputStream()) {
+            return ResponseEntity.ok(importacao.importar(in, idEmpresa));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            log.error("[PRODUTOS] falha na importação CSV da empresa {}", idEmpresa, e);
+            return ResponseEntity.status(500).body("Erro ao importar produtos: " + e.getMessage());
+        }
+    }
+
+    // Código de barras do payload sem espaços; vazio = sem código
+    private static String codigoBarras(ProdutoDto payload) {
+        String codigo = payload.getCodigoBarras();
+        return codigo == null || codigo.isBlank() ? null : codigo.strip();
+    }
+
+    private static int limite(Integer limit) {
+        return limit == null ? LIMITE_PADRAO : Math.max(1, Math.min(limit, LIMITE_MAXIMO));
+    }
+
+    // Página cheia: pode haver mais, então aponta a próxima a partir do último id (Link rel="next")
+    private static ResponseEntity.BodyBuilder paginado(Long ultimoId, int limite) {
+        ResponseEntity.BodyBuilder resposta = ResponseEntity.ok();
+        if (ultimoId != null) {
+            String proxima = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("after", ultimoId)
+                    .replaceQueryParam("limit", limite)
+                    .toUriString();
+            resposta.header(HttpHeaders.LINK, "<" + proxima + ">; rel=\"next\"");
+        }
+        return resposta;
     }
 
     /**
@@ -158,6 +525,26 @@ public class ProdutoController {
         return ResponseEntity.status(403).build();
     }
 
+    /**
+     * Produto pelo código de barras lido no caixa (EAN-8, UPC-A, EAN-13 ou GTIN-14), da empresa do usuário
+     * (?empresa= para o administrador). Responde do índice em memória, sem ir ao banco.
+     */
+    @GetMapping("/by-barcode/{ean}")
+    public ResponseEntity<ProdutoCodigoBarrasDto> porCodigoBarras(@PathVariable String ean,
+                                                                  @RequestParam(value = "empresa", required = false) Long empresa) {
+        if (!Gtin.valido(ean)) return ResponseEntity.badRequest().build();
+        Long idEmpresa;
+        if (isAdmin()) {
+            if (empresa == null) return ResponseEntity.badRequest().build();
+            idEmpresa = empresa;
+        } else {
+            var current = getCurrentUser();
+            if (current.isEmpty() || current.get().getEmpresa() == null) return ResponseEntity.status(403).build();
+            idEmpresa = current.get().getEmpresa().getId();
+        }
+        return ResponseEntity.of(codigosBarras.buscar(idEmpresa, ean));
+    }
+
     /**
      * Cria novo produto.
      */
@@ -173,20 +560,25 @@ public class ProdutoController {
         System.out.println("[DEBUG] Hostname: " + hostname);
         var current = getCurrentUser();
         if (current.isEmpty() || current.get().getEmpresa() == null) return ResponseEntity.status(403).build();
+        String codigoBarras = codigoBarras(payload);
+        if (codigoBarras != null && !Gtin.valido(codigoBarras)) return ResponseEntity.badRequest().build();
+        if (payload.getEstoqueMinimo() != null && payload.getEstoqueMinimo() < 0) return ResponseEntity.badRequest().build();
         Produto produto = new Produto();
         produto.setEmpresa(current.get().getEmpresa());
         produto.setNomeProduto(payload.getNomeProduto());
         produto.setDescricao(payload.getDescricao());
+        produto.setCodigoBarras(Gtin.chave(codigoBarras));
         produto.setPrecoUnitario(payload.getPrecoUnitario());
         produto.setPrecoCompra(payload.getPrecoCompra());
         // consignado opcional: se vier nulo, define como false
         produto.setConsignado(payload.getConsignado() != null ? payload.getConsignado() : false);
         produto.setQuantidadeEstoque(payload.getQuantidadeEstoque());
+        produto.setEstoqueMinimo(payload.getEstoqueMinimo());
         produto.setAtivo(payload.getAtivo());
         produto.setCriadoEm(java.time.LocalDateTime.now());
         produto.setAtualizadoEm(java.time.LocalDateTime.now());
         try {
-            Produto saved = service.salvar(produto);
+            Produto saved = service.criar(produto);
             var location = ServletUriComponentsBuilder.fromCurrentRequest()
                 .path("/{id}")
                 .buildAndExpand(saved.getIdProduto())
@@ -201,7 +593,8 @@ public class ProdutoController {
     }
 
     /**
-     * Atualiza produto.
+     * Atualiza produto. A quantidade em estoque do payload é ignorada: o estoque só muda por
+     * POST /{id}/estoque/ajustes ou PATCH /batch, para não desfazer ajustes concorrentes.
      */
     @PutMapping("/{id}")
     public ResponseEntity<ProdutoDto> update(@PathVariable Long id, @Valid @RequestBody ProdutoDto payload) {
@@ -211,17 +604,96 @@ public class ProdutoController {
         if (!isAdmin() && !empresaDoUsuario(produto.getEmpresa().getId())) {
             return ResponseEntity.status(403).build();
         }
-        produto.setNomeProduto(payload.getNomeProduto());
-        produto.setDescricao(payload.getDescricao());
-        produto.setPrecoUnitario(payload.getPrecoUnitario());
-        produto.setPrecoCompra(payload.getPrecoCompra());
-        // consignado opcional: se vier nulo, define como false
-        produto.setConsignado(payload.getConsignado() != null ? payload.getConsignado() : false);
-        produto.setQuantidadeEstoque(payload.getQuantidadeEstoque());
-        produto.setAtivo(payload.getAtivo());
-        produto.setAtualizadoEm(java.time.LocalDateTime.now());
-        Produto updated = service.salvar(produto);
-        return ResponseEntity.ok(DtoMapper.toDto(updated));
+        String codigoBarras = codigoBarras(payload);
+        if (codigoBarras != null && !Gtin.valido(codigoBarras)) return ResponseEntity.badRequest().build();
+        if (payload.getEstoqueMinimo() != null && payload.getEstoqueMinimo() < 0) return ResponseEntity.badRequest().build();
+        Optional<Produto> updated = service.alterar(id, p -> {
+            p.setNomeProduto(payload.getNomeProduto());
+            p.setDescricao(payload.getDescricao());
+            p.setCodigoBarras(Gtin.chave(codigoBarras));
+            p.setPrecoUnitario(payload.getPrecoUnitario());
+            p.setPrecoCompra(payload.getPrecoCompra());
+            // consignado opcional: se vier nulo, define como false
+            p.setConsignado(payload.getConsignado() != null ? payload.getConsignado() : false);
+            p.setEstoqueMinimo(payload.getEstoqueMinimo());
+            p.setAtivo(payload.getAtivo());
+        });
+        return updated.map(p -> ResponseEntity.ok(DtoMapper.toDto(p))).orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Atualiza preço, custo, estoque e/ou ativo de vários produtos numa única transação.
+     * Responde o resultado de cada item na ordem enviada (ATUALIZADO, NAO_ENCONTRADO ou INVALIDO).
+     */
+    @PatchMapping("/batch")
+    public ResponseEntity<?> atualizarLote(@RequestBody List<ProdutoPatchDto> itens) {
+        if (itens == null || itens.isEmpty()) return ResponseEntity.badRequest().body("Lista de itens vazia.");
+        if (itens.size() > LOTE_MAXIMO) return ResponseEntity.badRequest().body("Máximo de " + LOTE_MAXIMO + " itens por lote.");
+        Long idEmpresa = null;
+        if (!isAdmin()) {
+            var current = getCurrentUser();
+            if (current.isEmpty() || current.get().getEmpresa() == null) return ResponseEntity.status(403).build();
+            idEmpresa = current.get().getEmpresa().getId();
+        }
+        return ResponseEntity.ok(service.atualizarEmLote(itens, idEmpresa));
+    }
+
+    /**
+     * Ajusta o estoque pelo delta informado (positivo entra, negativo sai), de forma atômica.
+     * 200 com a nova quantidade, 404 se o produto não existe na empresa, 409 se o estoque não basta.
+     */
+    @PostMapping("/{id}/estoque/ajustes")
+    public ResponseEntity<?> ajustarEstoque(@PathVariable Long id, @Valid @RequestBody EstoqueAjusteDto payload) {
+        if (payload.delta() == 0) return ResponseEntity.badRequest().body("delta deve ser diferente de zero.");
+        Long idEmpresa = null;
+        if (!isAdmin()) {
+            var current = getCurrentUser();
+            if (current.isEmpty() || current.get().getEmpresa() == null) return ResponseEntity.status(403).build();
+            idEmpresa = current.get().getEmpresa().getId();
+        }
+        var resultado = service.ajustarEstoque(id, payload.delta(), idEmpresa);
+        return switch (resultado.status()) {
+            case AJUSTADO -> ResponseEntity.ok(resultado);
+            case NAO_ENCONTRADO -> ResponseEntity.notFound().build();
+            case ESTOQUE_INSUFICIENTE -> ResponseEntity.status(409).body(resultado);
+        };
+    }
+
+    /**
+     * Estoque do produto num instante (?em=2025-01-31T18:00:00; sem o parâmetro, agora), calculado
+     * pelo livro-razão: último snapshot até o instante mais os movimentos seguintes.
+     */
+    @GetMapping("/{id}/estoque")
+    public ResponseEntity<EstoqueSaldoDto> estoqueEm(@PathVariable Long id,
+                                                     @RequestParam(value = "em", required = false)
+                                                     @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime em) {
+        Optional<Produto> produtoOpt = service.buscarPorId(id);
+        if (produtoOpt.isEmpty()) return ResponseEntity.notFound().build();
+        if (!isAdmin() && !empresaDoUsuario(produtoOpt.get().getEmpresa().getId())) {
+            return ResponseEntity.status(403).build();
+        }
+        LocalDateTime instante = em != null ? em : LocalDateTime.now();
+        return ResponseEntity.ok(new EstoqueSaldoDto(id, instante, estoque.quantidadeEm(id, instante)));
+    }
+
+    /**
+     * Histórico de movimentos de estoque do produto, do mais antigo ao mais recente, paginado por id (?after=&limit=).
+     */
+    @GetMapping("/{id}/estoque/movimentos")
+    public ResponseEntity<List<MovimentoEstoqueDto>> movimentosEstoque(@PathVariable Long id,
+                                                                       @RequestParam(value = "after", required = false) Long after,
+                                                                       @RequestParam(value = "limit", required = false) Integer limit) {
+        Optional<Produto> produtoOpt = service.buscarPorId(id);
+        if (produtoOpt.isEmpty()) return ResponseEntity.notFound().build();
+        if (!isAdmin() && !empresaDoUsuario(produtoOpt.get().getEmpresa().getId())) {
+            return ResponseEntity.status(403).build();
+        }
+        int limite = limite(limit);
+        List<MovimentoEstoqueDto> pagina = estoque.listar(id, after, limite).stream()
+                .map(m -> new MovimentoEstoqueDto(m.getId(), m.getDelta(), m.getQuantidade(), m.getOrigem().name(), m.getCriadoEm()))
+                .toList();
+        Long ultimo = pagina.size() == limite ? pagina.get(pagina.size() - 1).id() : null;
+        return paginado(ultimo, limite).body(pagina);
     }
 
     /**
@@ -236,9 +708,18 @@ public class ProdutoController {
             return ResponseEntity.status(403).build();
         }
         service.remover(id);
+        liberarImagem(produto.getCaminhoImagem());
         return ResponseEntity.noContent().build();
     }
 
+    // Imagens são compartilhadas entre produtos: só sai do cache quando o último produto deixa de usá-la
+    private void liberarImagem(String caminho) {
+        if (caminho == null) return;
+        if (imagemReferencias.liberar(caminho) == 0) {
+            imagemCache.invalidar(caminho);
+        }
+    }
+
     private boolean isAdmin() {
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         String email = auth != null ? Objects.toString(auth.getName(), null) : null;
@@ -0,0 +1,119 @@
+package br.com.ceidigital.web;
+
+import br.com.ceidigital.service.ProdutoAlteradoEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.unit.DataSize;
+
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache das páginas de GET /api/produtos já serializadas em JSON, por empresa. Cada página guarda a
+ * versão do catálogo (lida do banco) com que foi montada e só é servida para a mesma versão, então
+ * alterações feitas por outra instância também a invalidam. Limitado pelo total de bytes (LRU); as
+ * páginas da empresa são descartadas já a cada {@link ProdutoAlteradoEvent} local.
+ * Expõe métricas produtos.cache.* (hits, misses, evictions, invalidacoes, bytes).
+ */
+@Component
+public class ProdutoListaCache {
+
+    /**
+     * Página serializada, o último id dela quando a página veio cheia (para o link da próxima) e a
+     * versão do catálogo lida antes de montá-la.
+     */
+    public record Pagina(byte[] json, Long ultimoId, LocalDateTime versao) {}
+
+    // limite null = catálogo inteiro
+    private record Chave(Long idEmpresa, long after, Integer limite) {}
+
+    private final long capacidade;
+    // accessOrder=true: iteração da menos para a mais recentemente usada
+    private final LinkedHashMap<Chave, Pagina> paginas = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidacoes = new AtomicLong();
+
+    public ProdutoListaCache(
+            @Value("${app.produtos.cache.tamanho-maximo:32MB}") DataSize capacidade,
+            MeterRegistry registry
+    ) {
+        this.capacidade = capacidade.toBytes();
+        FunctionCounter.builder("produtos.cache.hits", hits, AtomicLong::get).register(registry);
+        FunctionCounter.builder("produtos.cache.misses", misses, AtomicLong::get).register(registry);
+        FunctionCounter.builder("produtos.cache.evictions", evictions, AtomicLong::get).register(registry);
+        FunctionCounter.builder("produtos.cache.invalidacoes", invalidacoes, AtomicLong::get).register(registry);
+        Gauge.builder("produtos.cache.bytes", this, ProdutoListaCache::bytes).baseUnit("bytes").register(registry);
+        Gauge.builder("produtos.cache.entradas", this, ProdutoListaCache::entradas).register(registry);
+    }
+
+    /** Página da empresa montada com a versão {@code versao} do catálogo, ou null. */
+    public synchronized Pagina obter(Long idEmpresa, Long after, Integer limite, LocalDateTime versao) {
+        Chave chave = new Chave(idEmpresa, after != null ? after : 0L, limite);
+        Pagina p = paginas.get(chave);
+        if (p != null && !p.versao().equals(versao)) {
+            // Catálogo alterado (talvez por outra instância) depois de a página ser montada
+            remover(chave);
+            invalidacoes.incrementAndGet();
+            p = null;
+        }
+        if (p == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return p;
+    }
+
+    public synchronized void guardar(Long idEmpresa, Long after, Integer limite, Pagina pagina) {
+        if (pagina.json().length > capacidade) return;
+        Pagina anterior = paginas.put(new Chave(idEmpresa, after != null ? after : 0L, limite), pagina);
+        if (anterior != null) bytes -= anterior.json().length;
+        bytes += pagina.json().length;
+        Iterator<Map.Entry<Chave, Pagina>> it = paginas.entrySet().iterator();
+        while (bytes > capacidade && it.hasNext()) {
+            Map.Entry<Chave, Pagina> e = it.next();
+            bytes -= e.getValue().json().length;
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void aoAlterarProdutos(ProdutoAlteradoEvent evento) {
+        Long idEmpresa = evento.idEmpresa();
+        Iterator<Map.Entry<Chave, Pagina>> it = paginas.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Chave, Pagina> e = it.next();
+            if (Objects.equals(e.getKey().idEmpresa(), idEmpresa)) {
+                bytes -= e.getValue().json().length;
+                it.remove();
+            }
+        }
+        invalidacoes.incrementAndGet();
+    }
+
+    private void remover(Chave chave) {
+        Pagina p = paginas.remove(chave);
+        if (p != null) bytes -= p.json().length;
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized int entradas() {
+        return paginas.size();
+    }
+}
@@ -23,12 +23,21 @@ public final class DtoMapper {
         dto.setIdEmpresa(p.getEmpresa() != null ? p.getEmpresa().getId() : null);
         dto.setNomeProduto(p.getNomeProduto());
         dto.setDescricao(p.getDescricao());
+        dto.setCodigoBarras(p.getCodigoBarras());
         dto.setPrecoUnitario(p.getPrecoUnitario());
         dto.setPrecoCompra(p.getPrecoCompra());
         dto.setConsignado(p.getConsignado());
         dto.setQuantidadeEstoque(p.getQuantidadeEstoque());
+        dto.setEstoqueMinimo(p.getEstoqueMinimo());
         dto.setAtivo(p.getAtivo());
         dto.setCaminhoImagem(p.getCaminhoImagem());
+        if (p.getImagem() != null) {
+            dto.setImagemTamanho(p.getImagem().tamanho());
+            dto.setImagemTipo(p.getImagem().mediaType());
+            dto.setImagemLargura(p.getImagem().largura());
+            dto.setImagemAltura(p.getImagem().altura());
+        }
+        dto.setImagemVersao(p.getImagemVersao());
         dto.setCriadoEm(p.getCriadoEm() != null ? p.getCriadoEm().toString() : null);
         dto.setAtualizadoEm(p.getAtualizadoEm() != null ? p.getAtualizadoEm().toString() : null);
         return dto;
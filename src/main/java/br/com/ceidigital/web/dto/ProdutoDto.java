@@ -10,12 +10,20 @@ public class ProdutoDto {
     private Long idEmpresa;
     private String nomeProduto;
     private String descricao;
+    private String codigoBarras;
     private BigDecimal precoUnitario;
     private BigDecimal precoCompra;
     private Boolean consignado;
     private Integer quantidadeEstoque;
+    private Integer estoqueMinimo;
     private Boolean ativo;
     private String caminhoImagem;
+    // Metadados da imagem (somente leitura; preenchidos no upload)
+    private Long imagemTamanho;
+    private String imagemTipo;
+    private Integer imagemLargura;
+    private Integer imagemAltura;
+    private Integer imagemVersao;
     private String criadoEm;
     private String atualizadoEm;
         public String getCaminhoImagem() {
@@ -0,0 +1,8 @@
+package br.com.ceidigital.web.dto.request;
+
+import jakarta.validation.constraints.NotNull;
+
+/** Ajuste de estoque em POST /api/produtos/{id}/estoque/ajustes: positivo soma, negativo baixa. */
+public record EstoqueAjusteDto(
+        @NotNull(message = "delta.obrigatorio") Integer delta
+) {}
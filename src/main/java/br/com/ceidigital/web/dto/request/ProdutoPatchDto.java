@@ -0,0 +1,15 @@
+package br.com.ceidigital.web.dto.request;
+
+import java.math.BigDecimal;
+
+/**
+ * Alteração parcial de um produto em PATCH /api/produtos/batch.
+ * Só os campos informados (não nulos) são gravados.
+ */
+public record ProdutoPatchDto(
+        Long idProduto,
+        BigDecimal precoUnitario,
+        BigDecimal precoCompra,
+        Integer quantidadeEstoque,
+        Boolean ativo
+) {}
@@ -0,0 +1,10 @@
+package br.com.ceidigital.web.dto.response;
+
+/**
+ * Resultado de um ajuste de estoque: a quantidade após o ajuste ou, se o estoque não bastava,
+ * a quantidade atual (não alterada).
+ */
+public record EstoqueAjusteResultadoDto(Long idProduto, Status status, Integer quantidadeEstoque) {
+
+    public enum Status { AJUSTADO, NAO_ENCONTRADO, ESTOQUE_INSUFICIENTE }
+}
@@ -0,0 +1,6 @@
+package br.com.ceidigital.web.dto.response;
+
+import java.time.LocalDateTime;
+
+/** Estoque de um produto num instante. */
+public record EstoqueSaldoDto(Long idProduto, LocalDateTime em, Integer quantidadeEstoque) {}
@@ -0,0 +1,4 @@
+package br.com.ceidigital.web.dto.response;
+
+/** Resultado da importação de uma entrada do zip de imagens. */
+public record ImagemImportacaoDto(String arquivo, Long idProduto, boolean sucesso, String mensagem, String caminhoImagem) {}
@@ -0,0 +1,6 @@
+package br.com.ceidigital.web.dto.response;
+
+import java.time.LocalDateTime;
+
+/** Movimento do histórico de estoque de um produto. */
+public record MovimentoEstoqueDto(Long id, Integer delta, Integer quantidade, String origem, LocalDateTime criadoEm) {}
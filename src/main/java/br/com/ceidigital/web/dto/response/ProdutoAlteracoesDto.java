@@ -0,0 +1,17 @@
+package br.com.ceidigital.web.dto.response;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Resposta de GET /api/produtos/changes: produtos criados/alterados e ids excluídos desde o cursor.
+ * {@code since}/{@code after} são o cursor da próxima chamada; {@code completo} = false indica que
+ * há mais alterações a buscar imediatamente.
+ */
+public record ProdutoAlteracoesDto(
+        List<ProdutoListaDto> alterados,
+        List<Long> removidos,
+        LocalDateTime since,
+        Long after,
+        boolean completo
+) {}
@@ -0,0 +1,13 @@
+package br.com.ceidigital.web.dto.response;
+
+import java.math.BigDecimal;
+
+/** Produto encontrado pelo código de barras (GET /api/produtos/by-barcode/{ean}): o necessário no caixa. */
+public record ProdutoCodigoBarrasDto(
+        Long idProduto,
+        String codigoBarras,
+        String nomeProduto,
+        BigDecimal precoUnitario,
+        Integer quantidadeEstoque,
+        Boolean ativo
+) {}
@@ -0,0 +1,10 @@
+package br.com.ceidigital.web.dto.response;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resposta de GET /api/produtos/facets: a página de produtos que atendem aos filtros, o total deles
+ * e, por faceta, quantos produtos cada valor teria com os demais filtros aplicados.
+ */
+public record ProdutoFacetasDto(List<ProdutoListaDto> produtos, int total, Map<String, Map<String, Integer>> facetas) {}
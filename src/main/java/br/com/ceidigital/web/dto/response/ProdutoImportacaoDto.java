@@ -0,0 +1,13 @@
+package br.com.ceidigital.web.dto.response;
+
+import java.util.List;
+
+/**
+ * Relatório da importação de produtos por CSV: totais, vazão (linhas por segundo) e os erros
+ * por linha do arquivo (limitados; {@code rejeitados} traz o total).
+ */
+public record ProdutoImportacaoDto(long linhas, long importados, long rejeitados, long duracaoMs, double linhasPorSegundo,
+                                   List<ErroLinha> erros) {
+
+    public record ErroLinha(long linha, String mensagem) {}
+}
@@ -0,0 +1,40 @@
+package br.com.ceidigital.web.dto.response;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Linha da listagem de produtos: os campos de {@code ProdutoDto} menos a descrição (TEXT), que só
+ * vem em GET /api/produtos/{id}. Projetado direto na consulta, sem carregar a entidade.
+ */
+public record ProdutoListaDto(
+        Long idProduto,
+        Long idEmpresa,
+        String nomeProduto,
+        String codigoBarras,
+        BigDecimal precoUnitario,
+        BigDecimal precoCompra,
+        Boolean consignado,
+        Integer quantidadeEstoque,
+        Integer estoqueMinimo,
+        Boolean ativo,
+        String caminhoImagem,
+        Long imagemTamanho,
+        String imagemTipo,
+        Integer imagemLargura,
+        Integer imagemAltura,
+        Integer imagemVersao,
+        String criadoEm,
+        String atualizadoEm
+) {
+
+    /** Usado pela consulta (datas no mesmo formato texto do ProdutoDto). */
+    public ProdutoListaDto(Long idProduto, Long idEmpresa, String nomeProduto, String codigoBarras, BigDecimal precoUnitario, BigDecimal precoCompra,
+                           Boolean consignado, Integer quantidadeEstoque, Integer estoqueMinimo, Boolean ativo, String caminhoImagem,
+                           Long imagemTamanho, String imagemTipo, Integer imagemLargura, Integer imagemAltura, Integer imagemVersao,
+                           LocalDateTime criadoEm, LocalDateTime atualizadoEm) {
+        this(idProduto, idEmpresa, nomeProduto, codigoBarras, precoUnitario, precoCompra, consignado, quantidadeEstoque, estoqueMinimo, ativo, caminhoImagem,
+                imagemTamanho, imagemTipo, imagemLargura, imagemAltura, imagemVersao,
+                criadoEm != null ? criadoEm.toString() : null, atualizadoEm != null ? atualizadoEm.toString() : null);
+    }
+}
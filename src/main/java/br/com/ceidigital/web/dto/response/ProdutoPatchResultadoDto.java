@@ -0,0 +1,7 @@
+package br.com.ceidigital.web.dto.response;
+
+/** Resultado de um item do PATCH /api/produtos/batch. */
+public record ProdutoPatchResultadoDto(Long idProduto, Status status, String mensagem) {
+
+    public enum Status { ATUALIZADO, NAO_ENCONTRADO, INVALIDO }
+}
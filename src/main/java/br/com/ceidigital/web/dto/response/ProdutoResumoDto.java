@@ -0,0 +1,6 @@
+package br.com.ceidigital.web.dto.response;
+
+import java.math.BigDecimal;
+
+/** Resumo de produto para seleção (ex.: montagem de kits), projetado direto na consulta. */
+public record ProdutoResumoDto(Long idProduto, String nomeProduto, BigDecimal precoUnitario) {}
@@ -0,0 +1,27 @@
+package br.com.ceidigital.web.dto.response;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Valoração do estoque de uma empresa: valor a custo (precoCompra) e a venda (precoUnitario),
+ * margem e exposição em consignado. A margem considera só os produtos com custo informado.
+ */
+public record ValoracaoEstoqueDto(
+        Long idEmpresa,
+        long produtos,
+        long produtosAtivos,
+        long produtosComEstoque,
+        long produtosSemCusto,
+        long unidades,
+        BigDecimal valorCusto,
+        BigDecimal valorVenda,
+        BigDecimal margem,
+        BigDecimal margemPercentual,
+        Consignado consignado,
+        LocalDateTime geradoEm
+) {
+
+    /** Parte do estoque em consignação. */
+    public record Consignado(long produtos, long unidades, BigDecimal valorCusto, BigDecimal valorVenda) {}
+}
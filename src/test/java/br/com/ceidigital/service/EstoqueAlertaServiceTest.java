@@ -0,0 +1,174 @@
+package br.com.ceidigital.service;
+
+import br.com.ceidigital.domain.Empresa;
+import br.com.ceidigital.repository.EmpresaRepository;
+import br.com.ceidigital.repository.ProdutoRemovidoRepository;
+import br.com.ceidigital.repository.ProdutoRepository;
+import br.com.ceidigital.repository.UsuarioRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/** Cruzamento do estoque mínimo, fila de novos por empresa e sincronização com o banco. */
+@ExtendWith(MockitoExtension.class)
+class EstoqueAlertaServiceTest {
+
+	private static final Long EMPRESA = 1L;
+	private static final String EMAIL = "loja@exemplo.com";
+	private static final LocalDateTime CARGA = LocalDateTime.of(2026, 1, 1, 12, 0);
+
+	@Mock
+	private ProdutoRepository produtoRepository;
+	@Mock
+	private ProdutoRemovidoRepository removidoRepository;
+	@Mock
+	private ProdutoService produtoService;
+	@Mock
+	private EmpresaRepository empresaRepository;
+	@Mock
+	private UsuarioRepository usuarioRepository;
+	@Mock
+	private NotificationService notificationService;
+
+	private EstoqueAlertaService service;
+
+	@BeforeEach
+	void iniciar() {
+		service = new EstoqueAlertaService(produtoRepository, removidoRepository, produtoService, empresaRepository,
+				usuarioRepository, notificationService, false, Duration.ZERO);
+		Empresa empresa = new Empresa();
+		empresa.setId(EMPRESA);
+		empresa.setNome("Loja");
+		empresa.setEmail(EMAIL);
+		lenient().when(empresaRepository.findById(EMPRESA)).thenReturn(Optional.of(empresa));
+		lenient().when(produtoService.confirmadoAte()).thenReturn(CARGA);
+	}
+
+	@Test
+	void avisaSoQuandoCruzaOMinimoParaBaixo() {
+		carregar(linha(10L, 8, 5), linha(11L, 2, 5));
+		assertEquals(0, service.enviarResumos()); // 11 já estava abaixo na carga: só aparece na lista geral
+
+		when(produtoRepository.camposEstoqueMinimo(List.of(10L))).thenReturn(
+				List.<Object[]>of(linha(10L, 3, 5)),  // cruza
+				List.<Object[]>of(linha(10L, 1, 5)),  // continua abaixo
+				List.<Object[]>of(linha(10L, 6, 5)),  // volta
+				List.<Object[]>of(linha(10L, 4, 5))); // cruza de novo
+
+		alterar(10L);
+		assertEquals(1, service.enviarResumos());
+		String corpo = corpoEnviado("Estoque baixo: 1 produto(s) abaixo do mínimo");
+		assertTrue(corpo.contains("(#10): estoque 3, mínimo 5"));
+		assertTrue(corpo.contains("Total de produtos abaixo do mínimo agora: 2"));
+		// Mais urgente primeiro: 11 (folga -3) antes de 10 (folga -2)
+		assertTrue(corpo.lastIndexOf("(#11)") < corpo.lastIndexOf("(#10)"));
+
+		alterar(10L);
+		assertEquals(0, service.enviarResumos());
+
+		alterar(10L);
+		alterar(10L);
+		assertEquals(1, service.enviarResumos());
+	}
+
+	@Test
+	void falhaNoEnvioDevolveSoQuemContinuaAbaixo() {
+		carregar(linha(10L, 8, 5), linha(11L, 9, 5));
+		when(produtoRepository.camposEstoqueMinimo(List.of(10L, 11L))).thenReturn(
+				List.of(linha(10L, 3, 5), linha(11L, 4, 5)),
+				List.of(linha(10L, 3, 5), linha(11L, 7, 5)));
+		doThrow(new IllegalStateException("smtp fora")).doNothing()
+				.when(notificationService).sendEmail(anyString(), anyString(), anyString());
+
+		alterar(10L, 11L);
+		assertEquals(0, service.enviarResumos());
+		verify(notificationService).sendEmail(eq(EMAIL), eq("Estoque baixo: 2 produto(s) abaixo do mínimo"), anyString());
+
+		alterar(10L, 11L); // 11 voltou ao normal antes da nova tentativa
+		assertEquals(1, service.enviarResumos());
+		verify(notificationService).sendEmail(eq(EMAIL), eq("Estoque baixo: 1 produto(s) abaixo do mínimo"), anyString());
+
+		assertEquals(0, service.enviarResumos());
+		verify(notificationService, times(2)).sendEmail(anyString(), anyString(), anyString());
+	}
+
+	@Test
+	void empresaInteiraComparaComOEstadoAtual() {
+		carregar(linha(10L, 8, 5), linha(11L, 2, 5), linha(12L, 1, 5));
+		// Importação: 10 cruza, 11 segue abaixo, 12 sai (inativado), 13 é novo e já entra abaixo
+		when(produtoRepository.camposEstoqueMinimoPorEmpresa(EMPRESA))
+				.thenReturn(List.of(linha(10L, 3, 5), linha(11L, 2, 5), linha(13L, 0, 5)));
+
+		service.aoAlterarProdutos(new ProdutoAlteradoEvent(EMPRESA, List.of(), false));
+
+		assertEquals(1, service.enviarResumos());
+		String corpo = corpoEnviado("Estoque baixo: 2 produto(s) abaixo do mínimo");
+		assertTrue(corpo.contains("(#10)"));
+		assertTrue(corpo.contains("(#13)"));
+		assertFalse(corpo.contains("(#12)"));
+		assertTrue(corpo.contains("Total de produtos abaixo do mínimo agora: 3"));
+	}
+
+	@Test
+	void sincronizarTrazAlteracoesDeOutrasInstanciasEDaJanelaDaCarga() {
+		// Evento antes da carga (ou sem a trava) é ignorado; o que ele mudou vem do banco em sincronizar()
+		service.aoAlterarProdutos(new ProdutoAlteradoEvent(EMPRESA, List.of(10L), false));
+		verifyNoInteractions(produtoRepository);
+
+		carregar(linha(10L, 8, 5), linha(11L, 2, 5));
+		LocalDateTime agora = CARGA.plusMinutes(10);
+		when(produtoService.confirmadoAte()).thenReturn(agora);
+		when(produtoRepository.alteradosEntre(CARGA, agora)).thenReturn(List.of(new Object[]{10L, EMPRESA}, new Object[]{20L, EMPRESA}));
+		when(produtoRepository.camposEstoqueMinimo(List.of(10L, 20L))).thenReturn(List.<Object[]>of(linha(10L, 3, 5))); // 20 não tem mínimo
+		when(removidoRepository.removidosEntre(CARGA, agora)).thenReturn(List.<Object[]>of(new Object[]{11L, EMPRESA}));
+
+		assertEquals(2, service.sincronizar());
+
+		assertEquals(1, service.enviarResumos());
+		String corpo = corpoEnviado("Estoque baixo: 1 produto(s) abaixo do mínimo");
+		assertTrue(corpo.contains("(#10)"));
+		assertTrue(corpo.contains("Total de produtos abaixo do mínimo agora: 1"));
+
+		// Nada confirmado desde o último ciclo: não consulta de novo
+		assertEquals(0, service.sincronizar());
+	}
+
+	private void carregar(Object[]... linhas) {
+		when(produtoRepository.camposEstoqueMinimo()).thenReturn(List.of(linhas));
+		assertEquals(linhas.length, service.carregar());
+	}
+
+	private void alterar(Long... ids) {
+		service.aoAlterarProdutos(new ProdutoAlteradoEvent(EMPRESA, List.of(ids), false));
+	}
+
+	private String corpoEnviado(String assunto) {
+		ArgumentCaptor<String> corpo = ArgumentCaptor.forClass(String.class);
+		verify(notificationService).sendEmail(eq(EMAIL), eq(assunto), corpo.capture());
+		return corpo.getValue();
+	}
+
+	private static Object[] linha(Long id, int estoque, int minimo) {
+		return new Object[]{id, EMPRESA, "Produto " + id, estoque, minimo};
+	}
+}
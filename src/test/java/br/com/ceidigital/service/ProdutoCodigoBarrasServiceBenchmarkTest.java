@@ -0,0 +1,107 @@
+package br.com.ceidigital.service;
+
+import br.com.ceidigital.repository.ProdutoRepository;
+import br.com.ceidigital.web.dto.response.ProdutoCodigoBarrasDto;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Latência da busca por código de barras no índice em memória, com um catálogo grande e
+ * alterações de produtos chegando em paralelo (como no caixa em horário de pico).
+ * Fora do build normal (mede tempo de relógio): mvn test -Pbenchmark.
+ */
+@Tag("benchmark")
+class ProdutoCodigoBarrasServiceBenchmarkTest {
+	private static final Logger log = LoggerFactory.getLogger(ProdutoCodigoBarrasServiceBenchmarkTest.class);
+
+	private static final long EMPRESA = 1L;
+	private static final int PRODUTOS = 200_000;
+	private static final int AQUECIMENTO = 200_000;
+	private static final int LEITURAS = 1_000_000;
+	private static final long P99_MAXIMO_NANOS = 1_000_000; // 1 ms
+
+	@Test
+	void buscaPorCodigoBarrasAbaixoDeUmMilissegundoNoP99() throws InterruptedException {
+		List<ProdutoCodigoBarrasDto> catalogo = new ArrayList<>(PRODUTOS);
+		for (int i = 0; i < PRODUTOS; i++) catalogo.add(produto(i, i % 50));
+		ProdutoRepository repository = mock(ProdutoRepository.class);
+		when(repository.camposCodigoBarrasPorEmpresa(anyLong())).thenReturn(catalogo);
+		// Alterações: o mesmo produto com outro estoque
+		when(repository.camposCodigoBarras(any())).thenAnswer(inv -> {
+			Collection<Long> ids = inv.getArgument(0);
+			return ids.stream().map(id -> produto(id.intValue(), (int) (System.nanoTime() & 63))).toList();
+		});
+		ProdutoCodigoBarrasService service = new ProdutoCodigoBarrasService(repository, mock(JdbcTemplate.class));
+
+		long inicioCarga = System.nanoTime();
+		assertTrue(service.buscar(EMPRESA, ean13(0)).isPresent());
+		long cargaMs = (System.nanoTime() - inicioCarga) / 1_000_000;
+
+		AtomicBoolean rodando = new AtomicBoolean(true);
+		Thread escritor = new Thread(() -> {
+			SplittableRandom r = new SplittableRandom(7);
+			while (rodando.get()) {
+				service.aoAlterarProdutos(new ProdutoAlteradoEvent(EMPRESA, List.of((long) r.nextInt(PRODUTOS)), false));
+			}
+		}, "benchmark-escritor");
+		escritor.setDaemon(true);
+		escritor.start();
+
+		SplittableRandom r = new SplittableRandom(42);
+		for (int i = 0; i < AQUECIMENTO; i++) service.buscar(EMPRESA, ean13(r.nextInt(PRODUTOS)));
+
+		// Códigos montados antes, para medir só a busca; 1 em 10 leituras é de um código que não existe
+		String[] codigos = new String[LEITURAS];
+		for (int i = 0; i < LEITURAS; i++) codigos[i] = ean13(i % 10 == 0 ? PRODUTOS + r.nextInt(PRODUTOS) : r.nextInt(PRODUTOS));
+		long[] nanos = new long[LEITURAS];
+		int encontrados = 0;
+		for (int i = 0; i < LEITURAS; i++) {
+			long t0 = System.nanoTime();
+			boolean achou = service.buscar(EMPRESA, codigos[i]).isPresent();
+			nanos[i] = System.nanoTime() - t0;
+			if (achou) encontrados++;
+		}
+		rodando.set(false);
+		escritor.join();
+
+		Arrays.sort(nanos);
+		long p50 = nanos[LEITURAS / 2];
+		long p99 = nanos[(int) (LEITURAS * 0.99)];
+		long p999 = nanos[(int) (LEITURAS * 0.999)];
+		log.info("[BENCHMARK] código de barras: {} produtos, carga {} ms, {} leituras: p50 {} ns, p99 {} ns, p99.9 {} ns, max {} ns",
+				PRODUTOS, cargaMs, LEITURAS, p50, p99, p999, nanos[LEITURAS - 1]);
+
+		assertEquals(LEITURAS - LEITURAS / 10, encontrados);
+		assertTrue(p99 < P99_MAXIMO_NANOS, "p99 de " + p99 + " ns acima de 1 ms");
+	}
+
+	private static ProdutoCodigoBarrasDto produto(int i, int estoque) {
+		return new ProdutoCodigoBarrasDto((long) i, ean13(i), "Produto " + i, BigDecimal.valueOf(i % 1000, 2), estoque, true);
+	}
+
+	// Prefixo 789 (Brasil) + número de 9 dígitos + dígito verificador
+	private static String ean13(int i) {
+		String base = "789" + String.format("%09d", i);
+		int soma = 0;
+		for (int k = base.length() - 1, peso = 3; k >= 0; k--, peso = 4 - peso) soma += (base.charAt(k) - '0') * peso;
+		return base + (10 - soma % 10) % 10;
+	}
+}
@@ -0,0 +1,60 @@
+package br.com.ceidigital.service;
+
+import br.com.ceidigital.repository.ProdutoRepository;
+import br.com.ceidigital.web.dto.response.ProdutoCodigoBarrasDto;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ProdutoCodigoBarrasServiceTest {
+
+	private static final long EMPRESA = 1L;
+
+	private final ProdutoRepository repository = mock(ProdutoRepository.class);
+	private final ProdutoCodigoBarrasService service = new ProdutoCodigoBarrasService(repository, mock(JdbcTemplate.class));
+
+	@Test
+	void mesmoProdutoPorUpcAEan13EGtin14() {
+		// UPC-A 036000291452 = EAN-13 0036000291452 = GTIN-14 00036000291452 (a forma gravada)
+		when(repository.camposCodigoBarrasPorEmpresa(anyLong())).thenReturn(List.of(produto(10L, "00036000291452")));
+
+		assertEquals(10L, service.buscar(EMPRESA, "036000291452").orElseThrow().idProduto());
+		assertEquals(10L, service.buscar(EMPRESA, "0036000291452").orElseThrow().idProduto());
+		assertEquals(10L, service.buscar(EMPRESA, "00036000291452").orElseThrow().idProduto());
+		assertTrue(service.buscar(EMPRESA, "036000291453").isEmpty()); // dígito verificador errado
+	}
+
+	@Test
+	void codigoAindaNoFormatoAntigoTambemEEncontrado() {
+		when(repository.camposCodigoBarrasPorEmpresa(anyLong())).thenReturn(List.of(produto(10L, "036000291452")));
+
+		assertEquals(10L, service.buscar(EMPRESA, "00036000291452").orElseThrow().idProduto());
+	}
+
+	@Test
+	void trocaDeCodigoTiraAChaveAntiga() {
+		when(repository.camposCodigoBarrasPorEmpresa(anyLong())).thenReturn(List.of(produto(10L, "00036000291452")));
+		assertTrue(service.buscar(EMPRESA, "036000291452").isPresent());
+
+		when(repository.camposCodigoBarras(List.of(10L))).thenReturn(List.of(produto(10L, "07891000100103")));
+		service.aoAlterarProdutos(new ProdutoAlteradoEvent(EMPRESA, List.of(10L), false));
+
+		assertTrue(service.buscar(EMPRESA, "036000291452").isEmpty());
+		assertEquals(10L, service.buscar(EMPRESA, "7891000100103").orElseThrow().idProduto());
+
+		service.aoAlterarProdutos(new ProdutoAlteradoEvent(EMPRESA, List.of(10L), true));
+		assertTrue(service.buscar(EMPRESA, "7891000100103").isEmpty());
+	}
+
+	private static ProdutoCodigoBarrasDto produto(Long id, String codigo) {
+		return new ProdutoCodigoBarrasDto(id, codigo, "Produto", BigDecimal.TEN, 5, true);
+	}
+}
@@ -0,0 +1,65 @@
+package br.com.ceidigital.service;
+
+import br.com.ceidigital.web.dto.response.ValoracaoEstoqueDto;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** A valoração guardada só é servida enquanto a versão do catálogo no banco for a mesma. */
+class ProdutoRelatorioServiceTest {
+
+	private static final Long EMPRESA = 1L;
+	private static final LocalDateTime VERSAO = LocalDateTime.of(2026, 1, 1, 12, 0);
+
+	private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+	private final ProdutoService produtoService = mock(ProdutoService.class);
+	private final ProdutoRelatorioService service = new ProdutoRelatorioService(jdbcTemplate, produtoService);
+
+	@Test
+	void recalculaQuandoOutraInstanciaAlteraOCatalogo() {
+		List<ValoracaoEstoqueDto> calculadas = List.of(valoracao(), valoracao(), valoracao(), valoracao());
+		when(jdbcTemplate.queryForObject(anyString(), any(RowMapper.class), eq(EMPRESA)))
+				.thenReturn(calculadas.get(0), calculadas.get(1), calculadas.get(2), calculadas.get(3));
+		when(produtoService.versaoCatalogo(EMPRESA)).thenReturn(
+				Optional.of(VERSAO), Optional.of(VERSAO),
+				Optional.empty(), Optional.empty(),       // alteração ainda sem versão definitiva: não guarda
+				Optional.of(VERSAO.plusMinutes(1)), Optional.of(VERSAO.plusMinutes(1)));
+
+		assertSame(calculadas.get(0), service.valoracao(EMPRESA));
+		assertSame(calculadas.get(0), service.valoracao(EMPRESA));
+		assertSame(calculadas.get(1), service.valoracao(EMPRESA));
+		assertSame(calculadas.get(2), service.valoracao(EMPRESA));
+		assertSame(calculadas.get(3), service.valoracao(EMPRESA));
+		assertSame(calculadas.get(3), service.valoracao(EMPRESA));
+		verify(jdbcTemplate, times(4)).queryForObject(anyString(), any(RowMapper.class), eq(EMPRESA));
+	}
+
+	@Test
+	void alteracaoLocalDescartaNaHora() {
+		ValoracaoEstoqueDto antes = valoracao();
+		ValoracaoEstoqueDto depois = valoracao();
+		when(jdbcTemplate.queryForObject(anyString(), any(RowMapper.class), eq(EMPRESA))).thenReturn(antes, depois);
+		when(produtoService.versaoCatalogo(EMPRESA)).thenReturn(Optional.of(VERSAO));
+
+		assertSame(antes, service.valoracao(EMPRESA));
+		service.aoAlterarProdutos(new ProdutoAlteradoEvent(EMPRESA, List.of(10L), false));
+		assertSame(depois, service.valoracao(EMPRESA));
+	}
+
+	private static ValoracaoEstoqueDto valoracao() {
+		return new ValoracaoEstoqueDto(EMPRESA, 0, 0, 0, 0, 0, null, null, null, null, null, LocalDateTime.now());
+	}
+}
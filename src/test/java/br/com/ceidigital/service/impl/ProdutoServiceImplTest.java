@@ -0,0 +1,352 @@
+package br.com.ceidigital.service.impl;
+
+import br.com.ceidigital.domain.Empresa;
+import br.com.ceidigital.domain.MovimentoEstoque;
+import br.com.ceidigital.domain.Produto;
+import br.com.ceidigital.repository.ProdutoRemovidoRepository;
+import br.com.ceidigital.repository.ProdutoRepository;
+import br.com.ceidigital.service.EstoqueMovimentoService;
+import br.com.ceidigital.service.ProdutoAlteradoEvent;
+import br.com.ceidigital.web.dto.request.ProdutoPatchDto;
+import br.com.ceidigital.web.dto.response.EstoqueAjusteResultadoDto;
+import br.com.ceidigital.web.dto.response.ProdutoPatchResultadoDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * SQL do PATCH em lote e do ajuste de estoque. No lote, o JdbcTemplate é simulado por uma tabela em
+ * memória que interpreta o UPDATE ... FROM (VALUES ...) gerado, devolvendo as linhas do RETURNING.
+ */
+@ExtendWith(MockitoExtension.class)
+class ProdutoServiceImplTest {
+
+	@Mock
+	private ProdutoRepository produtoRepository;
+	@Mock
+	private ProdutoRemovidoRepository removidoRepository;
+	@Mock
+	private ApplicationEventPublisher eventos;
+	@Mock
+	private JdbcTemplate jdbcTemplate;
+	@Mock
+	private EstoqueMovimentoService estoque;
+	@InjectMocks
+	private ProdutoServiceImpl service;
+
+	// id -> {empresa, quantidade_estoque}
+	private final Map<Long, long[]> produtos = new HashMap<>();
+	private final List<String> sqls = new ArrayList<>();
+	private final List<Object[]> argumentos = new ArrayList<>();
+
+	@BeforeEach
+	void simularBanco() {
+		produtos.put(1L, new long[]{10, 5});
+		produtos.put(2L, new long[]{10, 7});
+		produtos.put(3L, new long[]{20, 9});
+		lenient().doAnswer(inv -> {
+			String sql = inv.getArgument(0);
+			RowCallbackHandler linhas = inv.getArgument(1);
+			Object[] args = Arrays.copyOfRange(inv.getArguments(), 2, inv.getArguments().length);
+			sqls.add(sql);
+			argumentos.add(args);
+			executar(sql, args, linhas);
+			return null;
+		}).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+	}
+
+	@Test
+	void agrupaPeloConjuntoDeColunas() {
+		List<ProdutoPatchResultadoDto> r = service.atualizarEmLote(List.of(
+				new ProdutoPatchDto(1L, new BigDecimal("10.50"), null, null, null),
+				new ProdutoPatchDto(3L, null, null, null, false),
+				new ProdutoPatchDto(2L, new BigDecimal("4.00"), null, null, null)), null);
+
+		assertEquals(List.of(ProdutoPatchResultadoDto.Status.ATUALIZADO, ProdutoPatchResultadoDto.Status.ATUALIZADO,
+				ProdutoPatchResultadoDto.Status.ATUALIZADO), status(r));
+		assertEquals(2, sqls.size());
+		assertEquals("with v(id_produto, preco_unitario) as (values (?::bigint, ?::numeric), (?::bigint, ?::numeric))"
+				+ " update produto p set preco_unitario = v.preco_unitario, atualizado_em = ? from v"
+				+ " where p.id_produto = v.id_produto returning p.id_produto, p.id_empresa", sqls.get(0));
+		Object[] args = argumentos.get(0);
+		assertArrayEquals(new Object[]{1L, new BigDecimal("10.50"), 2L, new BigDecimal("4.00")}, Arrays.copyOf(args, 4));
+		assertInstanceOf(Timestamp.class, args[4]);
+		assertEquals("with v(id_produto, ativo) as (values (?::bigint, ?::boolean))"
+				+ " update produto p set ativo = v.ativo, atualizado_em = ? from v"
+				+ " where p.id_produto = v.id_produto returning p.id_produto, p.id_empresa", sqls.get(1));
+
+		// Sem estoque no lote: nenhum movimento, e um evento por empresa
+		assertTrue(movimentos().isEmpty());
+		Map<Long, Set<Long>> eventosPorEmpresa = eventos(2);
+		assertEquals(Set.of(1L, 2L), eventosPorEmpresa.get(10L));
+		assertEquals(Set.of(3L), eventosPorEmpresa.get(20L));
+	}
+
+	@Test
+	void estoqueTravaAsLinhasEGeraMovimentosSoDoQueMudou() {
+		List<ProdutoPatchResultadoDto> r = service.atualizarEmLote(List.of(
+				new ProdutoPatchDto(1L, null, null, 8, null),
+				new ProdutoPatchDto(2L, null, null, 7, null),
+				new ProdutoPatchDto(3L, null, null, 1, null)), 10L);
+
+		// O produto 3 é de outra empresa
+		assertEquals(List.of(ProdutoPatchResultadoDto.Status.ATUALIZADO, ProdutoPatchResultadoDto.Status.ATUALIZADO,
+				ProdutoPatchResultadoDto.Status.NAO_ENCONTRADO), status(r));
+		assertEquals(1, sqls.size());
+		assertEquals("with v(id_produto, quantidade_estoque) as (values (?::bigint, ?::integer), (?::bigint, ?::integer), (?::bigint, ?::integer))"
+				+ ", a as (select pr.id_produto, pr.quantidade_estoque from produto pr join v on v.id_produto = pr.id_produto"
+				+ " where pr.id_empresa = ? for update of pr)"
+				+ " update produto p set quantidade_estoque = v.quantidade_estoque, atualizado_em = ? from v"
+				+ " join a on a.id_produto = v.id_produto where p.id_produto = v.id_produto and p.id_empresa = ?"
+				+ " returning p.id_produto, p.id_empresa, a.quantidade_estoque, p.quantidade_estoque", sqls.get(0));
+		Object[] args = argumentos.get(0);
+		assertEquals(10L, args[6]);
+		assertEquals(10L, args[8]);
+		assertEquals(9, produtos.get(3L)[1]);
+
+		// O produto 2 já tinha 7: só o 1 gera movimento
+		assertEquals(List.of(new EstoqueMovimentoService.Movimento(1L, 10L, 3, 8, MovimentoEstoque.Origem.LOTE)), movimentos());
+		assertEquals(Set.of(1L, 2L), eventos(1).get(10L));
+	}
+
+	@Test
+	void itensInvalidosNaoChegamAoBanco() {
+		List<ProdutoPatchResultadoDto> r = service.atualizarEmLote(Arrays.asList(
+				null,
+				new ProdutoPatchDto(null, BigDecimal.ONE, null, null, null),
+				new ProdutoPatchDto(1L, BigDecimal.ONE, null, null, null),
+				new ProdutoPatchDto(1L, BigDecimal.TEN, null, null, null),
+				new ProdutoPatchDto(2L, null, null, null, null),
+				new ProdutoPatchDto(2L, null, new BigDecimal("-1"), null, null),
+				new ProdutoPatchDto(3L, new BigDecimal("1.234"), null, null, null),
+				new ProdutoPatchDto(3L, new BigDecimal("123456789"), null, null, null),
+				new ProdutoPatchDto(4L, null, null, -1, null),
+				new ProdutoPatchDto(99L, null, null, null, true)), null);
+
+		List<String> mensagens = r.stream().map(ProdutoPatchResultadoDto::mensagem).toList();
+		assertEquals(List.of("idProduto é obrigatório", "idProduto é obrigatório", "idProduto repetido no lote",
+				"idProduto repetido no lote", "idProduto repetido no lote", "idProduto repetido no lote",
+				"idProduto repetido no lote", "idProduto repetido no lote", "quantidadeEstoque não pode ser negativa",
+				"Produto não encontrado"), mensagens);
+		assertEquals(ProdutoPatchResultadoDto.Status.NAO_ENCONTRADO, r.get(9).status());
+		assertEquals(1, sqls.size());
+		assertArrayEquals(new Object[]{99L, true}, Arrays.copyOf(argumentos.get(0), 2));
+		verify(eventos, never()).publishEvent(any(Object.class));
+	}
+
+	@Test
+	void validaPrecosNoFormatoDaColuna() {
+		List<ProdutoPatchResultadoDto> r = service.atualizarEmLote(List.of(
+				new ProdutoPatchDto(1L, null, null, null, null),
+				new ProdutoPatchDto(2L, null, new BigDecimal("-0.01"), null, null),
+				new ProdutoPatchDto(3L, new BigDecimal("1.234"), null, null, null),
+				new ProdutoPatchDto(4L, new BigDecimal("123456789.00"), null, null, null),
+				new ProdutoPatchDto(5L, new BigDecimal("99999999.99"), null, null, null)), null);
+
+		assertEquals(Arrays.asList("Nenhum campo para atualizar", "precoCompra não pode ser negativo",
+				"precoUnitario fora do formato 99999999,99", "precoUnitario fora do formato 99999999,99", "Produto não encontrado"),
+				r.stream().map(ProdutoPatchResultadoDto::mensagem).toList());
+	}
+
+	@Test
+	void loteGrandeViraVariosUpdates() {
+		List<ProdutoPatchDto> itens = new ArrayList<>();
+		for (long id = 1; id <= 2500; id++) itens.add(new ProdutoPatchDto(id, null, null, null, true));
+
+		List<ProdutoPatchResultadoDto> r = service.atualizarEmLote(itens, null);
+
+		assertEquals(3, sqls.size());
+		assertEquals(List.of(1000, 1000, 500), sqls.stream().map(s -> s.split("\\?::bigint", -1).length - 1).toList());
+		assertEquals(3, r.stream().filter(x -> x.status() == ProdutoPatchResultadoDto.Status.ATUALIZADO).count());
+	}
+
+	@Test
+	void ajusteTestaESomaNoMesmoUpdate() {
+		ajusteDevolve(List.<long[]>of(new long[]{12, 10}));
+
+		EstoqueAjusteResultadoDto r = service.ajustarEstoque(1L, -3, 10L);
+
+		assertEquals(new EstoqueAjusteResultadoDto(1L, EstoqueAjusteResultadoDto.Status.AJUSTADO, 12), r);
+		// Sem leitura prévia nem lock: a condição do estoque vai no próprio UPDATE, junto do movimento
+		String sql = sqls.get(0);
+		assertTrue(sql.startsWith("with u as (update produto set quantidade_estoque = quantidade_estoque + ?, atualizado_em = ?"
+				+ " where id_produto = ? and id_empresa = ? and quantidade_estoque::bigint + ? between 0 and 2147483647"));
+		assertTrue(sql.contains("insert into movimento_estoque"));
+		Object[] args = argumentos.get(0);
+		assertEquals(List.of(-3, 1L, 10L, -3, -3, "AJUSTE"), List.of(args[0], args[2], args[3], args[4], args[5], args[6]));
+		verify(jdbcTemplate, never()).queryForList(anyString(), eq(Integer.class), any(Object[].class));
+		assertEquals(Set.of(1L), eventos(1).get(10L));
+	}
+
+	@Test
+	void ajusteSemEstoqueSuficienteDevolveOSaldoAtual() {
+		ajusteDevolve(List.of());
+		doReturn(List.of(2)).when(jdbcTemplate).queryForList(anyString(), eq(Integer.class), any(Object[].class));
+
+		assertEquals(new EstoqueAjusteResultadoDto(1L, EstoqueAjusteResultadoDto.Status.ESTOQUE_INSUFICIENTE, 2),
+				service.ajustarEstoque(1L, -3, null));
+		verify(eventos, never()).publishEvent(any(Object.class));
+	}
+
+	@Test
+	void ajusteDeProdutoInexistente() {
+		ajusteDevolve(List.of());
+		doReturn(List.of()).when(jdbcTemplate).queryForList(anyString(), eq(Integer.class), any(Object[].class));
+
+		assertEquals(new EstoqueAjusteResultadoDto(99L, EstoqueAjusteResultadoDto.Status.NAO_ENCONTRADO, null),
+				service.ajustarEstoque(99L, 1, 10L));
+	}
+
+	@Test
+	void cadastroRegistraOEstoqueInicial() {
+		Produto novo = produto(null, 4);
+		when(produtoRepository.save(novo)).thenAnswer(inv -> {
+			novo.setIdProduto(7L);
+			return novo;
+		});
+
+		service.criar(novo);
+
+		assertEquals(List.of(new EstoqueMovimentoService.Movimento(7L, 10L, 4, 4, MovimentoEstoque.Origem.CADASTRO)), movimentos());
+		assertEquals(Set.of(7L), eventos(1).get(10L));
+	}
+
+	@Test
+	void alteracaoNaoMexeNoEstoqueNemRegistraMovimento() {
+		Produto atual = produto(1L, 5);
+		when(produtoRepository.findById(1L)).thenReturn(Optional.of(atual));
+
+		Optional<Produto> r = service.alterar(1L, p -> p.setNomeProduto("Novo nome"));
+
+		assertEquals("Novo nome", r.orElseThrow().getNomeProduto());
+		assertEquals(5, atual.getQuantidadeEstoque());
+		assertNotNull(atual.getAtualizadoEm());
+		verify(produtoRepository, never()).save(any());
+		verifyNoInteractions(estoque);
+		assertEquals(Set.of(1L), eventos(1).get(10L));
+
+		when(produtoRepository.findById(2L)).thenReturn(Optional.empty());
+		assertTrue(service.alterar(2L, p -> p.setNomeProduto("x")).isEmpty());
+	}
+
+	@Test
+	void versaoCatalogoSoQuandoNadaAnteriorPodeAindaConfirmar() {
+		ReflectionTestUtils.setField(service, "margemSincronizacao", Duration.ofSeconds(2));
+		LocalDateTime alteracao = LocalDateTime.now().minusMinutes(1);
+		when(produtoRepository.ultimaAtualizacao(10L)).thenReturn(alteracao);
+		when(removidoRepository.ultimaRemocao(10L)).thenReturn(alteracao.minusMinutes(1));
+		// Transação aberta antes da última alteração: pode confirmar carimbos menores sem mudar o máximo
+		when(jdbcTemplate.queryForObject(anyString(), eq(Timestamp.class)))
+				.thenReturn(Timestamp.valueOf(alteracao.minusSeconds(30)), Timestamp.valueOf(alteracao.plusSeconds(1)), null);
+
+		assertTrue(service.versaoCatalogo(10L).isEmpty());
+		assertTrue(service.versaoCatalogo(10L).isEmpty()); // dentro da margem entre os relógios
+		assertEquals(Optional.of(alteracao), service.versaoCatalogo(10L));
+
+		when(produtoRepository.ultimaAtualizacao(20L)).thenReturn(null);
+		assertEquals(Optional.of(LocalDateTime.of(1970, 1, 1, 0, 0)), service.versaoCatalogo(20L));
+	}
+
+	// RETURNING do ajuste: {quantidade, empresa} da linha alterada
+	private void ajusteDevolve(List<long[]> linhas) {
+		doAnswer(inv -> {
+			sqls.add(inv.getArgument(0));
+			argumentos.add(Arrays.copyOfRange(inv.getArguments(), 2, inv.getArguments().length));
+			return linhas;
+		}).when(jdbcTemplate).query(anyString(), any(RowMapper.class), any(Object[].class));
+	}
+
+	private static Produto produto(Long id, int estoque) {
+		Empresa empresa = new Empresa();
+		empresa.setId(10L);
+		Produto p = new Produto();
+		p.setIdProduto(id);
+		p.setEmpresa(empresa);
+		p.setNomeProduto("Produto");
+		p.setQuantidadeEstoque(estoque);
+		return p;
+	}
+
+	/** Interpreta o UPDATE gerado sobre {@link #produtos} e entrega o RETURNING ao callback. */
+	private void executar(String sql, Object[] args, RowCallbackHandler linhas) throws Exception {
+		String tupla = sql.substring(sql.indexOf("(values (") + 9, sql.indexOf(')', sql.indexOf("(values (")));
+		int porItem = tupla.split(",").length;
+		int posEstoque = Arrays.asList(sql.substring(sql.indexOf("v(") + 2, sql.indexOf(") as")).split(", ")).indexOf("quantidade_estoque");
+		int itens = sql.split("\\?::bigint", -1).length - 1;
+		Long empresa = sql.contains("p.id_empresa = ?") ? (Long) args[args.length - 1] : null;
+		for (int n = 0; n < itens; n++) {
+			long id = (Long) args[n * porItem];
+			long[] p = produtos.get(id);
+			if (p == null || empresa != null && p[0] != empresa) continue;
+			long anterior = p[1];
+			if (posEstoque > 0) p[1] = (Integer) args[n * porItem + posEstoque];
+			linhas.processRow(linha(id, p[0], anterior, p[1]));
+		}
+	}
+
+	// Linha do RETURNING: só getLong/getInt por posição
+	private static ResultSet linha(long... colunas) {
+		return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class}, (proxy, metodo, a) -> {
+			long valor = colunas[(Integer) a[0] - 1];
+			return metodo.getName().equals("getInt") ? (Object) (int) valor : (Object) valor;
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<EstoqueMovimentoService.Movimento> movimentos() {
+		ArgumentCaptor<List<EstoqueMovimentoService.Movimento>> captor = ArgumentCaptor.forClass(List.class);
+		verify(estoque).registrar(captor.capture(), any());
+		return captor.getValue();
+	}
+
+	private Map<Long, Set<Long>> eventos(int quantidade) {
+		ArgumentCaptor<ProdutoAlteradoEvent> captor = ArgumentCaptor.forClass(ProdutoAlteradoEvent.class);
+		verify(eventos, times(quantidade)).publishEvent(captor.capture());
+		return captor.getAllValues().stream().collect(Collectors.toMap(ProdutoAlteradoEvent::idEmpresa, e -> Set.copyOf(e.ids())));
+	}
+
+	private static List<ProdutoPatchResultadoDto.Status> status(List<ProdutoPatchResultadoDto> r) {
+		return r.stream().map(ProdutoPatchResultadoDto::status).toList();
+	}
+}
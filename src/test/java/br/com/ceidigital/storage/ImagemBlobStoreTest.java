@@ -0,0 +1,235 @@
+package br.com.ceidigital.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reabertura do store local: o índice é reconstruído varrendo os segmentos e um registro
+ * incompleto no fim (queda no meio de uma gravação) é descartado sem perder os anteriores.
+ * Uploads são recebidos fora do lock, então um cliente lento não trava as demais gravações.
+ */
+class ImagemBlobStoreTest {
+
+	// Cabeçalho do registro: magic "CEIB", tamanho da chave (short) e tamanho dos dados (long)
+	private static final int MAGIC = 0x43454942;
+	private static final int CABECALHO = 4 + 2 + 8;
+	private static final String CHAVE_RESERVADA = "0".repeat(64) + ".png";
+
+	@TempDir
+	Path dir;
+
+	private final List<ImagemBlobStore> abertos = new ArrayList<>();
+
+	@AfterEach
+	void fechar() {
+		abertos.forEach(ImagemBlobStore::fechar);
+	}
+
+	@Test
+	void indiceReconstruidoAoReabrir() throws IOException {
+		ImagemBlobStore store = store(1_000); // segmentos pequenos: as imagens se espalham por mais de um
+		byte[] a = bytes(600, 1);
+		byte[] b = bytes(600, 2);
+		byte[] c = bytes(600, 3);
+		String chaveA = chave(store.gravar("png", new ByteArrayInputStream(a), 10_000));
+		String chaveB = chave(store.gravar("png", new ByteArrayInputStream(b), 10_000));
+		String chaveC = chave(store.gravar("jpg", new ByteArrayInputStream(c), 10_000));
+		store.gravar("variante-200.webp", bytes(100, 4));
+		store.fechar();
+		assertTrue(segmentos().size() > 1);
+
+		ImagemBlobStore reaberto = store(1_000);
+		assertArrayEquals(a, reaberto.ler(chaveA));
+		assertArrayEquals(b, reaberto.ler(chaveB));
+		assertEquals(OptionalLong.of(600), reaberto.tamanho(chaveC));
+		try (InputStream in = reaberto.abrir(chaveC, 100, 50)) {
+			assertArrayEquals(Arrays.copyOfRange(c, 100, 150), in.readAllBytes());
+		}
+		assertArrayEquals(bytes(100, 4), reaberto.ler("variante-200.webp"));
+
+		// O conteúdo continua endereçado pelo hash: repetir a imagem não cria outro registro
+		long antes = bytesEmDisco();
+		assertFalse(reaberto.gravar("png", new ByteArrayInputStream(b), 10_000).nova());
+		assertEquals(antes, bytesEmDisco());
+	}
+
+	@Test
+	void gravacaoInterrompidaEDescartadaNaReabertura() throws IOException {
+		ImagemBlobStore store = store(1_000_000);
+		byte[] a = bytes(5_000, 1);
+		String chaveA = chave(store.gravar("png", new ByteArrayInputStream(a), 10_000));
+		store.fechar();
+		Path segmento = segmentos().get(0);
+		long integro = Files.size(segmento);
+
+		// Queda no meio da cópia: chave ainda reservada, tamanho -1 (não confirmado) e parte dos dados
+		byte[] chave = CHAVE_RESERVADA.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer parcial = ByteBuffer.allocate(CABECALHO + chave.length + 1_000);
+		parcial.putInt(MAGIC).putShort((short) chave.length).putLong(-1L).put(chave).put(bytes(1_000, 2));
+		Files.write(segmento, parcial.array(), StandardOpenOption.APPEND);
+
+		ImagemBlobStore reaberto = store(1_000_000);
+		assertEquals(integro, Files.size(segmento));
+		assertArrayEquals(a, reaberto.ler(chaveA));
+		assertEquals(OptionalLong.empty(), reaberto.tamanho(CHAVE_RESERVADA));
+
+		// A próxima gravação ocupa o lugar do registro descartado e sobrevive a outra reabertura
+		byte[] b = bytes(3_000, 3);
+		String chaveB = chave(reaberto.gravar("png", new ByteArrayInputStream(b), 10_000));
+		reaberto.fechar();
+
+		ImagemBlobStore terceiro = store(1_000_000);
+		assertArrayEquals(a, terceiro.ler(chaveA));
+		assertArrayEquals(b, terceiro.ler(chaveB));
+		assertEquals(integro + CABECALHO + chaveB.length() + b.length, Files.size(segmento));
+	}
+
+	@Test
+	void cabecalhoCortadoOuDadosAlemDoFimSaoDescartados() throws IOException {
+		ImagemBlobStore store = store(1_000_000);
+		byte[] a = bytes(2_000, 1);
+		String chaveA = chave(store.gravar("png", new ByteArrayInputStream(a), 10_000));
+		store.fechar();
+		Path segmento = segmentos().get(0);
+		long integro = Files.size(segmento);
+
+		// Só parte do cabeçalho chegou ao disco
+		Files.write(segmento, new byte[]{0x43, 0x45, 0x49}, StandardOpenOption.APPEND);
+		store(1_000_000).fechar();
+		assertEquals(integro, Files.size(segmento));
+
+		// Tamanho confirmado, mas os dados não foram todos gravados
+		byte[] chave = "outra.png".getBytes(StandardCharsets.UTF_8);
+		ByteBuffer curto = ByteBuffer.allocate(CABECALHO + chave.length + 100);
+		curto.putInt(MAGIC).putShort((short) chave.length).putLong(10_000L).put(chave).put(bytes(100, 2));
+		Files.write(segmento, curto.array(), StandardOpenOption.APPEND);
+
+		ImagemBlobStore reaberto = store(1_000_000);
+		assertEquals(integro, Files.size(segmento));
+		assertEquals(OptionalLong.empty(), reaberto.tamanho("outra.png"));
+		assertArrayEquals(a, reaberto.ler(chaveA));
+	}
+
+	@Test
+	void uploadAcimaDoLimiteNaoDeixaRegistro() throws IOException {
+		ImagemBlobStore store = store(1_000_000);
+		assertThrows(ImagemRejeitadaException.class,
+				() -> store.gravar("png", new ByteArrayInputStream(bytes(5_000, 1)), 4_096));
+		assertEquals(0, bytesEmDisco());
+		store.fechar();
+
+		assertEquals(OptionalLong.empty(), store(1_000_000).tamanho(CHAVE_RESERVADA));
+	}
+
+	@Test
+	void uploadLentoNaoBloqueiaOutrasGravacoes() throws Exception {
+		ImagemBlobStore store = store(1_000_000);
+		byte[] lenta = bytes(2_000, 1);
+		byte[] rapida = bytes(500, 2);
+		CountDownLatch recebendo = new CountDownLatch(1);
+		CountDownLatch liberar = new CountDownLatch(1);
+		// Cliente que para no meio do envio até ser liberado
+		InputStream cliente = new FilterInputStream(new ByteArrayInputStream(lenta)) {
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				recebendo.countDown();
+				try {
+					liberar.await();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+				return super.read(b, off, len);
+			}
+		};
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<ImagemStorage.Gravacao> emCurso = executor.submit(() -> store.gravar("png", cliente, 10_000));
+			assertTrue(recebendo.await(5, TimeUnit.SECONDS));
+
+			String chaveRapida = assertTimeoutPreemptively(Duration.ofSeconds(5),
+					() -> chave(store.gravar("png", new ByteArrayInputStream(rapida), 10_000)));
+			assertArrayEquals(rapida, store.ler(chaveRapida));
+
+			liberar.countDown();
+			assertArrayEquals(lenta, store.ler(chave(emCurso.get(5, TimeUnit.SECONDS))));
+		} finally {
+			liberar.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void diretorioInutilizavelNaoImpedeASubidaEFalhaNoUso() throws IOException {
+		// "segmentos" dentro de um arquivo comum: createDirectories falha como falharia sem permissão
+		Path arquivo = Files.write(dir.resolve("arquivo"), new byte[]{1});
+		ImagemBlobStore store = new ImagemBlobStore(arquivo.toString(), DataSize.ofMegabytes(1));
+		store.abrir();
+		abertos.add(store);
+
+		IOException e = assertThrows(IOException.class,
+				() -> store.gravar("png", new ByteArrayInputStream(bytes(100, 1)), 10_000));
+		assertTrue(e.getMessage().contains(arquivo.resolve("segmentos").toString()));
+		assertThrows(IOException.class, () -> store.tamanho(CHAVE_RESERVADA));
+	}
+
+	private ImagemBlobStore store(long tamanhoSegmento) throws IOException {
+		ImagemBlobStore store = new ImagemBlobStore(dir.toString(), DataSize.ofBytes(tamanhoSegmento));
+		store.abrir();
+		abertos.add(store);
+		return store;
+	}
+
+	private List<Path> segmentos() throws IOException {
+		try (Stream<Path> arquivos = Files.list(dir.resolve("segmentos"))) {
+			return arquivos.sorted().toList();
+		}
+	}
+
+	private long bytesEmDisco() throws IOException {
+		long total = 0;
+		for (Path p : segmentos()) total += Files.size(p);
+		return total;
+	}
+
+	private static String chave(ImagemStorage.Gravacao g) {
+		return ImagemStorage.chaveDe(g.caminho()).orElseThrow();
+	}
+
+	private static byte[] bytes(int tamanho, long semente) {
+		byte[] b = new byte[tamanho];
+		new Random(semente).nextBytes(b);
+		return b;
+	}
+}
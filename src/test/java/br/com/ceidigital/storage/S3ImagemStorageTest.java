@@ -0,0 +1,258 @@
+package br.com.ceidigital.storage;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Ida e volta do storage S3 contra um servidor S3 mínimo em memória (PUT, cópia, GET com Range,
+ * HEAD, DELETE e listagem), com caminho no estilo path ("/bucket/chave").
+ */
+class S3ImagemStorageTest {
+
+	private static final String BUCKET = "imagens";
+
+	@TempDir
+	Path dir;
+
+	private S3Falso s3;
+	private HttpServer servidor;
+
+	@BeforeEach
+	void iniciar() throws IOException {
+		s3 = new S3Falso();
+		servidor = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		servidor.createContext("/", s3::atender);
+		servidor.start();
+	}
+
+	@AfterEach
+	void parar() {
+		servidor.stop(0);
+	}
+
+	@Test
+	void gravaEmUmPutELeDeOutraInstancia() throws IOException {
+		byte[] imagem = bytes(300_000, 1);
+		ImagemStorage.Gravacao g = storage("a").gravar("png", new ByteArrayInputStream(imagem), 1_000_000);
+
+		String chave = sha256(imagem) + ".png";
+		assertEquals(ImagemStorage.PREFIXO + chave, g.caminho());
+		assertTrue(g.nova());
+		assertEquals(imagem.length, g.tamanho());
+		assertArrayEquals(imagem, s3.objetos.get(chave));
+		assertEquals(1, s3.puts);
+
+		// Outra instância, com cache local vazio: HEAD para o tamanho e download para ler
+		S3ImagemStorage outra = storage("b");
+		assertEquals(OptionalLong.of(imagem.length), outra.tamanho(chave));
+		try (InputStream in = outra.abrir(chave, 1000, 500)) {
+			assertArrayEquals(Arrays.copyOfRange(imagem, 1000, 1500), in.readAllBytes());
+		}
+		assertEquals(OptionalLong.empty(), outra.tamanho("inexistente.png"));
+	}
+
+	@Test
+	void conteudoRepetidoRenovaOObjetoSemReenviar() throws IOException {
+		byte[] imagem = bytes(10_000, 2);
+		storage("a").gravar("jpg", new ByteArrayInputStream(imagem), 1_000_000);
+		String chave = sha256(imagem) + ".jpg";
+		Instant antigo = Instant.now().minus(Duration.ofDays(1)).truncatedTo(ChronoUnit.SECONDS);
+		s3.modificados.put(chave, antigo);
+
+		ImagemStorage.Gravacao g = storage("b").gravar("jpg", new ByteArrayInputStream(imagem), 1_000_000);
+
+		assertFalse(g.nova());
+		assertEquals(1, s3.puts);
+		assertTrue(s3.modificados.get(chave).isAfter(antigo));
+	}
+
+	@Test
+	void uploadAcimaDoLimiteNaoChegaAoBucket() throws IOException {
+		S3ImagemStorage storage = storage("a");
+		assertThrows(ImagemRejeitadaException.class,
+				() -> storage.gravar("png", new ByteArrayInputStream(bytes(5_000, 3)), 4_096));
+		assertTrue(s3.objetos.isEmpty());
+		try (Stream<Path> arquivos = Files.list(dir.resolve("a"))) {
+			assertEquals(0, arquivos.count());
+		}
+	}
+
+	@Test
+	void falhaDoBucketNaoViraImagemInexistente() throws IOException {
+		S3ImagemStorage storage = storage("a");
+		s3.falhar = true;
+		assertThrows(IOException.class, () -> storage.tamanho("qualquer.png"));
+	}
+
+	@Test
+	void compactacaoApagaSoOrfasForaDaCarencia() throws IOException {
+		S3ImagemStorage storage = storage("a");
+		storage.gravar("viva.png", bytes(100, 4));
+		storage.gravar("orfa.png", bytes(100, 5));
+		storage.gravar("recente.png", bytes(100, 6));
+		Instant antigo = Instant.now().minus(Duration.ofHours(1)).truncatedTo(ChronoUnit.SECONDS);
+		s3.modificados.put("viva.png", antigo);
+		s3.modificados.put("orfa.png", antigo);
+
+		ImagemStorage.Compactacao r = storage.compactar(Set.of("viva.png")::contains, Duration.ofMinutes(10), 0.3);
+
+		assertEquals(1, r.orfas());
+		assertEquals(100, r.bytesRecuperados());
+		assertEquals(Set.of("viva.png", "recente.png"), s3.objetos.keySet());
+	}
+
+	private S3ImagemStorage storage(String cache) throws IOException {
+		S3ImagemStorage storage = new S3ImagemStorage("http://127.0.0.1:" + servidor.getAddress().getPort(), "us-east-1",
+				BUCKET, "teste", "segredo", true, dir.resolve(cache).toString(), DataSize.ofMegabytes(16));
+		storage.abrir();
+		return storage;
+	}
+
+	private static byte[] bytes(int tamanho, long semente) {
+		byte[] b = new byte[tamanho];
+		new Random(semente).nextBytes(b);
+		return b;
+	}
+
+	private static String sha256(byte[] dados) {
+		try {
+			return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(dados));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/** Bucket em memória; confere o x-amz-content-sha256 de cada PUT com corpo. */
+	private static final class S3Falso {
+		final Map<String, byte[]> objetos = new ConcurrentHashMap<>();
+		final Map<String, Instant> modificados = new ConcurrentHashMap<>();
+		volatile int puts;
+		volatile boolean falhar;
+
+		void atender(HttpExchange ex) throws IOException {
+			try (ex) {
+				byte[] corpo = ex.getRequestBody().readAllBytes();
+				if (falhar) {
+					responder(ex, 500, null);
+					return;
+				}
+				String chave = URLDecoder.decode(ex.getRequestURI().getRawPath().substring(BUCKET.length() + 2), StandardCharsets.UTF_8);
+				switch (ex.getRequestMethod()) {
+					case "PUT" -> put(ex, chave, corpo);
+					case "GET" -> {
+						if (chave.isEmpty()) listar(ex);
+						else get(ex, chave);
+					}
+					case "HEAD" -> {
+						byte[] objeto = objetos.get(chave);
+						if (objeto == null) {
+							responder(ex, 404, null);
+							return;
+						}
+						ex.getResponseHeaders().set("Content-Length", String.valueOf(objeto.length));
+						ex.getResponseHeaders().set("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME.format(modificados.get(chave).atOffset(ZoneOffset.UTC)));
+						ex.sendResponseHeaders(200, -1);
+					}
+					case "DELETE" -> {
+						objetos.remove(chave);
+						modificados.remove(chave);
+						responder(ex, 204, null);
+					}
+					default -> responder(ex, 405, null);
+				}
+			}
+		}
+
+		private void put(HttpExchange ex, String chave, byte[] corpo) throws IOException {
+			String origem = ex.getRequestHeaders().getFirst("x-amz-copy-source");
+			if (origem != null) {
+				byte[] objeto = objetos.get(URLDecoder.decode(origem.substring(BUCKET.length() + 2), StandardCharsets.UTF_8));
+				if (objeto == null) {
+					responder(ex, 404, null);
+					return;
+				}
+				gravar(chave, objeto);
+				responder(ex, 200, "<CopyObjectResult/>".getBytes(StandardCharsets.UTF_8));
+				return;
+			}
+			if (!sha256(corpo).equals(ex.getRequestHeaders().getFirst("x-amz-content-sha256"))) {
+				responder(ex, 400, null);
+				return;
+			}
+			puts++;
+			gravar(chave, corpo);
+			responder(ex, 200, null);
+		}
+
+		private void get(HttpExchange ex, String chave) throws IOException {
+			byte[] objeto = objetos.get(chave);
+			if (objeto == null) {
+				responder(ex, 404, null);
+				return;
+			}
+			String range = ex.getRequestHeaders().getFirst("Range");
+			if (range == null) {
+				responder(ex, 200, objeto);
+				return;
+			}
+			String[] limites = range.substring("bytes=".length()).split("-");
+			int inicio = Integer.parseInt(limites[0]);
+			int fim = Math.min(Integer.parseInt(limites[1]), objeto.length - 1);
+			responder(ex, 206, Arrays.copyOfRange(objeto, inicio, fim + 1));
+		}
+
+		private void listar(HttpExchange ex) throws IOException {
+			StringBuilder xml = new StringBuilder("<ListBucketResult><IsTruncated>false</IsTruncated>");
+			objetos.forEach((chave, objeto) -> xml.append("<Contents><Key>").append(chave).append("</Key><Size>").append(objeto.length)
+					.append("</Size><LastModified>").append(modificados.get(chave)).append("</LastModified></Contents>"));
+			xml.append("</ListBucketResult>");
+			responder(ex, 200, xml.toString().getBytes(StandardCharsets.UTF_8));
+		}
+
+		private void gravar(String chave, byte[] dados) {
+			objetos.put(chave, dados);
+			// Precisão de segundos, como no Last-Modified
+			modificados.put(chave, Instant.now().truncatedTo(ChronoUnit.SECONDS));
+		}
+
+		private static void responder(HttpExchange ex, int status, byte[] corpo) throws IOException {
+			ex.sendResponseHeaders(status, corpo == null ? -1 : corpo.length);
+			if (corpo != null) ex.getResponseBody().write(corpo);
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package br.com.ceidigital.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CsvLeitorTest {
+
+	@Test
+	void camposSimplesEVazios() throws IOException {
+		CsvLeitor leitor = leitor("a,b,c\n1,,3\n,,\n", ',');
+		assertEquals(List.of("a", "b", "c"), leitor.proximo());
+		assertEquals(List.of("1", "", "3"), leitor.proximo());
+		assertEquals(List.of("", "", ""), leitor.proximo());
+		assertNull(leitor.proximo());
+	}
+
+	@Test
+	void aspasComSeparadorEAspasDobradas() throws IOException {
+		CsvLeitor leitor = leitor("\"Café, moído\",\"Diz \"\"oi\"\"\",\"\"\n", ',');
+		assertEquals(List.of("Café, moído", "Diz \"oi\"", ""), leitor.proximo());
+		assertNull(leitor.proximo());
+	}
+
+	@Test
+	void quebraDeLinhaDentroDeAspasContaAsLinhasDoArquivo() throws IOException {
+		CsvLeitor leitor = leitor("nome;descricao\r\nBolo;\"linha 1\r\nlinha 2\nlinha 3\"\r\nPão;simples", ';');
+		assertEquals(1, leitor.linha());
+		assertEquals(List.of("nome", "descricao"), leitor.proximo());
+		assertEquals(2, leitor.linha());
+		assertEquals(List.of("Bolo", "linha 1\r\nlinha 2\nlinha 3"), leitor.proximo());
+		// O registro seguinte começa na linha 5, depois das três linhas do campo
+		assertEquals(5, leitor.linha());
+		assertEquals(List.of("Pão", "simples"), leitor.proximo()); // última linha sem quebra
+		assertNull(leitor.proximo());
+	}
+
+	@Test
+	void aspasNoMeioDoCampoSaoLiterais() throws IOException {
+		assertEquals(List.of("tela 15\"", "x"), leitor("tela 15\",x\n", ',').proximo());
+	}
+
+	@Test
+	void campoMaiorQueOBuffer() throws IOException {
+		String longo = "x".repeat(20_000);
+		CsvLeitor leitor = leitor("\"" + longo + "\",fim\n", ',');
+		assertEquals(List.of(longo, "fim"), leitor.proximo());
+	}
+
+	@Test
+	void aspasNaoFechadas() throws IOException {
+		CsvLeitor leitor = leitor("ok,1\n\"sem fim,2\n", ',');
+		leitor.proximo();
+		assertThrows(IOException.class, leitor::proximo);
+	}
+
+	private static CsvLeitor leitor(String csv, char separador) {
+		return new CsvLeitor(new StringReader(csv), separador);
+	}
+}
@@ -0,0 +1,175 @@
+package br.com.ceidigital.web;
+
+import br.com.ceidigital.domain.ImagemMetadados;
+import br.com.ceidigital.storage.ImagemBlobStore;
+import br.com.ceidigital.storage.ImagemCache;
+import br.com.ceidigital.storage.ImagemStorage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Range de um intervalo, If-Range e 416, tanto para imagens servidas do cache (heap) quanto
+ * para as copiadas do storage, e HEAD respondido só com os metadados.
+ */
+class ImagemResponderTest {
+
+	private static final int TAMANHO = 4_000;
+
+	@TempDir
+	Path dir;
+
+	private ImagemBlobStore storage;
+	private ImagemResponder responder;
+	private final byte[] imagem = bytes(TAMANHO, 1);
+	private final byte[] pequena = bytes(500, 2);
+	private String caminho;
+	private String caminhoPequena;
+	private String etag;
+
+	@BeforeEach
+	void iniciar() throws IOException {
+		storage = new ImagemBlobStore(dir.toString(), DataSize.ofMegabytes(1));
+		storage.abrir();
+		// Entradas de até 1KB no cache: a imagem grande é copiada do storage, a pequena sai do heap
+		ImagemCache cache = new ImagemCache(DataSize.ofMegabytes(1), DataSize.ofKilobytes(1), new SimpleMeterRegistry());
+		responder = new ImagemResponder(storage, cache);
+		ImagemStorage.Gravacao g = storage.gravar("png", new ByteArrayInputStream(imagem), 1_000_000);
+		caminho = g.caminho();
+		etag = "\"" + g.sha256() + "\"";
+		caminhoPequena = storage.gravar("png", new ByteArrayInputStream(pequena), 1_000_000).caminho();
+	}
+
+	@AfterEach
+	void fechar() {
+		storage.fechar();
+	}
+
+	@Test
+	void semRangeEnviaTudo() throws IOException {
+		MockHttpServletResponse r = get(caminho, null, null);
+		assertEquals(200, r.getStatus());
+		assertEquals(etag, r.getHeader(HttpHeaders.ETAG));
+		assertEquals("bytes", r.getHeader(HttpHeaders.ACCEPT_RANGES));
+		assertNull(r.getHeader(HttpHeaders.CONTENT_RANGE));
+		assertArrayEquals(imagem, r.getContentAsByteArray());
+	}
+
+	@Test
+	void intervalosDeUmTrecho() throws IOException {
+		parcial("bytes=100-199", 100, 199);
+		parcial("bytes=3900-", 3900, TAMANHO - 1);
+		parcial("bytes=-50", TAMANHO - 50, TAMANHO - 1);
+		parcial("bytes=3990-99999", 3990, TAMANHO - 1); // fim além do tamanho é limitado
+		parcial("bytes=-99999", 0, TAMANHO - 1);
+	}
+
+	@Test
+	void intervaloForaDaImagemResponde416() throws IOException {
+		for (String range : new String[]{"bytes=4000-", "bytes=5000-6000", "bytes=200-100", "bytes=-0"}) {
+			MockHttpServletResponse r = get(caminho, range, null);
+			assertEquals(416, r.getStatus(), range);
+			assertEquals("bytes */" + TAMANHO, r.getHeader(HttpHeaders.CONTENT_RANGE), range);
+			assertEquals(0, r.getContentAsByteArray().length, range);
+		}
+	}
+
+	@Test
+	void rangeIgnoradoQuandoNaoSeAplica() throws IOException {
+		// Vários intervalos, unidade desconhecida ou sintaxe inválida: a imagem inteira, com 200
+		for (String range : new String[]{"bytes=0-9,20-29", "items=0-9", "bytes=abc", "bytes=10"}) {
+			MockHttpServletResponse r = get(caminho, range, null);
+			assertEquals(200, r.getStatus(), range);
+			assertArrayEquals(imagem, r.getContentAsByteArray(), range);
+		}
+	}
+
+	@Test
+	void ifRangeSoValeComAMesmaEtag() throws IOException {
+		MockHttpServletResponse igual = get(caminho, "bytes=0-9", etag);
+		assertEquals(206, igual.getStatus());
+		assertArrayEquals(Arrays.copyOf(imagem, 10), igual.getContentAsByteArray());
+
+		MockHttpServletResponse outra = get(caminho, "bytes=0-9", "\"outra\"");
+		assertEquals(200, outra.getStatus());
+		assertArrayEquals(imagem, outra.getContentAsByteArray());
+	}
+
+	@Test
+	void imagemDoCacheUsaAsMesmasRegras() throws IOException {
+		get(caminhoPequena, null, null); // carrega no cache
+
+		MockHttpServletResponse r = get(caminhoPequena, "bytes=-20", null);
+		assertEquals(206, r.getStatus());
+		assertEquals("bytes 480-499/500", r.getHeader(HttpHeaders.CONTENT_RANGE));
+		assertArrayEquals(Arrays.copyOfRange(pequena, 480, 500), r.getContentAsByteArray());
+
+		assertEquals(416, get(caminhoPequena, "bytes=500-", null).getStatus());
+	}
+
+	@Test
+	void ifNoneMatchResponde304SemCorpo() throws IOException {
+		MockHttpServletRequest request = request("GET", null, null);
+		request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"velha\", W/" + etag);
+		MockHttpServletResponse r = new MockHttpServletResponse();
+		responder.responder(caminho, null, request, r);
+		assertEquals(304, r.getStatus());
+		assertEquals(0, r.getContentAsByteArray().length);
+	}
+
+	@Test
+	void headComMetadadosNaoConsultaOStorage() throws IOException {
+		ImagemMetadados metadados = new ImagemMetadados(10_000L, "image/png", null, null, "abc");
+		MockHttpServletResponse r = new MockHttpServletResponse();
+		// Caminho que não existe no storage: só os metadados bastam
+		responder.responder(ImagemStorage.PREFIXO + "inexistente.png", metadados, request("HEAD", "bytes=0-9", null), r);
+		assertEquals(206, r.getStatus());
+		assertEquals("\"abc\"", r.getHeader(HttpHeaders.ETAG));
+		assertEquals("bytes 0-9/10000", r.getHeader(HttpHeaders.CONTENT_RANGE));
+		assertEquals(10, r.getContentLengthLong());
+		assertEquals(0, r.getContentAsByteArray().length);
+	}
+
+	private void parcial(String range, int inicio, int fim) throws IOException {
+		MockHttpServletResponse r = get(caminho, range, null);
+		assertEquals(206, r.getStatus(), range);
+		assertEquals("bytes " + inicio + "-" + fim + "/" + TAMANHO, r.getHeader(HttpHeaders.CONTENT_RANGE), range);
+		assertEquals(fim - inicio + 1, r.getContentLengthLong(), range);
+		assertArrayEquals(Arrays.copyOfRange(imagem, inicio, fim + 1), r.getContentAsByteArray(), range);
+	}
+
+	private MockHttpServletResponse get(String caminhoImagem, String range, String ifRange) throws IOException {
+		MockHttpServletResponse r = new MockHttpServletResponse();
+		responder.responder(caminhoImagem, null, request("GET", range, ifRange), r);
+		return r;
+	}
+
+	private static MockHttpServletRequest request(String metodo, String range, String ifRange) {
+		MockHttpServletRequest request = new MockHttpServletRequest(metodo, "/api/produtos/1/imagem");
+		if (range != null) request.addHeader(HttpHeaders.RANGE, range);
+		if (ifRange != null) request.addHeader(HttpHeaders.IF_RANGE, ifRange);
+		return request;
+	}
+
+	private static byte[] bytes(int tamanho, long semente) {
+		byte[] b = new byte[tamanho];
+		new Random(semente).nextBytes(b);
+		return b;
+	}
+}